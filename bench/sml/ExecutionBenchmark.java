@@ -0,0 +1,170 @@
+package sml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sml.optimizer.Superinstructions;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JMH benchmark that measures <code>Machine.execute</code> in instructions/second on three representative
+ * programs, each of <code>INSTRUCTIONS</code> instructions, with every <code>Machine.Engine</code>:
+ * <ul>
+ *     <li><code>countdown</code> - a register counted down by <code>sub</code>, each step followed by a taken
+ *     <code>jnz</code> to a labelled <code>add</code>;</li>
+ *     <li><code>multiplyAccumulate</code> - repeated <code>mov</code>, <code>mul</code> and <code>add</code>;</li>
+ *     <li><code>divideHeavy</code> - runs of <code>div</code> by a constant register.</li>
+ * </ul>
+ * The programs do not use <code>out</code>, so no time is spent printing.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+
+	static final int INSTRUCTIONS = 8_192;
+	private static final ExecutionLimits LIMITS = ExecutionLimits.NONE
+			.withMaxSteps(Long.MAX_VALUE - 1)
+			.withDeadline(Instant.MAX)
+			.withCancellation(new CancellationToken());
+
+	@Param({"POLYMORPHIC", "SWITCH", "COMPILED", "ACCELERATED"})
+	public Machine.Engine engine;
+
+	private Machine countdown;
+	private Machine countdownFused;
+	private Machine multiplyAccumulate;
+	private Machine divideHeavy;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		countdown = load(countdown(), false);
+		countdownFused = load(countdown(), true);
+		multiplyAccumulate = load(multiplyAccumulate(), false);
+		divideHeavy = load(divideHeavy(), false);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Registers countdownLoop() {
+		countdown.execute();
+		return countdown.getRegisters();
+	}
+
+	/**
+	 * As <code>countdownLoop</code>, with limits that are checked but never reached, to measure their overhead.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Registers countdownLoopLimited() {
+		countdown.execute(LIMITS);
+		return countdown.getRegisters();
+	}
+
+	/**
+	 * As <code>countdownLoop</code>, with each 'sub' and 'jnz' fused into a 'subjnz' (see
+	 * <code>sml.optimizer.Superinstructions</code>); the operations are still the instructions of the original program.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Registers countdownLoopFused() {
+		countdownFused.execute();
+		return countdownFused.getRegisters();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Registers multiplyAccumulateLoop() {
+		multiplyAccumulate.execute();
+		return multiplyAccumulate.getRegisters();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Registers divideHeavyLoop() {
+		divideHeavy.execute();
+		return divideHeavy.getRegisters();
+	}
+
+	private static String[] countdown() {
+		String[] lines = new String[INSTRUCTIONS];
+		lines[0] = "mov EAX " + INSTRUCTIONS;
+		lines[1] = "mov ECX 1";
+		for (int i = 2; i < INSTRUCTIONS; i += 3) {
+			lines[i] = "sub EAX ECX";
+			if (i + 1 < INSTRUCTIONS)
+				lines[i + 1] = "jnz EAX l" + i;
+			if (i + 2 < INSTRUCTIONS)
+				lines[i + 2] = "l" + i + ": add EDX ECX";
+		}
+		return lines;
+	}
+
+	private static String[] multiplyAccumulate() {
+		String[] lines = new String[INSTRUCTIONS];
+		lines[0] = "mov ECX 3";
+		for (int i = 1; i < INSTRUCTIONS; i += 3) {
+			lines[i] = "mov EBX " + i;
+			if (i + 1 < INSTRUCTIONS)
+				lines[i + 1] = "mul EBX ECX";
+			if (i + 2 < INSTRUCTIONS)
+				lines[i + 2] = "add EAX EBX";
+		}
+		return lines;
+	}
+
+	private static String[] divideHeavy() {
+		String[] lines = new String[INSTRUCTIONS];
+		lines[0] = "mov EBX 7";
+		for (int i = 1; i < INSTRUCTIONS; i += 8) {
+			// 2,000,000,000 / 7^7 > 0, so no operand ever reaches zero.
+			lines[i] = "mov EAX 2000000000";
+			for (int j = 1; j < 8 && i + j < INSTRUCTIONS; j++)
+				lines[i + j] = "div EAX EBX";
+		}
+		return lines;
+	}
+
+	private Machine load(String[] lines, boolean fuse) throws IOException {
+		Path file = Files.createTempFile("sml-benchmark", ".sml");
+		try {
+			try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+				for (String line : lines)
+					out.println(line);
+			}
+			Machine source = new Machine(new Registers());
+			new Translator(file.toString()).readAndTranslate(source.getLabels(), source.getProgram());
+			if (fuse)
+				new Superinstructions().fuse(source.getLabels(), source.getProgram());
+			if (engine == Machine.Engine.POLYMORPHIC)
+				return source;
+			return new Machine(new Registers(), Bytecode.encode(source.getProgram(), source.getLabels()), engine);
+		}
+		finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
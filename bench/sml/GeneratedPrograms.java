@@ -0,0 +1,46 @@
+package sml;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class is a <code>final</code> class that writes the generated SML programs used by the benchmarks.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class GeneratedPrograms {
+
+	private static final String[] REGISTERS = {"EAX", "EBX", "ECX", "EDX", "ESP", "EBP", "ESI", "EDI"};
+
+	private GeneratedPrograms() {
+	}
+
+	/**
+	 * Writes an SML program with the given number of lines, using every opcode and a label every 10 lines.
+	 *
+	 * @param file the file to write.
+	 * @param lines the number of lines.
+	 * @throws IOException - if the file cannot be written.
+	 */
+	static void generate(Path file, int lines) throws IOException {
+		try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+			for (int i = 0; i < lines; i++) {
+				String r = REGISTERS[i % REGISTERS.length];
+				String s = REGISTERS[(i + 3) % REGISTERS.length];
+				String label = (i % 10 == 0) ? "l" + i + ": " : "";
+				switch (i % 7) {
+					case 0 -> out.println(label + "mov " + r + " " + i);
+					case 1 -> out.println(label + "add " + r + " " + s);
+					case 2 -> out.println(label + "sub " + r + " " + s);
+					case 3 -> out.println(label + "mul " + r + " " + s);
+					case 4 -> out.println(label + "mov " + s + " 1");
+					case 5 -> out.println(label + "div " + r + " " + s);
+					default -> out.println(label + "jnz " + r + " l" + (i / 10 * 10));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package sml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static sml.Registers.Register.EAX;
+import static sml.Registers.Register.EDI;
+
+/**
+ * A JMH benchmark that measures the cost of a single <code>Registers.get</code> and <code>Registers.set</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistersBenchmark {
+
+	private final Registers registers = new Registers();
+	private int value;
+
+	@Benchmark
+	public int get() {
+		return registers.get(EDI);
+	}
+
+	@Benchmark
+	public void set() {
+		registers.set(EAX, value++);
+	}
+
+	@Benchmark
+	public void getAndSet() {
+		registers.set(EAX, registers.get(EDI) + 1);
+	}
+}
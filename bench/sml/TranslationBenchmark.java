@@ -0,0 +1,74 @@
+package sml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JMH benchmark that measures the throughput of <code>Translator.readAndTranslate</code> on a generated SML
+ * program of <code>lines</code> lines (see <code>GeneratedPrograms.generate</code>). Divide the score by
+ * <code>lines</code>, or read the <code>gc.alloc.rate.norm</code> result, for per-line figures.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslationBenchmark {
+
+	@Param({"1000", "100000"})
+	public int lines;
+
+	private Path file;
+	private Translator translator;
+	private final Labels labels = new Labels();
+	private final List<Instruction> program = new ArrayList<>();
+	private final TranslationCache cache = new TranslationCache(1);
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = Files.createTempFile("sml-benchmark", ".sml");
+		GeneratedPrograms.generate(file, lines);
+		translator = new Translator(file.toString());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public List<Instruction> readAndTranslate() throws IOException {
+		translator.readAndTranslate(labels, program);
+		return program;
+	}
+
+	/**
+	 * The cost of a cache hit: hashing the file.
+	 */
+	@Benchmark
+	public Program cached() throws IOException {
+		return cache.get(file);
+	}
+}
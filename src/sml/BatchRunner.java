@@ -0,0 +1,325 @@
+package sml;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class is a <code>final</code> class that translates and executes many Small Machine Language (SML) programs in
+ * parallel, each with its own <code>sml.Translator</code> and <code>sml.Machine</code>, on a bounded
+ * <code>ForkJoinPool</code>. The output of the programs is discarded; the final registers of each program, and the
+ * time taken to translate and to execute it, are kept as a <code>BatchRunner.Result</code> and can be written to a
+ * results file in CSV form. The translated programs can be taken from a <code>sml.TranslationCache</code>.
+ * <p>
+ * A program that does not end - e.g. one whose labelled 'jnz' instructions execute each other - must not hold up the
+ * batch, so each program is given a timeout, which is its deadline (unless its limits already have one); a program
+ * that has not finished shortly after its timeout (e.g. because its engine cannot check the deadline) is given up on.
+ * A program that fails, whether with an exception or by overflowing the stack, only fails its own result.
+ * <p>
+ * The programs are given either as a directory (every regular file in it, in name order) or as a manifest - a file
+ * that lists one program per line, relative to the directory of the manifest, ignoring blank lines and lines that
+ * begin with '#'.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class BatchRunner {
+
+	/**
+	 * The limits of the programs of a runner created without any: at most a billion steps.
+	 */
+	public static final ExecutionLimits DEFAULT_LIMITS = ExecutionLimits.NONE.withMaxSteps(1_000_000_000L);
+	/**
+	 * The time each program of a runner created without one may run for.
+	 */
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+	// How long after its timeout a program that has not finished is given up on.
+	private static final Duration GRACE = Duration.ofSeconds(5);
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	/**
+	 * The outcome of one program of a batch.
+	 */
+	public static final class Result {
+		private final Path program;
+		private final Registers registers;
+		private final long translationNanos;
+		private final long executionNanos;
+		private final Throwable error;
+
+		Result(Path program, Registers registers, long translationNanos, long executionNanos, Throwable error) {
+			this.program = program;
+			this.registers = registers;
+			this.translationNanos = translationNanos;
+			this.executionNanos = executionNanos;
+			this.error = error;
+		}
+
+		/**
+		 * @return the file of the program.
+		 */
+		public Path getProgram() {
+			return program;
+		}
+
+		/**
+		 * @return the registers when the program ended (or failed).
+		 */
+		public Registers getRegisters() {
+			return registers;
+		}
+
+		/**
+		 * @return the time taken to translate the program, in nanoseconds.
+		 */
+		public long getTranslationNanos() {
+			return translationNanos;
+		}
+
+		/**
+		 * @return the time taken to execute the program, in nanoseconds (0 if it could not be translated).
+		 */
+		public long getExecutionNanos() {
+			return executionNanos;
+		}
+
+		/**
+		 * @return the exception (or <code>StackOverflowError</code>) that stopped the program, a
+		 * <code>TimeoutException</code> if it was given up on, or <code>null</code> if it ran to the end.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+	}
+
+	private final Machine.Engine engine;
+	private final ExecutionLimits limits;
+	private final int parallelism;
+	private final TranslationCache cache;
+	private final Duration timeout;
+
+	/**
+	 * Constructor: a runner that executes the programs with the <code>SWITCH</code> engine, with the
+	 * <code>DEFAULT_LIMITS</code> and <code>DEFAULT_TIMEOUT</code>, on as many threads as there are processors.
+	 */
+	public BatchRunner() {
+		this(DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor: a runner that executes the programs with the <code>SWITCH</code> engine, with the
+	 * <code>DEFAULT_LIMITS</code> and the given timeout, on as many threads as there are processors.
+	 *
+	 * @param timeout the time each program may run for.
+	 */
+	public BatchRunner(Duration timeout) {
+		this(Machine.Engine.SWITCH, DEFAULT_LIMITS, Runtime.getRuntime().availableProcessors(), null, timeout);
+	}
+
+	/**
+	 * Constructor: a runner that executes the programs with the given engine and limits, on the given number of
+	 * threads.
+	 *
+	 * @param engine the engine that executes each program.
+	 * @param limits the limits of the execution of each program.
+	 * @param parallelism the number of programs that run at once.
+	 * @throws IllegalArgumentException - when the parallelism is not positive.
+	 */
+	public BatchRunner(Machine.Engine engine, ExecutionLimits limits, int parallelism) {
+		this(engine, limits, parallelism, null);
+	}
+
+	/**
+	 * Constructor: a runner that executes the programs with the given engine and limits, on the given number of
+	 * threads, and takes the translated programs from the given cache. Each program has the
+	 * <code>DEFAULT_TIMEOUT</code>.
+	 *
+	 * @param engine the engine that executes each program.
+	 * @param limits the limits of the execution of each program.
+	 * @param parallelism the number of programs that run at once.
+	 * @param cache the cache of translated programs, or <code>null</code> to translate every program.
+	 * @throws IllegalArgumentException - when the parallelism is not positive.
+	 */
+	public BatchRunner(Machine.Engine engine, ExecutionLimits limits, int parallelism, TranslationCache cache) {
+		this(engine, limits, parallelism, cache, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor: a runner that executes the programs with the given engine, limits and timeout, on the given number
+	 * of threads, and takes the translated programs from the given cache.
+	 *
+	 * @param engine the engine that executes each program.
+	 * @param limits the limits of the execution of each program.
+	 * @param parallelism the number of programs that run at once.
+	 * @param cache the cache of translated programs, or <code>null</code> to translate every program.
+	 * @param timeout the time each program may run for.
+	 * @throws IllegalArgumentException - when the parallelism or the timeout is not positive.
+	 */
+	public BatchRunner(Machine.Engine engine, ExecutionLimits limits, int parallelism, TranslationCache cache,
+			Duration timeout) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("The parallelism must be positive, not " + parallelism + ".");
+		if (timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("The timeout must be positive, not " + timeout + ".");
+		this.engine = engine;
+		this.limits = limits;
+		this.parallelism = parallelism;
+		this.cache = cache;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Lists the programs of a batch.
+	 *
+	 * @param source a directory of programs, or a manifest listing them.
+	 * @return the files of the programs.
+	 * @throws IOException - if the directory or manifest cannot be read.
+	 */
+	public static List<Path> programs(Path source) throws IOException {
+		if (Files.isDirectory(source)) {
+			try (Stream<Path> files = Files.list(source)) {
+				return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+		}
+		Path directory = source.toAbsolutePath().getParent();
+		List<Path> programs = new ArrayList<>();
+		for (String line : Files.readAllLines(source)) {
+			String entry = line.strip();
+			if (!entry.isEmpty() && !entry.startsWith("#"))
+				programs.add(directory.resolve(entry));
+		}
+		return programs;
+	}
+
+	/**
+	 * Translates and executes the given programs in parallel.
+	 *
+	 * @param programs the files of the programs.
+	 * @return the result of each program, in the same order as the programs.
+	 * @throws InterruptedException - if the thread is interrupted while waiting for the programs.
+	 */
+	public List<Result> run(List<Path> programs) throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			// The System.nanoTime() at which each program started, or 0 if it has not started yet.
+			AtomicLongArray started = new AtomicLongArray(programs.size());
+			List<Future<Result>> futures = new ArrayList<>(programs.size());
+			for (int i = 0; i < programs.size(); i++) {
+				int index = i;
+				futures.add(pool.submit(() -> {
+					started.set(index, System.nanoTime());
+					return run(programs.get(index));
+				}));
+			}
+			List<Result> results = new ArrayList<>(programs.size());
+			long wait = timeout.plus(GRACE).toNanos();
+			for (int i = 0; i < futures.size(); i++)
+				results.add(result(programs.get(i), futures.get(i), started, i, wait));
+			return results;
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for the result of a program, giving up on it once it has run for the given time.
+	 */
+	private Result result(Path program, Future<Result> future, AtomicLongArray started, int index, long wait)
+			throws InterruptedException {
+		while (true) {
+			long start = started.get(index);
+			long remaining = (start == 0) ? wait : start + wait - System.nanoTime();
+			try {
+				return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException e) {
+				if (start != 0 && System.nanoTime() - start >= wait) {
+					future.cancel(true);
+					return new Result(program, new Registers(), 0, 0,
+							new TimeoutException("The program did not finish within " + timeout + "."));
+				}
+			}
+			catch (ExecutionException e) {
+				// run(Path) reports every Exception and StackOverflowError in its Result, so only a more serious
+				// Error can get here.
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Translates and executes a program on a new machine.
+	 *
+	 * @param program the file of the program.
+	 * @return the result of the program.
+	 */
+	public Result run(Path program) {
+		Registers registers = new Registers();
+		long start = System.nanoTime();
+		Program translated;
+		try {
+			translated = (cache != null) ? cache.get(program) : new Translator(program.toString()).translate();
+		}
+		catch (Exception e) {
+			return new Result(program, registers, System.nanoTime() - start, 0, e);
+		}
+		long executing = System.nanoTime();
+		ExecutionLimits limited = (limits.getDeadline() == null) ? limits.withTimeout(timeout) : limits;
+		try {
+			new Machine(translated, registers, engine, OutputSink.discard()).execute(limited);
+			return new Result(program, registers, executing - start, System.nanoTime() - executing, null);
+		}
+		catch (Exception | StackOverflowError e) {
+			// e.g. the POLYMORPHIC engine executing a long chain of labelled 'jnz' instructions.
+			return new Result(program, registers, executing - start, System.nanoTime() - executing, e);
+		}
+	}
+
+	/**
+	 * Writes the results of a batch to a CSV file, one row per program: the program, its status ("OK", or the
+	 * exception that stopped it), the translation and execution times in nanoseconds, and the final value of each
+	 * register.
+	 *
+	 * @param results the results of the batch.
+	 * @param file the file to write.
+	 * @throws IOException - if the file cannot be written.
+	 */
+	public static void write(List<Result> results, Path file) throws IOException {
+		try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+			StringBuilder header = new StringBuilder("program,status,translation_ns,execution_ns");
+			for (Registers.Register register : REGISTERS)
+				header.append(',').append(register.name());
+			out.println(header);
+			for (Result result : results) {
+				StringBuilder row = new StringBuilder();
+				row.append(csv(result.getProgram().toString())).append(',')
+						.append(csv((result.getError() == null) ? "OK" : result.getError().toString())).append(',')
+						.append(result.getTranslationNanos()).append(',')
+						.append(result.getExecutionNanos());
+				for (Registers.Register register : REGISTERS)
+					row.append(',').append(result.getRegisters().get(register));
+				out.println(row);
+			}
+		}
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+			return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
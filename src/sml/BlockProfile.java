@@ -0,0 +1,171 @@
+package sml;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class is a <code>final</code> class that models a profile of the basic blocks of a Small Machine Language
+ * (SML) program, made from the counts of an <code>sml.ExecutionStats</code> (see
+ * <code>ExecutionStats.getBlockProfile()</code>).
+ * <p>
+ * A basic block is a run of consecutive instructions that are always executed together: a block starts at the first
+ * instruction, at each labelled instruction (which is only executed by a 'jnz', as a block of its own) and after each
+ * 'jnz', and ends at a 'jnz' (or a superinstruction that ends with one) or before a label. The blocks are ranked by
+ * the number of steps executed in them, so the hottest parts of the program come first.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class BlockProfile {
+
+	/**
+	 * A basic block of the program, and the number of times it was executed.
+	 */
+	public static final class Block {
+		private final int first;
+		private final List<String> instructions;
+		private final long executions;
+		private final long steps;
+		private final double share;
+
+		private Block(int first, List<String> instructions, long executions, long steps, double share) {
+			this.first = first;
+			this.instructions = instructions;
+			this.executions = executions;
+			this.steps = steps;
+			this.share = share;
+		}
+
+		/**
+		 * @return the address of the first instruction of the block.
+		 */
+		public int getFirst() {
+			return first;
+		}
+
+		/**
+		 * @return the address of the last instruction of the block.
+		 */
+		public int getLast() {
+			return first + instructions.size() - 1;
+		}
+
+		/**
+		 * @return the source text of the instructions of the block, in the format of
+		 * <code>Instruction.toString()</code>.
+		 */
+		public List<String> getInstructions() {
+			return instructions;
+		}
+
+		/**
+		 * @return the number of times the block was entered.
+		 */
+		public long getExecutions() {
+			return executions;
+		}
+
+		/**
+		 * @return the number of instructions executed in the block.
+		 */
+		public long getSteps() {
+			return steps;
+		}
+
+		/**
+		 * @return the percentage of all the steps of the program that were executed in the block.
+		 */
+		public double getShare() {
+			return share;
+		}
+	}
+
+	private final List<Block> blocks;
+	private final long steps;
+	private final long runs;
+
+	/**
+	 * Constructor: the profile of the given program from the counts of its instructions.
+	 *
+	 * @param bytecode the encoded program.
+	 * @param hits the number of times the instruction at each address was executed.
+	 * @param runs the number of executions counted.
+	 */
+	BlockProfile(Bytecode bytecode, long[] hits, long runs) {
+		long total = 0;
+		for (long count : hits)
+			total += count;
+		List<Block> blocks = new ArrayList<>();
+		int first = 0;
+		for (int address = 0; address < bytecode.size(); address++) {
+			int next = address + 1;
+			boolean ends = next == bytecode.size()
+					|| bytecode.isJump(address)
+					|| bytecode.getLabel(address) != null
+					|| bytecode.getLabel(next) != null;
+			if (!ends)
+				continue;
+			List<String> instructions = new ArrayList<>();
+			long steps = 0;
+			for (int a = first; a < next; a++) {
+				instructions.add(bytecode.toString(a));
+				steps += hits[a];
+			}
+			blocks.add(new Block(first, List.copyOf(instructions), hits[first], steps,
+					(total == 0) ? 0 : 100.0 * steps / total));
+			first = next;
+		}
+		blocks.sort(Comparator.comparingLong(Block::getSteps).reversed().thenComparingInt(Block::getFirst));
+		this.blocks = List.copyOf(blocks);
+		this.steps = total;
+		this.runs = runs;
+	}
+
+	/**
+	 * @return the basic blocks of the program, ranked by the number of steps executed in them (highest first).
+	 */
+	public List<Block> getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * @return the total number of instructions executed.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns a report of the hottest blocks of the program, of the form:
+	 * <pre>
+	 * Hottest 2 of 4 basic blocks (17 steps in 1 executions):
+	 *  Rank  Addresses  Executions       Steps   Share
+	 *     1  0-11                1          12  70.59%
+	 *            0: mov EAX 6
+	 *            ...
+	 * </pre>
+	 * Blocks that were never executed are left out.
+	 *
+	 * @param top the maximum number of blocks to report.
+	 * @return the text of the report.
+	 */
+	public String report(int top) {
+		List<Block> hottest = blocks.stream().filter(block -> block.getSteps() > 0).limit(top).toList();
+		StringBuilder report = new StringBuilder();
+		report.append("Hottest ").append(hottest.size()).append(" of ").append(blocks.size())
+				.append(" basic blocks (").append(steps).append(" steps in ").append(runs).append(" executions):\n");
+		report.append(String.format(" %4s  %-9s  %10s  %10s  %6s%n", "Rank", "Addresses", "Executions", "Steps", "Share"));
+		int rank = 1;
+		for (Block block : hottest) {
+			String addresses = (block.getFirst() == block.getLast())
+					? String.valueOf(block.getFirst())
+					: block.getFirst() + "-" + block.getLast();
+			report.append(String.format(" %4d  %-9s  %10d  %10d  %5.2f%%%n", rank++, addresses, block.getExecutions(),
+					block.getSteps(), block.getShare()));
+			for (int i = 0; i < block.getInstructions().size(); i++)
+				report.append(String.format("        %4d: %s%n", block.getFirst() + i, block.getInstructions().get(i)));
+		}
+		return report.toString();
+	}
+}
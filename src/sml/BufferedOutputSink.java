@@ -0,0 +1,114 @@
+package sml;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * This class is a <code>final</code> class that implements <code>sml.OutputSink</code> by formatting each line
+ * directly into a <code>char[]</code> buffer, which is written to a <code>java.io.Writer</code> (and the writer
+ * flushed) when it fills past a threshold and when the sink is flushed at the end of the program. No
+ * <code>String</code> is created per line.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class BufferedOutputSink implements OutputSink {
+
+	public static final int DEFAULT_THRESHOLD = 8192;
+	private static final String SEPARATOR = " - ";
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	// The most characters an int needs: "-2147483648".
+	private static final int MAX_INT_LENGTH = 11;
+
+	private final Writer out;
+	private final int threshold;
+	private char[] buffer;
+	private int length = 0;
+
+	/**
+	 * Constructor: a sink that writes to the given writer once <code>DEFAULT_THRESHOLD</code> characters are
+	 * buffered.
+	 *
+	 * @param out the writer the output is written to.
+	 */
+	public BufferedOutputSink(Writer out) {
+		this(out, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Constructor: a sink that writes to the given writer once <code>threshold</code> characters are buffered.
+	 *
+	 * @param out the writer the output is written to.
+	 * @param threshold the number of buffered characters at which the buffer is written out.
+	 * @throws IllegalArgumentException - when the threshold is not positive.
+	 */
+	public BufferedOutputSink(Writer out, int threshold) {
+		if (threshold <= 0)
+			throw new IllegalArgumentException("The threshold must be positive, not " + threshold + ".");
+		this.out = out;
+		this.threshold = threshold;
+		this.buffer = new char[threshold + 64];
+	}
+
+	/**
+	 * Buffers the line <code>"&lt;register&gt; - &lt;value&gt;"</code>, writing out the buffer if it has reached
+	 * the threshold.
+	 *
+	 * @param register the register that is printed.
+	 * @param value the contents of the register.
+	 * @throws UncheckedIOException - when the buffer cannot be written.
+	 */
+	@Override
+	public void print(RegisterName register, int value) {
+		String name = register.name();
+		int required = length + name.length() + SEPARATOR.length() + MAX_INT_LENGTH + LINE_SEPARATOR.length();
+		if (required > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+		append(name);
+		append(SEPARATOR);
+		appendInt(value);
+		append(LINE_SEPARATOR);
+		if (length >= threshold)
+			flush();
+	}
+
+	/**
+	 * Writes the buffered output to the writer, and flushes the writer.
+	 *
+	 * @throws UncheckedIOException - when the output cannot be written.
+	 */
+	@Override
+	public void flush() {
+		try {
+			out.write(buffer, 0, length);
+			out.flush();
+			length = 0;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void append(String s) {
+		s.getChars(0, s.length(), buffer, length);
+		length += s.length();
+	}
+
+	private void appendInt(int value) {
+		// Work with the negative value, which (unlike the positive one) can represent Integer.MIN_VALUE.
+		int remaining = (value < 0) ? value : -value;
+		int digits = 1;
+		for (int i = remaining; i <= -10; i /= 10)
+			digits++;
+		if (value < 0)
+			buffer[length++] = '-';
+		int end = length + digits;
+		for (int i = end - 1; i >= length; i--) {
+			buffer[i] = (char) ('0' - remaining % 10);
+			remaining /= 10;
+		}
+		length = end;
+	}
+}
@@ -0,0 +1,377 @@
+package sml;
+
+import sml.instruction.*;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This class is a <code>final</code> class that stores a translated Small Machine Language (SML) program in a packed
+ * <code>int[]</code> rather than as a <code>List(sml.Instruction)</code>. Each instruction occupies
+ * <code>WIDTH</code> consecutive <code>int</code>s:
+ * <ol>
+ *     <li>the dense opcode id (e.g. <code>ADD</code>), with the <code>LABELLED</code> flag set if the instruction
+ *     has a label,</li>
+ *     <li>the ordinal of the first register operand,</li>
+ *     <li>the ordinal of the second register operand, or the immediate value of a 'mov',</li>
+ *     <li>the resolved address of the labelled instruction of a 'jnz' (or of a superinstruction that ends with
+ *     one), or the immediate value of a superinstruction that begins with a 'mov'.</li>
+ * </ol>
+ * The labels themselves are only kept so that the source text (and instructions) of the program can be reconstructed.
+ * An instance is <code>Serializable</code>; a deserialized instance is validated before it is used.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Bytecode implements Serializable {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	public static final int ADD = 0;
+	public static final int SUB = 1;
+	public static final int MUL = 2;
+	public static final int DIV = 3;
+	public static final int OUT = 4;
+	public static final int MOV = 5;
+	public static final int JNZ = 6;
+	/**
+	 * The opcode ids of the superinstructions, a 'sub' or 'add' fused with the 'jnz' on its result that follows it
+	 * (see <code>sml.optimizer.Superinstructions</code>).
+	 */
+	public static final int SUBJNZ = 7;
+	public static final int ADDJNZ = 8;
+	/**
+	 * The opcode ids of the superinstructions, a 'mov' fused with the 'add', 'sub' or 'mul' that follows it and reads
+	 * the register it sets (see <code>sml.optimizer.Superinstructions</code>).
+	 */
+	public static final int MOVADD = 9;
+	public static final int MOVSUB = 10;
+	public static final int MOVMUL = 11;
+
+	/**
+	 * The opcode of each opcode id, indexed by the id.
+	 */
+	private static final String[] OPCODES = {
+			AddInstruction.OP_CODE, SubtractInstruction.OP_CODE, MultiplyInstruction.OP_CODE,
+			DivideInstruction.OP_CODE, PrintInstruction.OP_CODE, MoveInstruction.OP_CODE,
+			JumpIfNotZeroInstruction.OP_CODE, SubtractJumpIfNotZeroInstruction.OP_CODE,
+			AddJumpIfNotZeroInstruction.OP_CODE, MoveAddInstruction.OP_CODE, MoveSubtractInstruction.OP_CODE,
+			MoveMultiplyInstruction.OP_CODE
+	};
+
+	public static final int OPCODE_MASK = 0xFF;
+	public static final int LABELLED = 0x100;
+	public static final int WIDTH = 4;
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	private final int[] code;
+	private final String[] labels;
+
+	private Bytecode(int[] code, String[] labels) {
+		this.code = code;
+		this.labels = labels;
+	}
+
+	/**
+	 * Returns the program of the given packed instructions and labels, which are not copied.
+	 *
+	 * @param code the packed instructions.
+	 * @param labels the label of each instruction (or <code>null</code>).
+	 * @return the program.
+	 * @throws IllegalArgumentException - when the program is not well formed (see <code>validate</code>).
+	 */
+	static Bytecode of(int[] code, String[] labels) {
+		Bytecode bytecode = new Bytecode(code, labels);
+		bytecode.validate();
+		return bytecode;
+	}
+
+	/**
+	 * Encodes a translated program. The target of each 'jnz' is taken from the instruction if it has been linked,
+	 * and is otherwise looked up in <code>labels</code>.
+	 *
+	 * @param program the instructions of the program.
+	 * @param labels the labels of the program.
+	 * @return the encoded program.
+	 * @throws IllegalArgumentException - when the program contains an instruction that has no encoding.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public static Bytecode encode(List<Instruction> program, Labels labels) {
+		int[] code = new int[program.size() * WIDTH];
+		String[] labelNames = new String[program.size()];
+		for (int address = 0; address < program.size(); address++) {
+			Instruction instruction = program.get(address);
+			int i = address * WIDTH;
+			labelNames[address] = instruction.getLabel();
+			int flags = (instruction.getLabel() == null) ? 0 : LABELLED;
+
+			if (instruction instanceof AddInstruction add) {
+				set(code, i, ADD | flags, add.getResult(), ordinal(add.getSource()), 0);
+			} else if (instruction instanceof SubtractInstruction sub) {
+				set(code, i, SUB | flags, sub.getResult(), ordinal(sub.getSource()), 0);
+			} else if (instruction instanceof MultiplyInstruction mul) {
+				set(code, i, MUL | flags, mul.getResult(), ordinal(mul.getSource()), 0);
+			} else if (instruction instanceof DivideInstruction div) {
+				set(code, i, DIV | flags, div.getResult(), ordinal(div.getSource()), 0);
+			} else if (instruction instanceof PrintInstruction out) {
+				set(code, i, OUT | flags, out.getSource(), 0, 0);
+			} else if (instruction instanceof MoveInstruction mov) {
+				set(code, i, MOV | flags, mov.getResult(), mov.getValue(), 0);
+			} else if (instruction instanceof JumpIfNotZeroInstruction jnz) {
+				set(code, i, JNZ | flags, jnz.getSource(), 0,
+						target(labels, jnz.getInstructionLabel(), jnz.getTargetAddress()));
+			} else if (instruction instanceof SubtractJumpIfNotZeroInstruction subjnz) {
+				set(code, i, SUBJNZ | flags, subjnz.getResult(), ordinal(subjnz.getSource()),
+						target(labels, subjnz.getInstructionLabel(), subjnz.getTargetAddress()));
+			} else if (instruction instanceof AddJumpIfNotZeroInstruction addjnz) {
+				set(code, i, ADDJNZ | flags, addjnz.getResult(), ordinal(addjnz.getSource()),
+						target(labels, addjnz.getInstructionLabel(), addjnz.getTargetAddress()));
+			} else if (instruction instanceof MoveArithmeticInstruction movop) {
+				int opcodeId = (movop instanceof MoveAddInstruction) ? MOVADD
+						: (movop instanceof MoveSubtractInstruction) ? MOVSUB : MOVMUL;
+				set(code, i, opcodeId | flags, movop.getResult(), ordinal(movop.getSource()), movop.getValue());
+			} else {
+				throw new IllegalArgumentException("Instruction \"" + instruction + "\" has no bytecode encoding.");
+			}
+		}
+		return new Bytecode(code, labelNames);
+	}
+
+	private static int target(Labels labels, String label, int targetAddress) {
+		return (targetAddress == JumpIfNotZeroInstruction.UNRESOLVED_ADDRESS) ? labels.getAddress(label) : targetAddress;
+	}
+
+	private static void set(int[] code, int i, int opcode, RegisterName a, int b, int target) {
+		code[i] = opcode;
+		code[i + 1] = ordinal(a);
+		code[i + 2] = b;
+		code[i + 3] = target;
+	}
+
+	private static int ordinal(RegisterName register) {
+		return ((Registers.Register) register).ordinal();
+	}
+
+	/**
+	 * Decodes the program back into instructions and labels - the inverse of <code>encode</code>.
+	 *
+	 * @return the program.
+	 */
+	public Program decode() {
+		List<Instruction> program = new ArrayList<>(size());
+		Labels labelled = new Labels();
+		for (int address = 0; address < size(); address++) {
+			String label = labels[address];
+			Registers.Register a = REGISTERS[getRegister(address)];
+			program.add(switch (getOpcodeId(address)) {
+				case ADD -> new AddInstruction(label, a, REGISTERS[getOperand(address)]);
+				case SUB -> new SubtractInstruction(label, a, REGISTERS[getOperand(address)]);
+				case MUL -> new MultiplyInstruction(label, a, REGISTERS[getOperand(address)]);
+				case DIV -> new DivideInstruction(label, a, REGISTERS[getOperand(address)]);
+				case OUT -> new PrintInstruction(label, a);
+				case MOV -> new MoveInstruction(label, a, getOperand(address));
+				case SUBJNZ -> new SubtractJumpIfNotZeroInstruction(label, a, REGISTERS[getOperand(address)],
+						labels[getTarget(address)]);
+				case ADDJNZ -> new AddJumpIfNotZeroInstruction(label, a, REGISTERS[getOperand(address)],
+						labels[getTarget(address)]);
+				case MOVADD -> new MoveAddInstruction(label, a, REGISTERS[getOperand(address)], getValue(address));
+				case MOVSUB -> new MoveSubtractInstruction(label, a, REGISTERS[getOperand(address)], getValue(address));
+				case MOVMUL -> new MoveMultiplyInstruction(label, a, REGISTERS[getOperand(address)], getValue(address));
+				default -> new JumpIfNotZeroInstruction(label, a, labels[getTarget(address)]);
+			});
+			if (label != null)
+				labelled.addLabel(label, address);
+		}
+		return new Program(program, labelled);
+	}
+
+	/**
+	 * Checks that the program is well formed: every opcode id, register ordinal and 'jnz' target is in range, the
+	 * target of every 'jnz' (and superinstruction that ends with one) is labelled, and no label is used twice.
+	 *
+	 * @throws IllegalArgumentException - when the program is not well formed.
+	 */
+	void validate() {
+		if (code.length != labels.length * WIDTH)
+			throw new IllegalArgumentException("The program has " + code.length + " ints for " + labels.length +
+					" instructions.");
+		Set<String> names = new HashSet<>();
+		for (int address = 0; address < labels.length; address++) {
+			int i = address * WIDTH;
+			int opcodeId = code[i] & OPCODE_MASK;
+			boolean valid = (code[i] & ~(OPCODE_MASK | LABELLED)) == 0
+					&& opcodeId <= MOVMUL
+					&& ((code[i] & LABELLED) != 0) == (labels[address] != null)
+					&& isRegister(code[i + 1])
+					&& (opcodeId == MOV || opcodeId == OUT || opcodeId == JNZ || isRegister(code[i + 2]))
+					&& (!isJumpOpcode(opcodeId) || (code[i + 3] >= 0 && code[i + 3] < labels.length && labels[code[i + 3]] != null));
+			if (!valid)
+				throw new IllegalArgumentException("The instruction at " + address + " is not well formed.");
+			if (labels[address] != null && !names.add(labels[address]))
+				throw new IllegalArgumentException("The label " + labels[address] + " at " + address
+						+ " is already used.");
+		}
+	}
+
+	private static boolean isRegister(int ordinal) {
+		return ordinal >= 0 && ordinal < REGISTERS.length;
+	}
+
+	@Serial
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (code == null || labels == null)
+			throw new InvalidObjectException("The program is missing.");
+		try {
+			validate();
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the packed instructions. The array is not copied, and must not be modified.
+	 *
+	 * @return the packed instructions.
+	 */
+	int[] code() {
+		return code;
+	}
+
+	/**
+	 * @return the number of instructions in the program.
+	 */
+	public int size() {
+		return labels.length;
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the opcode id of the instruction, e.g. <code>ADD</code>.
+	 */
+	public int getOpcodeId(int address) {
+		return code[address * WIDTH] & OPCODE_MASK;
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the label of the instruction, or <code>null</code> if it has none.
+	 */
+	public String getLabel(int address) {
+		return labels[address];
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the ordinal of the first register operand of the instruction.
+	 */
+	public int getRegister(int address) {
+		return code[address * WIDTH + 1];
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the ordinal of the second register operand, or the immediate value of a 'mov'.
+	 */
+	public int getOperand(int address) {
+		return code[address * WIDTH + 2];
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the address of the labelled instruction of a 'jnz' (or a superinstruction that ends with one).
+	 */
+	public int getTarget(int address) {
+		return code[address * WIDTH + 3];
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the immediate value of a superinstruction that begins with a 'mov' (e.g. <code>MOVADD</code>).
+	 */
+	public int getValue(int address) {
+		return code[address * WIDTH + 3];
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return whether the instruction may execute a labelled instruction, i.e. it is a 'jnz' or a superinstruction
+	 * that ends with one.
+	 */
+	public boolean isJump(int address) {
+		return isJumpOpcode(getOpcodeId(address));
+	}
+
+	private static boolean isJumpOpcode(int opcodeId) {
+		return opcodeId == JNZ || opcodeId == SUBJNZ || opcodeId == ADDJNZ;
+	}
+
+	/**
+	 * Returns the opcode (e.g. "add") of an opcode id.
+	 *
+	 * @param opcodeId the opcode id, e.g. <code>ADD</code>.
+	 * @return the opcode.
+	 */
+	public static String getOpcode(int opcodeId) {
+		return OPCODES[opcodeId];
+	}
+
+	/**
+	 * Reconstructs the source text of the instruction at the given address, in the same format as
+	 * <code>Instruction.toString()</code>.
+	 *
+	 * @param address the address of an instruction.
+	 * @return a String representation of the instruction.
+	 */
+	public String toString(int address) {
+		int opcodeId = getOpcodeId(address);
+		String label = (labels[address] == null) ? "" : labels[address] + ": ";
+		String register = REGISTERS[getRegister(address)].name();
+		return label + OPCODES[opcodeId] + " " + switch (opcodeId) {
+			case OUT -> register;
+			case MOV -> register + " " + getOperand(address);
+			case JNZ -> register + " " + labels[getTarget(address)];
+			case SUBJNZ, ADDJNZ -> register + " " + REGISTERS[getOperand(address)].name() + " " + labels[getTarget(address)];
+			case MOVADD, MOVSUB, MOVMUL -> register + " " + REGISTERS[getOperand(address)].name() + " " + getValue(address);
+			default -> register + " " + REGISTERS[getOperand(address)].name();
+		};
+	}
+
+	/**
+	 * String representation of the program.
+	 *
+	 * @return the reconstructed source text of the program, one instruction per line.
+	 */
+	@Override
+	public String toString() {
+		return IntStream.range(0, size())
+				.mapToObj(this::toString)
+				.collect(Collectors.joining("\n"));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o instanceof Bytecode other) {
+			return Arrays.equals(code, other.code) && Arrays.equals(labels, other.labels);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(code) + Arrays.hashCode(labels);
+	}
+}
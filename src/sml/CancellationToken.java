@@ -0,0 +1,27 @@
+package sml;
+
+/**
+ * This class is a <code>final</code> class that lets one thread ask for the execution of a Small Machine Language
+ * (SML) program on another to stop (see <code>sml.ExecutionLimits</code>). Once cancelled, a token stays cancelled.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class CancellationToken {
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Asks the program(s) executed with this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return <code>true</code> if the token has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,161 @@
+package sml;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * This class is a <code>final</code> class that takes snapshots (see <code>sml.Snapshot</code>) of the executions of
+ * a machine (see <code>Machine.setCheckpoints(Checkpoints)</code>) and writes them to a file, every
+ * <code>interval</code> steps and whenever another thread asks for one - e.g. a shutdown hook, when the JVM is
+ * stopped - so a long execution can be resumed from the last snapshot if it is lost.
+ * <p>
+ * Snapshots are taken at the checkpoints at which an execution checks its <code>sml.ExecutionLimits</code>, so they
+ * add no cost to the steps between them; a requested snapshot is taken within
+ * <code>ExecutionLimits.CHECK_INTERVAL</code> steps. A program that cannot be encoded (see <code>sml.Bytecode</code>)
+ * is not checkpointed. A snapshot that cannot be written is reported and counted (see <code>getFailures()</code>),
+ * and the execution carries on; the file keeps the last snapshot written.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Checkpoints {
+
+	private final Path file;
+	private final long interval;
+	private final Object lock = new Object();
+	private volatile boolean requested = false;
+	private Snapshot last = null;
+	private long count = 0;
+	private long failures = 0;
+
+	/**
+	 * Constructor: checkpoints that write a snapshot to the given file every <code>interval</code> steps.
+	 *
+	 * @param file the file the snapshots are written to; each snapshot replaces the last.
+	 * @param interval the number of steps between snapshots, or <code>Long.MAX_VALUE</code> to take them only when
+	 * asked to.
+	 * @throws IllegalArgumentException - when the interval is not positive.
+	 */
+	public Checkpoints(Path file, long interval) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("The interval between snapshots must be positive: " + interval);
+		this.file = Objects.requireNonNull(file);
+		this.interval = interval;
+	}
+
+	/**
+	 * Asks the execution to take a snapshot at its next checkpoint.
+	 */
+	public void request() {
+		requested = true;
+	}
+
+	/**
+	 * Asks the execution to take a snapshot, and waits for it to be written.
+	 *
+	 * @param timeout the longest time to wait.
+	 * @return <code>true</code> if a snapshot was written, or <code>false</code> if it could not be written, or none
+	 * was written in time (e.g. because no program is being executed).
+	 * @throws InterruptedException - if the thread is interrupted while waiting.
+	 */
+	public boolean requestAndAwait(Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		synchronized (lock) {
+			long before = count;
+			long failedBefore = failures;
+			request();
+			for (long remaining = timeout.toNanos(); count == before && failures == failedBefore;
+					remaining = deadline - System.nanoTime()) {
+				if (remaining <= 0)
+					return false;
+				lock.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+			}
+			return count != before;
+		}
+	}
+
+	/**
+	 * @return the step at which the first snapshot of an execution is due.
+	 */
+	long first(long steps) {
+		return (interval > Long.MAX_VALUE - steps) ? Long.MAX_VALUE : steps + interval;
+	}
+
+	/**
+	 * @return whether a snapshot has been asked for.
+	 */
+	boolean isRequested() {
+		return requested;
+	}
+
+	/**
+	 * Writes a snapshot to the file. If the file cannot be written, the failure is reported and counted, and the file
+	 * keeps the last snapshot written.
+	 *
+	 * @param snapshot the snapshot.
+	 */
+	void write(Snapshot snapshot) {
+		requested = false;
+		boolean written;
+		try {
+			snapshot.write(file);
+			written = true;
+		}
+		catch (IOException e) {
+			System.out.println("Error: Unable to write the snapshot to " + file + " (" + e + ").");
+			written = false;
+		}
+		synchronized (lock) {
+			if (written) {
+				last = snapshot;
+				count++;
+			}
+			else
+				failures++;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the file the snapshots are written to.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of steps between snapshots.
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the last snapshot written, or <code>null</code> if none has been.
+	 */
+	public Snapshot getLast() {
+		synchronized (lock) {
+			return last;
+		}
+	}
+
+	/**
+	 * @return the number of snapshots written.
+	 */
+	public long getCount() {
+		synchronized (lock) {
+			return count;
+		}
+	}
+
+	/**
+	 * @return the number of snapshots that could not be written.
+	 */
+	public long getFailures() {
+		synchronized (lock) {
+			return failures;
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package sml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a <code>final</code> class that finds the regions of an encoded Small Machine Language (SML) program
+ * (see <code>sml.Bytecode</code>) that repeat the same short sequence of instructions - the body - many times over, as
+ * an unrolled loop does, and executes each of them in a constant number of operations, whatever the number of
+ * repetitions. A body can be accelerated when it only updates induction variables: each register it writes is only
+ * added to or subtracted from, only multiplied, or only set by 'mov', by registers that the body never writes. Its
+ * 'jnz' instructions (and the superinstructions that end with one) may test such an induction variable, and execute a
+ * labelled 'add', 'sub' or 'mul' of the same kind.
+ * <p>
+ * The registers at the end of a region are then computed from their values at its start, with the wrap-around of
+ * 32-bit <code>int</code> arithmetic: <code>n</code> additions of <code>s</code> are one addition of
+ * <code>n * s</code>, <code>n</code> multiplications by <code>s</code> are one multiplication by <code>s</code> to the
+ * power of <code>n</code>, and the number of times a 'jnz' is taken is <code>n</code> less the number of repetitions
+ * in which its induction variable is zero, which is the number of solutions of a linear congruence modulo 2^32. The
+ * rest of the program is executed by an <code>sml.SwitchInterpreter</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ClosedForm {
+
+	/**
+	 * The greatest number of instructions in the body of a region.
+	 */
+	public static final int MAX_BODY = 16;
+	/**
+	 * The least number of instructions in a region; shorter regions are executed as they are.
+	 */
+	public static final int MIN_INSTRUCTIONS = 16;
+
+	// The kinds of update of a register.
+	private static final int NONE = 0;
+	private static final int ADDITIVE = 1;
+	private static final int MULTIPLICATIVE = 2;
+	private static final int ASSIGNED = 3;
+
+	private final List<Region> regions;
+
+	private ClosedForm(List<Region> regions) {
+		this.regions = List.copyOf(regions);
+	}
+
+	/**
+	 * Finds the regions of a program that can be executed in closed form. The regions do not overlap, and no region
+	 * begins with a labelled instruction.
+	 *
+	 * @param bytecode the encoded program.
+	 * @return the regions of the program.
+	 */
+	public static ClosedForm of(Bytecode bytecode) {
+		List<Region> regions = new ArrayList<>();
+		int size = bytecode.size();
+		int address = 0;
+		while (address < size) {
+			Region best = null;
+			// Whether a body is rejected depends only on which instructions it holds, not on their order, so a body
+			// that starts later in the repetitions of a rejected body (and ends in them) is rejected too. The search
+			// skips to the last repetition, which keeps it linear in the length of a run that cannot be accelerated.
+			int next = address + 1;
+			if (bytecode.getLabel(address) == null) {
+				for (int body = 1; body <= MAX_BODY && address + 2 * body <= size; body++) {
+					int iterations = repetitions(bytecode, address, body);
+					int instructions = iterations * body;
+					if (iterations < 2 || instructions < MIN_INSTRUCTIONS
+							|| (best != null && instructions <= best.getEnd() - best.getStart()))
+						continue;
+					Region region = Region.of(bytecode, address, body, iterations);
+					if (region != null)
+						best = region;
+					else
+						next = Math.max(next, address + (iterations - 1) * body);
+				}
+			}
+			if (best != null) {
+				regions.add(best);
+				address = best.getEnd();
+			}
+			else
+				address = next;
+		}
+		return new ClosedForm(regions);
+	}
+
+	/**
+	 * Returns the number of times the sequence of instructions that begins at an address is repeated, one copy
+	 * straight after the other.
+	 */
+	private static int repetitions(Bytecode bytecode, int address, int body) {
+		int iterations = 1;
+		int next = address + body;
+		while (next + body <= bytecode.size()) {
+			for (int i = 0; i < body; i++) {
+				if (!same(bytecode, address + i, next + i))
+					return iterations;
+			}
+			iterations++;
+			next += body;
+		}
+		return iterations;
+	}
+
+	/**
+	 * Returns whether two instructions have the same effect when they are executed in sequence: two labelled
+	 * instructions (which are skipped), or two instructions with the same opcode and operands whose labelled
+	 * instructions, if they are jumps, have the same opcode and operands.
+	 */
+	private static boolean same(Bytecode bytecode, int a, int b) {
+		boolean labelled = bytecode.getLabel(a) != null;
+		if (labelled || bytecode.getLabel(b) != null)
+			return labelled && bytecode.getLabel(b) != null;
+		if (!sameOperation(bytecode, a, b))
+			return false;
+		return !bytecode.isJump(a) || sameOperation(bytecode, bytecode.getTarget(a), bytecode.getTarget(b));
+	}
+
+	private static boolean sameOperation(Bytecode bytecode, int a, int b) {
+		return bytecode.getOpcodeId(a) == bytecode.getOpcodeId(b)
+				&& bytecode.getRegister(a) == bytecode.getRegister(b)
+				&& bytecode.getOperand(a) == bytecode.getOperand(b);
+	}
+
+	/**
+	 * @return the regions of the program, in order of address.
+	 */
+	public List<Region> getRegions() {
+		return regions;
+	}
+
+	/**
+	 * Executes a program with the given interpreter, executing its regions in closed form.
+	 *
+	 * @param interpreter the interpreter of the program.
+	 * @param registers the registers the program runs on.
+	 * @param size the number of instructions in the program.
+	 * @throws ArithmeticException - when a 'div' (outside the regions) has an operand of 0.
+	 */
+	void execute(SwitchInterpreter interpreter, Registers registers, int size) {
+		int[] r = registers.values();
+		int address = 0;
+		for (Region region : regions) {
+			interpreter.run(address, region.getStart());
+			region.apply(r);
+			address = region.getEnd();
+		}
+		interpreter.run(address, size);
+	}
+
+	/**
+	 * A region of the program: a body of instructions repeated a number of times, with the updates of the registers
+	 * that one execution of the body makes.
+	 */
+	public static final class Region {
+		private final int start;
+		private final int body;
+		private final int iterations;
+		// The updates of the body, in order: the opcode (ADD, SUB, MUL or MOV), the register written, and the register
+		// (or immediate value, for MOV) operand of each; and the index (in jumps) of the 'jnz' that executes it,
+		// or -1 if it is executed unconditionally.
+		private final int[] opcodes;
+		private final int[] results;
+		private final int[] operands;
+		private final int[] conditions;
+		// The register tested by each 'jnz', and the number of updates that come before it in the body.
+		private final int[] tested;
+		private final int[] before;
+
+		private Region(int start, int body, int iterations, int[] opcodes, int[] results, int[] operands,
+				int[] conditions, int[] tested, int[] before) {
+			this.start = start;
+			this.body = body;
+			this.iterations = iterations;
+			this.opcodes = opcodes;
+			this.results = results;
+			this.operands = operands;
+			this.conditions = conditions;
+			this.tested = tested;
+			this.before = before;
+		}
+
+		/**
+		 * Returns the region of a body repeated the given number of times, if the body can be executed in closed form.
+		 *
+		 * @return the region, or <code>null</code> if the body does not only update induction variables.
+		 */
+		private static Region of(Bytecode bytecode, int start, int body, int iterations) {
+			List<int[]> updates = new ArrayList<>();
+			List<int[]> jumps = new ArrayList<>();
+			for (int address = start; address < start + body; address++) {
+				if (bytecode.getLabel(address) != null)
+					continue;
+				int opcode = bytecode.getOpcodeId(address);
+				int register = bytecode.getRegister(address);
+				switch (opcode) {
+					case Bytecode.ADD, Bytecode.SUB, Bytecode.MUL, Bytecode.MOV ->
+							updates.add(new int[] {opcode, register, bytecode.getOperand(address), -1});
+					case Bytecode.JNZ, Bytecode.SUBJNZ, Bytecode.ADDJNZ -> {
+						if (opcode != Bytecode.JNZ)
+							updates.add(new int[] {(opcode == Bytecode.SUBJNZ) ? Bytecode.SUB : Bytecode.ADD, register,
+									bytecode.getOperand(address), -1});
+						int target = bytecode.getTarget(address);
+						int targetOpcode = bytecode.getOpcodeId(target);
+						if (targetOpcode != Bytecode.ADD && targetOpcode != Bytecode.SUB && targetOpcode != Bytecode.MUL)
+							return null;
+						jumps.add(new int[] {register, updates.size()});
+						updates.add(new int[] {targetOpcode, bytecode.getRegister(target), bytecode.getOperand(target),
+								jumps.size() - 1});
+					}
+					default -> {
+						// 'out' and 'div' have effects that cannot be repeated in closed form, and the arithmetic of a
+						// fused 'mov' reads a register that the body writes, so it is not an induction variable.
+						return null;
+					}
+				}
+			}
+			if (updates.isEmpty() || !induction(updates, jumps))
+				return null;
+			int[] opcodes = new int[updates.size()];
+			int[] results = new int[updates.size()];
+			int[] operands = new int[updates.size()];
+			int[] conditions = new int[updates.size()];
+			for (int i = 0; i < updates.size(); i++) {
+				opcodes[i] = updates.get(i)[0];
+				results[i] = updates.get(i)[1];
+				operands[i] = updates.get(i)[2];
+				conditions[i] = updates.get(i)[3];
+			}
+			int[] tested = new int[jumps.size()];
+			int[] before = new int[jumps.size()];
+			for (int j = 0; j < jumps.size(); j++) {
+				tested[j] = jumps.get(j)[0];
+				before[j] = jumps.get(j)[1];
+			}
+			return new Region(start, body, iterations, opcodes, results, operands, conditions, tested, before);
+		}
+
+		/**
+		 * Returns whether the updates of a body only update induction variables, and its jumps only test them.
+		 */
+		private static boolean induction(List<int[]> updates, List<int[]> jumps) {
+			int[] kinds = new int[Registers.Register.values().length];
+			boolean[] conditional = new boolean[kinds.length];
+			for (int[] update : updates) {
+				int kind = switch (update[0]) {
+					case Bytecode.ADD, Bytecode.SUB -> ADDITIVE;
+					case Bytecode.MUL -> MULTIPLICATIVE;
+					default -> ASSIGNED;
+				};
+				if (kinds[update[1]] != NONE && kinds[update[1]] != kind)
+					return false;
+				kinds[update[1]] = kind;
+				conditional[update[1]] |= update[3] >= 0;
+			}
+			for (int[] update : updates) {
+				// The operands must be the same in every repetition.
+				if (update[0] != Bytecode.MOV && kinds[update[2]] != NONE)
+					return false;
+				if (update[0] == Bytecode.MOV && update[3] >= 0)
+					return false;
+			}
+			for (int[] jump : jumps) {
+				// A tested register must change by the same amount in every repetition.
+				if (kinds[jump[0]] != NONE && (kinds[jump[0]] != ADDITIVE || conditional[jump[0]]))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Updates the registers as executing the region would.
+		 *
+		 * @param r the values of the registers at the start of the region.
+		 */
+		void apply(int[] r) {
+			// The tested registers are only changed by unconditional updates, which do not depend on the jumps, so
+			// the number of times each jump is taken is found from the values at the start of the region.
+			long[] taken = new long[tested.length];
+			for (int j = 0; j < tested.length; j++) {
+				int register = tested[j];
+				int step = 0;
+				int offset = 0;
+				for (int i = 0; i < opcodes.length; i++) {
+					if (results[i] != register)
+						continue;
+					int delta = (opcodes[i] == Bytecode.ADD) ? r[operands[i]] : -r[operands[i]];
+					step += delta;
+					if (i < before[j])
+						offset += delta;
+				}
+				taken[j] = iterations - zeros(r[register] + offset, step, iterations);
+			}
+			for (int i = 0; i < opcodes.length; i++) {
+				long count = (conditions[i] < 0) ? iterations : taken[conditions[i]];
+				switch (opcodes[i]) {
+					case Bytecode.ADD -> r[results[i]] += (int) (count * r[operands[i]]);
+					case Bytecode.SUB -> r[results[i]] -= (int) (count * r[operands[i]]);
+					case Bytecode.MUL -> r[results[i]] *= power(r[operands[i]], count);
+					default -> r[results[i]] = operands[i];
+				}
+			}
+		}
+
+		/**
+		 * @return the address of the first instruction of the region.
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the address of the instruction after the region.
+		 */
+		public int getEnd() {
+			return start + body * iterations;
+		}
+
+		/**
+		 * @return the number of instructions in the body of the region.
+		 */
+		public int getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the number of times the body is repeated.
+		 */
+		public int getIterations() {
+			return iterations;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + start + ", " + getEnd() + ") " + iterations + " x " + body + " instructions";
+		}
+	}
+
+	/**
+	 * Returns the number of <code>i</code> in <code>[0, n)</code> for which <code>a + i * d</code> is 0 in
+	 * <code>int</code> arithmetic, i.e. the number of solutions of <code>i * d = -a</code> modulo 2^32.
+	 *
+	 * @param a the value at <code>i = 0</code>.
+	 * @param d the change from each <code>i</code> to the next.
+	 * @param n the number of values.
+	 * @return the number of values that are 0.
+	 */
+	static long zeros(int a, int d, long n) {
+		if (d == 0)
+			return (a == 0) ? n : 0;
+		// With d = 2^shift * odd, there is a solution only if 2^shift divides a, and then the solutions are the
+		// i = -(a / 2^shift) * odd^-1 modulo 2^(32 - shift).
+		int shift = Integer.numberOfTrailingZeros(d);
+		if (Integer.numberOfTrailingZeros(a) < shift)
+			return 0;
+		long modulus = 1L << (32 - shift);
+		long first = Integer.toUnsignedLong(-(a >> shift) * inverse(d >> shift)) & (modulus - 1);
+		return (first < n) ? 1 + (n - 1 - first) / modulus : 0;
+	}
+
+	/**
+	 * Returns the inverse of an odd number modulo 2^32, by Newton's iteration: each step doubles the number of
+	 * correct low bits, and every odd number is its own inverse modulo 8.
+	 */
+	private static int inverse(int odd) {
+		int inverse = odd;
+		for (int i = 0; i < 4; i++)
+			inverse *= 2 - odd * inverse;
+		return inverse;
+	}
+
+	/**
+	 * Returns a number to a power in <code>int</code> arithmetic, by repeated squaring.
+	 */
+	static int power(int base, long exponent) {
+		int result = 1;
+		while (exponent > 0) {
+			if ((exponent & 1) != 0)
+				result *= base;
+			base *= base;
+			exponent >>= 1;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,78 @@
+package sml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a <code>final</code> class that implements <code>sml.OutputSink</code> by keeping the output of a
+ * program in memory - the register and the value of each 'out', in the order they were printed. The lines of text
+ * are only created when asked for by <code>getLines()</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class CollectingOutputSink implements OutputSink {
+
+	private RegisterName[] registers = new RegisterName[16];
+	private int[] values = new int[16];
+	private int size = 0;
+
+	@Override
+	public void print(RegisterName register, int value) {
+		if (size == values.length) {
+			registers = Arrays.copyOf(registers, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		registers[size] = register;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * @return the number of values printed.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the register of the given value printed.
+	 *
+	 * @param index the index of the value, in the order printed.
+	 * @return the register.
+	 */
+	public RegisterName getRegister(int index) {
+		return registers[index];
+	}
+
+	/**
+	 * Returns the given value printed.
+	 *
+	 * @param index the index of the value, in the order printed.
+	 * @return the value.
+	 */
+	public int getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Returns the output as lines of text, as they would be printed to the console.
+	 *
+	 * @return the lines <code>"&lt;register&gt; - &lt;value&gt;"</code>, in the order printed.
+	 */
+	public List<String> getLines() {
+		List<String> lines = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			lines.add(registers[i].name() + " - " + values[i]);
+		return lines;
+	}
+
+	/**
+	 * Discards the collected output.
+	 */
+	public void clear() {
+		Arrays.fill(registers, 0, size, null);
+		size = 0;
+	}
+}
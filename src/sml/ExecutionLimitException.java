@@ -0,0 +1,60 @@
+package sml;
+
+import java.io.Serial;
+
+/**
+ * This exception is thrown when the execution of a Small Machine Language (SML) program is stopped by one of its
+ * <code>sml.ExecutionLimits</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public class ExecutionLimitException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The limits that can stop a program.
+	 */
+	public enum Reason {
+		STEPS("the maximum number of steps was reached"),
+		DEADLINE("the deadline passed"),
+		CANCELLED("it was cancelled");
+
+		private final String description;
+
+		Reason(String description) {
+			this.description = description;
+		}
+	}
+
+	private final Reason reason;
+	private final long steps;
+
+	/**
+	 * Constructor: the exception for a program stopped for the given reason.
+	 *
+	 * @param reason the limit that stopped the program.
+	 * @param steps the number of instructions executed before the program stopped.
+	 */
+	public ExecutionLimitException(Reason reason, long steps) {
+		super("Program execution stopped after " + steps + " steps as " + reason.description + ".");
+		this.reason = reason;
+		this.steps = steps;
+	}
+
+	/**
+	 * @return the limit that stopped the program.
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return the number of instructions executed before the program stopped.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+}
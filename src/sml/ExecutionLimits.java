@@ -0,0 +1,113 @@
+package sml;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * This class is a <code>final</code> class that holds the limits on the execution of a Small Machine Language (SML)
+ * program by <code>Machine.execute(ExecutionLimits)</code>: the most instructions (steps) that may be executed, a
+ * wall-clock deadline, and a <code>sml.CancellationToken</code>. An instance is immutable; each <code>with</code>
+ * method returns a copy with one limit changed.
+ * <p>
+ * The number of steps is checked before every instruction; the deadline and the token are checked every
+ * <code>CHECK_INTERVAL</code> steps, and before the first.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ExecutionLimits {
+
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * No limits.
+	 */
+	public static final ExecutionLimits NONE = new ExecutionLimits(Long.MAX_VALUE, null, null);
+
+	private final long maxSteps;
+	private final Instant deadline;
+	private final CancellationToken cancellation;
+
+	private ExecutionLimits(long maxSteps, Instant deadline, CancellationToken cancellation) {
+		this.maxSteps = maxSteps;
+		this.deadline = deadline;
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * Returns a copy of these limits that allows at most the given number of steps.
+	 *
+	 * @param maxSteps the most instructions that may be executed.
+	 * @return the new limits.
+	 * @throws IllegalArgumentException - when maxSteps is negative.
+	 */
+	public ExecutionLimits withMaxSteps(long maxSteps) {
+		if (maxSteps < 0)
+			throw new IllegalArgumentException("The maximum number of steps cannot be negative: " + maxSteps);
+		return new ExecutionLimits(maxSteps, deadline, cancellation);
+	}
+
+	/**
+	 * Returns a copy of these limits with the given deadline.
+	 *
+	 * @param deadline the time by which the program must have finished.
+	 * @return the new limits.
+	 */
+	public ExecutionLimits withDeadline(Instant deadline) {
+		return new ExecutionLimits(maxSteps, Objects.requireNonNull(deadline), cancellation);
+	}
+
+	/**
+	 * Returns a copy of these limits with a deadline of the given duration from now.
+	 *
+	 * @param timeout the time the program may run for, from now.
+	 * @return the new limits.
+	 */
+	public ExecutionLimits withTimeout(Duration timeout) {
+		return withDeadline(Instant.now().plus(timeout));
+	}
+
+	/**
+	 * Returns a copy of these limits with the given cancellation token.
+	 *
+	 * @param cancellation the token that can cancel the execution.
+	 * @return the new limits.
+	 */
+	public ExecutionLimits withCancellation(CancellationToken cancellation) {
+		return new ExecutionLimits(maxSteps, deadline, Objects.requireNonNull(cancellation));
+	}
+
+	/**
+	 * @return the most instructions that may be executed (<code>Long.MAX_VALUE</code> when unlimited).
+	 */
+	public long getMaxSteps() {
+		return maxSteps;
+	}
+
+	/**
+	 * @return the deadline, or <code>null</code> if there is none.
+	 */
+	public Instant getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @return the cancellation token, or <code>null</code> if there is none.
+	 */
+	public CancellationToken getCancellation() {
+		return cancellation;
+	}
+
+	/**
+	 * @return <code>true</code> if there are no limits.
+	 */
+	public boolean isUnlimited() {
+		return maxSteps == Long.MAX_VALUE && deadline == null && cancellation == null;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionLimits[maxSteps=" + maxSteps + ", deadline=" + deadline + ", cancellation=" + cancellation + "]";
+	}
+}
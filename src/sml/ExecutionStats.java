@@ -0,0 +1,279 @@
+package sml;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a <code>final</code> class that counts what a <code>sml.Machine</code> executes, when the machine is
+ * given one (see <code>Machine.setStats</code>): the number of times the instruction at each address is executed,
+ * the number of times each 'jnz' executes its labelled instruction (is taken) or not, and the number of steps and
+ * nanoseconds of each execution, with a histogram of the durations. The counts per opcode are derived from the counts
+ * per address. The counts accumulate over the executions of a program, and start again when a different program is
+ * executed. The counts can also be grouped into the basic blocks of the program, to find its hottest parts (see
+ * <code>getBlockProfile()</code>).
+ * <p>
+ * A machine without statistics does not count anything, and a machine with statistics executes its program with the
+ * <code>SWITCH</code> engine (so its instructions must have an encoding). The statistics can be written as JSON with
+ * <code>toJson()</code>, and are written to a file at the end of every execution if one is given; a file that cannot
+ * be written is reported and counted (see <code>getDumpFailures()</code>), and does not change the outcome of the
+ * execution.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ExecutionStats {
+
+	/**
+	 * The number of buckets of the histogram of durations; bucket <code>i</code> counts the executions that took
+	 * less than <code>2^i</code> nanoseconds (and at least <code>2^(i-1)</code>).
+	 */
+	public static final int HISTOGRAM_BUCKETS = 64;
+
+	private final Path dump;
+	private Bytecode bytecode;
+	private long[] hits = new long[0];
+	private long[] taken = new long[0];
+	private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+	private long runs = 0;
+	private long nanos = 0;
+	private long dumpFailures = 0;
+
+	/**
+	 * Constructor: statistics that are only kept in memory.
+	 */
+	public ExecutionStats() {
+		this(null);
+	}
+
+	/**
+	 * Constructor: statistics that are written as JSON to the given file at the end of every execution.
+	 *
+	 * @param dump the file the statistics are written to, or <code>null</code>.
+	 */
+	public ExecutionStats(Path dump) {
+		this.dump = dump;
+	}
+
+	/**
+	 * Called by the machine before a program is executed; starts counting again if the program is not the one
+	 * counted so far.
+	 *
+	 * @param program the encoded program.
+	 */
+	void begin(Bytecode program) {
+		if (program == bytecode || program.equals(bytecode))
+			return;
+		bytecode = program;
+		hits = new long[program.size()];
+		taken = new long[program.size()];
+		Arrays.fill(histogram, 0);
+		runs = 0;
+		nanos = 0;
+	}
+
+	/**
+	 * @return the number of times the instruction at each address has been executed, indexed by address; the
+	 * interpreter increments the elements directly.
+	 */
+	long[] hits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of times the 'jnz' at each address has executed its labelled instruction, indexed by
+	 * address; the interpreter increments the elements directly.
+	 */
+	long[] taken() {
+		return taken;
+	}
+
+	/**
+	 * Called by the machine after a program has been executed (or failed). The statistics are written to the file, if
+	 * one was given; a failure to write them is reported, not thrown, so the outcome of the execution is kept.
+	 *
+	 * @param duration the duration of the execution, in nanoseconds.
+	 */
+	void end(long duration) {
+		runs++;
+		nanos += duration;
+		histogram[Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, duration)))]++;
+		if (dump != null) {
+			try {
+				Files.writeString(dump, toJson());
+			}
+			catch (IOException e) {
+				System.out.println("Error: Unable to write the execution statistics to " + dump + " (" + e + ").");
+				dumpFailures++;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of executions counted.
+	 */
+	public long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @return the number of times the statistics could not be written to the file.
+	 */
+	public long getDumpFailures() {
+		return dumpFailures;
+	}
+
+	/**
+	 * @return the total number of instructions executed.
+	 */
+	public long getSteps() {
+		long steps = 0;
+		for (long count : hits)
+			steps += count;
+		return steps;
+	}
+
+	/**
+	 * @return the total duration of the executions, in nanoseconds.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns the number of times the instruction at the given address has been executed.
+	 *
+	 * @param address the address of the instruction.
+	 * @return the count.
+	 */
+	public long getHits(int address) {
+		return hits[address];
+	}
+
+	/**
+	 * Returns the number of times the 'jnz' at the given address executed its labelled instruction.
+	 *
+	 * @param address the address of the 'jnz'.
+	 * @return the count (0 if the instruction is not a 'jnz').
+	 */
+	public long getTaken(int address) {
+		return taken[address];
+	}
+
+	/**
+	 * Returns the number of times the 'jnz' at the given address did not execute its labelled instruction.
+	 *
+	 * @param address the address of the 'jnz'.
+	 * @return the count (0 if the instruction is not a 'jnz').
+	 */
+	public long getNotTaken(int address) {
+		return bytecode.isJump(address) ? hits[address] - taken[address] : 0;
+	}
+
+	/**
+	 * @return the number of instructions executed of each opcode, in opcode id order.
+	 */
+	public Map<String, Long> getOpcodeCounts() {
+		long[] counts = new long[Bytecode.MOVMUL + 1];
+		for (int address = 0; address < hits.length; address++)
+			counts[bytecode.getOpcodeId(address)] += hits[address];
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (int id = 0; id < counts.length; id++)
+			result.put(Bytecode.getOpcode(id), counts[id]);
+		return result;
+	}
+
+	/**
+	 * @return the histogram of the durations of the executions (see <code>HISTOGRAM_BUCKETS</code>).
+	 */
+	public long[] getDurationHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * Returns the profile of the basic blocks of the program counted, ranked by the number of steps executed in them.
+	 *
+	 * @return the profile.
+	 * @throws IllegalStateException - when no program has been executed.
+	 */
+	public BlockProfile getBlockProfile() {
+		if (bytecode == null)
+			throw new IllegalStateException("No program has been executed.");
+		return new BlockProfile(bytecode, hits.clone(), runs);
+	}
+
+	/**
+	 * Returns the statistics as a JSON object, of the form:
+	 * <pre>
+	 * {"runs": 1, "steps": 9, "nanos": 5120,
+	 *  "opcodes": {"add": 1, ...},
+	 *  "branches": {"taken": 1, "notTaken": 0},
+	 *  "instructions": [{"address": 0, "instruction": "mov EAX 1", "hits": 1}, ...,
+	 *                   {"address": 7, "instruction": "jnz EAX f1", "hits": 1, "taken": 1, "notTaken": 0}],
+	 *  "durationHistogram": [{"lessThanNanos": 8192, "count": 1}]}
+	 * </pre>
+	 * Only the buckets of the histogram that are not empty are included.
+	 *
+	 * @return the JSON text.
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"runs\": ").append(runs)
+				.append(", \"steps\": ").append(getSteps())
+				.append(", \"nanos\": ").append(nanos)
+				.append(",\n \"opcodes\": {");
+		String separator = "";
+		for (Map.Entry<String, Long> count : getOpcodeCounts().entrySet()) {
+			json.append(separator).append('"').append(count.getKey()).append("\": ").append(count.getValue());
+			separator = ", ";
+		}
+		long allTaken = 0;
+		long allNotTaken = 0;
+		for (int address = 0; address < hits.length; address++) {
+			allTaken += taken[address];
+			allNotTaken += getNotTaken(address);
+		}
+		json.append("},\n \"branches\": {\"taken\": ").append(allTaken)
+				.append(", \"notTaken\": ").append(allNotTaken)
+				.append("},\n \"instructions\": [");
+		for (int address = 0; address < hits.length; address++) {
+			json.append((address == 0) ? "\n  " : ",\n  ")
+					.append("{\"address\": ").append(address)
+					.append(", \"instruction\": ");
+			appendString(json, bytecode.toString(address));
+			json.append(", \"hits\": ").append(hits[address]);
+			if (bytecode.isJump(address))
+				json.append(", \"taken\": ").append(taken[address])
+						.append(", \"notTaken\": ").append(getNotTaken(address));
+			json.append('}');
+		}
+		json.append("],\n \"durationHistogram\": [");
+		separator = "";
+		for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+			if (histogram[bucket] == 0)
+				continue;
+			json.append(separator).append("{\"lessThanNanos\": ")
+					.append((bucket == HISTOGRAM_BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket)
+					.append(", \"count\": ").append(histogram[bucket]).append('}');
+			separator = ", ";
+		}
+		return json.append("]}\n").toString();
+	}
+
+	private static void appendString(StringBuilder json, String s) {
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+}
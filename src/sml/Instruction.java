@@ -14,7 +14,7 @@ package sml;
 public abstract class Instruction {
 	protected final String label;
 	protected final String opcode;
-	public static int NORMAL_PROGRAM_COUNTER_UPDATE = -1;
+	public static final int NORMAL_PROGRAM_COUNTER_UPDATE = -1;
 
 	/**
 	 * Constructor: an instruction with a label and an opcode
@@ -54,6 +54,18 @@ public abstract class Instruction {
 	 */
 	public abstract int execute(Machine machine);
 
+	/**
+	 * Resolves any labels referenced by the instruction into addresses, so that they do not have to be looked up
+	 * each time the instruction is executed. Instructions that do not reference a label are returned unchanged.
+	 *
+	 * @param labels the labels of the program the instruction belongs to.
+	 * @return an equivalent instruction with its referenced labels resolved.
+	 * @throws NullPointerException - when a referenced label doesn't exist.
+	 */
+	public Instruction link(Labels labels) {
+		return this;
+	}
+
 	/**
 	 * Returns a <code>String</code> object of the label of an Instruction as written in an SML program.
 	 * @return the <code>label String</code> of a raw SML instruction (i.e. including the ':').
@@ -0,0 +1,182 @@
+package sml;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * This class is a <code>final</code> singleton class that maps each Small Machine Language (SML) opcode to a
+ * <code>Factory</code> that creates the associated <code>sml.Instruction</code> subclass. The opcodes and subclasses
+ * are read from <code>/SMLinstructions.properties</code> (format: opcode=InstructionSubclass) once per JVM, and
+ * the constructor of each subclass is resolved to a <code>MethodHandle</code> up front, so that translating a line
+ * requires no further reflection.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class InstructionRegistry {
+
+	private static final String INSTRUCTIONS = "/SMLinstructions.properties";
+
+	/**
+	 * Creates a <code>HashMap(String, Factory)</code>. The <code>String</code> key stores the <code>opcode</code>
+	 * and the <code>Factory</code> value creates instances of the associated <code>sml.Instruction</code> subclass.
+	 */
+	private final Map<String, Factory> factories;
+
+	/**
+	 * The opcodes and their factories at matching indices, for lookups that do not have a <code>String</code>.
+	 */
+	private final String[] opcodes;
+	private final Factory[] opcodeFactories;
+
+	private InstructionRegistry(Map<String, Factory> factories) {
+		this.factories = Map.copyOf(factories);
+		this.opcodes = this.factories.keySet().toArray(new String[0]);
+		this.opcodeFactories = new Factory[opcodes.length];
+		for (int i = 0; i < opcodes.length; i++)
+			opcodeFactories[i] = this.factories.get(opcodes[i]);
+	}
+
+	/**
+	 * Lazily loads the registry the first time it is requested (the JVM guarantees this happens exactly once).
+	 */
+	private static final class Holder {
+		private static final InstructionRegistry INSTANCE = load(INSTRUCTIONS);
+	}
+
+	/**
+	 * Returns the registry of the instructions listed in <code>/SMLinstructions.properties</code>.
+	 *
+	 * @return the single <code>InstructionRegistry</code> instance.
+	 */
+	public static InstructionRegistry getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Loads a registry from the given properties resource.
+	 *
+	 * @param resource the name of the properties resource (format: opcode=InstructionSubclass).
+	 * @return a registry containing a <code>Factory</code> for every opcode in the resource.
+	 * @throws UncheckedIOException - if the resource cannot be read.
+	 * @throws IllegalStateException - if a listed subclass cannot be found or has no public constructor.
+	 */
+	static InstructionRegistry load(String resource) {
+		Properties properties = new Properties();
+		try (var input = InstructionRegistry.class.getResourceAsStream(resource)) {
+			if (input == null)
+				throw new IOException("Resource " + resource + " not found.");
+			properties.load(input);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		Map<String, Factory> factories = new HashMap<>();
+		for (String opcode : properties.stringPropertyNames())
+			factories.put(opcode, Factory.of(properties.getProperty(opcode).trim()));
+		return new InstructionRegistry(factories);
+	}
+
+	/**
+	 * Returns the <code>Factory</code> for the given opcode.
+	 *
+	 * @param opcode the SML operation name e.g. "add".
+	 * @return the <code>Factory</code> of the opcode, or <code>null</code> if the opcode is not recognised.
+	 */
+	public Factory getFactory(String opcode) {
+		return factories.get(opcode);
+	}
+
+	/**
+	 * Returns the <code>Factory</code> for the opcode that is the current word of the given lexer, without
+	 * creating a <code>String</code> for it.
+	 *
+	 * @param lexer a lexer positioned on an opcode.
+	 * @return the <code>Factory</code> of the opcode, or <code>null</code> if the opcode is not recognised.
+	 */
+	Factory getFactory(Lexer lexer) {
+		for (int i = 0; i < opcodes.length; i++)
+			if (lexer.matches(opcodes[i]))
+				return opcodeFactories[i];
+		return null;
+	}
+
+	/**
+	 * This class creates instances of a single <code>sml.Instruction</code> subclass through a pre-resolved
+	 * <code>MethodHandle</code> to its public constructor. The first constructor parameter is always the label.
+	 */
+	public static final class Factory {
+		private final MethodHandle constructor;
+		private final Class<?>[] parameterTypes;
+
+		private Factory(MethodHandle constructor, Class<?>[] parameterTypes) {
+			this.constructor = constructor;
+			this.parameterTypes = parameterTypes;
+		}
+
+		private static Factory of(String instructionSubclass) {
+			try {
+				Class<?> classObject = Class.forName(instructionSubclass);
+				Constructor<?> constructor = classObject.getConstructors()[0];
+				Class<?>[] parameterTypes = constructor.getParameterTypes();
+				MethodHandle handle = MethodHandles.publicLookup()
+						.unreflectConstructor(constructor)
+						.asSpreader(Object[].class, parameterTypes.length)
+						.asType(MethodType.methodType(Instruction.class, Object[].class));
+				return new Factory(handle, parameterTypes);
+			}
+			catch (ClassNotFoundException | IllegalAccessException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalStateException("Unable to resolve instruction " + instructionSubclass + ".", e);
+			}
+		}
+
+		/**
+		 * Returns the number of constructor parameters, including the label.
+		 *
+		 * @return the number of constructor parameters.
+		 */
+		public int getParameterCount() {
+			return parameterTypes.length;
+		}
+
+		/**
+		 * Returns the type of the constructor parameter at the given index (index 0 is the label).
+		 *
+		 * @param index the index of the parameter.
+		 * @return the type of the parameter.
+		 */
+		public Class<?> getParameterType(int index) {
+			return parameterTypes[index];
+		}
+
+		/**
+		 * Creates a new instruction from the given constructor arguments.
+		 *
+		 * @param args the constructor arguments, starting with the label.
+		 * @return the new instruction.
+		 * @throws IllegalArgumentException - if the arguments do not match the constructor.
+		 */
+		public Instruction create(Object... args) {
+			try {
+				return (Instruction) constructor.invokeExact(args);
+			}
+			catch (ClassCastException e) {
+				throw new IllegalArgumentException(e);
+			}
+			catch (RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -21,7 +21,25 @@ public final class Labels {
 	 * <code>label</code> (of type <code>String</code>) and the <code>Integer</code> value stores the index to the
 	 * instruction i.e. the line of the relative instruction in the SML program.
 	 */
-	private final Map<String, Integer> labels = new HashMap<>();
+	private final Map<String, Integer> labels;
+
+	public Labels() {
+		this(new HashMap<>());
+	}
+
+	private Labels(Map<String, Integer> labels) {
+		this.labels = labels;
+	}
+
+	/**
+	 * Returns a copy of the labels that cannot be changed; <code>addLabel</code> and <code>reset</code> throw an
+	 * <code>UnsupportedOperationException</code>.
+	 *
+	 * @return the unmodifiable copy.
+	 */
+	Labels unmodifiableCopy() {
+		return new Labels(Map.copyOf(labels));
+	}
 
 	/**
 	 * Adds a label with the associated address to the <code>Labels</code> HashMap.
@@ -0,0 +1,181 @@
+package sml;
+
+/**
+ * This class is a <code>final</code> class that splits a single line of a Small Machine Language (SML) program into
+ * words. It keeps a cursor into the line and exposes the current word as a pair of offsets
+ * (<code>start()</code> and <code>end()</code>), so that no intermediate <code>String</code> objects are created
+ * while a line is scanned.
+ * <p>
+ * A word is a sequence of characters delimited by whitespace. Leading and trailing characters are ignored in the
+ * same way as <code>String.trim()</code>. Once the line is exhausted, <code>next()</code> keeps returning the last
+ * word of the line.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class Lexer {
+
+	/**
+	 * The maximum number of whitespace characters in a legal instruction e.g. "f3: mov EAX 6".
+	 */
+	private static final int MAX_WHITESPACE = 3;
+
+	private CharSequence line = "";
+	private int begin;
+	private int end;
+	private int position;
+	private int tokenStart;
+	private int tokenEnd;
+
+	/**
+	 * Starts scanning a new line. A check is made to identify if there are more than 3 whitespace characters in the
+	 * (trimmed) line, thereby making it illegally formatted. If this is the case, a <code>RuntimeException()</code>
+	 * is thrown.
+	 *
+	 * @param line the line to scan.
+	 * @throws RuntimeException - when the line contains more than 3 whitespace characters.
+	 */
+	void reset(CharSequence line) throws RuntimeException {
+		this.line = line;
+		int begin = 0;
+		int end = line.length();
+		while (begin < end && line.charAt(begin) <= ' ')
+			begin++;
+		while (end > begin && line.charAt(end - 1) <= ' ')
+			end--;
+		this.begin = begin;
+		this.end = end;
+		this.position = begin;
+		this.tokenStart = begin;
+		this.tokenEnd = begin;
+
+		int whitespaceCounter = 0;
+		for (int i = begin; i < end; i++)
+			if (Character.isWhitespace(line.charAt(i)))
+				whitespaceCounter++;
+		if (whitespaceCounter > MAX_WHITESPACE) {
+			System.out.println("Error: Detected an incorrectly formatted instruction - \"" +
+								line.subSequence(begin, end) + "\".");
+			throw new RuntimeException();
+		}
+	}
+
+	/**
+	 * Moves to the next word of the line. If there is no further word, the last word is returned again.
+	 */
+	void next() {
+		int start = position;
+		while (start < end && line.charAt(start) <= ' ')
+			start++;
+		int i = start;
+		while (i < end && !Character.isWhitespace(line.charAt(i)))
+			i++;
+		tokenStart = start;
+		tokenEnd = i;
+		// The last word of the line is not consumed.
+		position = (i < end) ? i : start;
+	}
+
+	/**
+	 * Moves the cursor back to the start of the line, undoing any scanning.
+	 */
+	void rewind() {
+		position = begin;
+	}
+
+	/**
+	 * Returns whether there is nothing left to scan on the line.
+	 *
+	 * @return true if the rest of the line is empty.
+	 */
+	boolean isEmpty() {
+		return position >= end;
+	}
+
+	/**
+	 * @return the offset of the first character of the current word.
+	 */
+	int start() {
+		return tokenStart;
+	}
+
+	/**
+	 * @return the offset after the last character of the current word.
+	 */
+	int end() {
+		return tokenEnd;
+	}
+
+	/**
+	 * Returns whether the current word ends with the given character.
+	 *
+	 * @param c the character.
+	 * @return true if the current word is not empty and ends with <code>c</code>.
+	 */
+	boolean endsWith(char c) {
+		return tokenEnd > tokenStart && line.charAt(tokenEnd - 1) == c;
+	}
+
+	/**
+	 * Returns whether the current word is equal to the given string.
+	 *
+	 * @param s the string.
+	 * @return true if the current word has the same characters as <code>s</code>.
+	 */
+	boolean matches(String s) {
+		int length = tokenEnd - tokenStart;
+		if (length != s.length())
+			return false;
+		for (int i = 0; i < length; i++)
+			if (line.charAt(tokenStart + i) != s.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the current word as an <code>int</code>.
+	 *
+	 * @return the value of the current word.
+	 * @throws NumberFormatException - if the current word is not an integer.
+	 */
+	int intValue() {
+		return Integer.parseInt(line, tokenStart, tokenEnd, 10);
+	}
+
+	/**
+	 * Returns the current word. Unlike the other accessors, this creates a new <code>String</code>.
+	 *
+	 * @return the current word.
+	 */
+	String word() {
+		return line.subSequence(tokenStart, tokenEnd).toString();
+	}
+
+	/**
+	 * Returns the current word without its last character, e.g. a label without its ':'. Like
+	 * <code>word()</code>, this creates a new <code>String</code>.
+	 *
+	 * @return the current word without its last character.
+	 */
+	String wordWithoutSuffix() {
+		return line.subSequence(tokenStart, tokenEnd - 1).toString();
+	}
+
+	/**
+	 * @return the offset of the cursor i.e. the start of the part of the line that has not been scanned yet.
+	 */
+	int position() {
+		return position;
+	}
+
+	/**
+	 * Returns the (trimmed) line from the given offset. This creates a new <code>String</code>, and is intended
+	 * for error messages.
+	 *
+	 * @param from the offset to start from, e.g. a previous <code>position()</code>.
+	 * @return the line from the given offset.
+	 */
+	String text(int from) {
+		return line.subSequence(from, end).toString();
+	}
+}
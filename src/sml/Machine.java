@@ -1,5 +1,9 @@
 package sml;
 
+import sml.compiler.CompiledProgram;
+import sml.compiler.ProgramCompiler;
+import sml.jfr.ExecutionEvent;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -11,37 +15,391 @@ import static sml.Instruction.NORMAL_PROGRAM_COUNTER_UPDATE;
  * This class is a <code>final</code> class that represents the machine in which a Small Machine Language (SML)
  * program runs. An instance contains the <code>labels</code> (of type <code>sml.Labels</code>), the
  * <code>program</code> (of type <code>List<sml.Instruction></code>), and the 8 <code>registers</code>
- * (of type sml.Registers).
+ * (of type sml.Registers). Alternatively, the program can be held in the packed form of an <code>sml.Bytecode</code>,
+ * or shared with other machines as an immutable <code>sml.Program</code>.
+ * The output of the program is written to an <code>sml.OutputSink</code> (by default, the console), and its
+ * execution can be traced by an <code>sml.Tracer</code> (by default, off). Each execution is recorded as an
+ * <code>sml.jfr.ExecutionEvent</code> for Java Flight Recorder. Snapshots of a long execution can be taken by an
+ * <code>sml.Checkpoints</code>, and the execution resumed from one, on this or another machine.
+ * A machine holds no state that is shared with other machines, so separate machines can execute programs on separate
+ * threads; an instance itself is not thread-safe.
  *
  * @author mcmanusniall
  * @version 1.0
  */
 public final class Machine {
 
-	private final Labels labels = new Labels();
-	private final List<Instruction> program = new ArrayList<>();
+	/**
+	 * The engines that can execute a program.
+	 */
+	public enum Engine {
+		/**
+		 * Calls <code>Instruction.execute(Machine)</code> on each instruction in turn.
+		 */
+		POLYMORPHIC,
+		/**
+		 * Encodes the program (see <code>sml.Bytecode</code>) and executes it in a single <code>switch</code>
+		 * dispatch loop (see <code>sml.SwitchInterpreter</code>). Only the instructions of the SML language can be
+		 * encoded.
+		 */
+		SWITCH,
+		/**
+		 * Encodes the program and compiles it into the JVM bytecode of a hidden class (see
+		 * <code>sml.compiler.ProgramCompiler</code>) that holds the registers in local variables. A program that
+		 * cannot be compiled is executed by the <code>SWITCH</code> engine instead.
+		 */
+		COMPILED,
+		/**
+		 * Encodes the program and executes it as the <code>SWITCH</code> engine does, except that each region that
+		 * repeats the same updates of induction variables many times over is executed in closed form, in the same
+		 * time however many times it is repeated (see <code>sml.ClosedForm</code>). A traced, limited or counted
+		 * program is executed by the <code>SWITCH</code> engine instead.
+		 */
+		ACCELERATED
+	}
+
+	private final Labels labels;
+	private final List<Instruction> program;
+	// The shared program the machine executes, if it was created with one.
+	private final Program source;
 	private final Registers registers;
+	private final Bytecode bytecode;
+	private final Engine engine;
+	private final OutputSink output;
+	private Tracer tracer = Tracer.off();
+	private ExecutionStats stats = null;
+	private Checkpoints checkpoints = null;
+	// The encoding of program and labels, and the instructions and labels it was created from; it is created again
+	// when either is modified.
+	private Bytecode encodedProgram;
+	private Instruction[] encodedInstructions;
+	private Labels encodedLabels;
+	// The compiled form of the encoded program, created the first time it is executed by the COMPILED engine.
+	private CompiledProgram compiled;
+	// The closed-form regions of the encoded program, found the first time it is executed by the ACCELERATED engine.
+	private ClosedForm closedForm;
 
 	// The program counter; it contains the index (in program)
 	// of the next instruction to be executed.
 	private int programCounter = 0;
+	// The number of instructions executed by the current execution, or -1 if the engine does not count them.
+	private long steps = 0;
 
 	public Machine(Registers registers) {
+		this(registers, Engine.POLYMORPHIC);
+	}
+
+	/**
+	 * Constructor: a machine that executes its program with the given engine.
+	 *
+	 * @param registers the registers of the machine.
+	 * @param engine the engine that executes the program.
+	 */
+	public Machine(Registers registers, Engine engine) {
+		this(registers, engine, OutputSink.console());
+	}
+
+	/**
+	 * Constructor: a machine that executes its program with the given engine, and writes the output of the program
+	 * to the given sink.
+	 *
+	 * @param registers the registers of the machine.
+	 * @param engine the engine that executes the program.
+	 * @param output the sink the output of the program is written to.
+	 */
+	public Machine(Registers registers, Engine engine, OutputSink output) {
+		this.labels = new Labels();
+		this.program = new ArrayList<>();
+		this.source = null;
+		this.registers = registers;
+		this.bytecode = null;
+		this.engine = engine;
+		this.output = output;
+	}
+
+	/**
+	 * Constructor: a machine that runs a program held in packed form (see <code>sml.Bytecode</code>) rather than as
+	 * a list of instructions. The program is executed by the <code>SWITCH</code> engine, and
+	 * <code>getProgram()</code> is empty.
+	 *
+	 * @param registers the registers of the machine.
+	 * @param bytecode the encoded program.
+	 */
+	public Machine(Registers registers, Bytecode bytecode) {
+		this(registers, bytecode, Engine.SWITCH);
+	}
+
+	/**
+	 * Constructor: a machine that runs a program held in packed form with the given engine.
+	 *
+	 * @param registers the registers of the machine.
+	 * @param bytecode the encoded program.
+	 * @param engine the engine that executes the program (any but <code>POLYMORPHIC</code>).
+	 * @throws IllegalArgumentException - when the engine is <code>POLYMORPHIC</code>, which needs instructions.
+	 */
+	public Machine(Registers registers, Bytecode bytecode, Engine engine) {
+		this(registers, bytecode, engine, OutputSink.console());
+	}
+
+	/**
+	 * Constructor: a machine that runs a program held in packed form with the given engine, and writes the output of
+	 * the program to the given sink.
+	 *
+	 * @param registers the registers of the machine.
+	 * @param bytecode the encoded program.
+	 * @param engine the engine that executes the program (any but <code>POLYMORPHIC</code>).
+	 * @param output the sink the output of the program is written to.
+	 * @throws IllegalArgumentException - when the engine is <code>POLYMORPHIC</code>, which needs instructions.
+	 */
+	public Machine(Registers registers, Bytecode bytecode, Engine engine, OutputSink output) {
+		if (engine == Engine.POLYMORPHIC)
+			throw new IllegalArgumentException("An encoded program cannot be executed by the " + engine + " engine.");
+		this.labels = new Labels();
+		this.program = new ArrayList<>();
+		this.source = null;
+		this.registers = registers;
+		this.bytecode = bytecode;
+		this.engine = engine;
+		this.output = output;
+	}
+
+	/**
+	 * Constructor: a machine that executes a shared, immutable program with the given engine. The machine holds only
+	 * the registers and program counter of an execution, so it is cheap to create, and any number of machines can
+	 * execute the same program at once. <code>getProgram()</code> and <code>getLabels()</code> cannot be changed.
+	 *
+	 * @param program the program.
+	 * @param registers the registers of the machine.
+	 * @param engine the engine that executes the program.
+	 */
+	public Machine(Program program, Registers registers, Engine engine) {
+		this(program, registers, engine, OutputSink.console());
+	}
+
+	/**
+	 * Constructor: a machine that executes a shared, immutable program with the given engine, and writes the output
+	 * of the program to the given sink.
+	 *
+	 * @param program the program.
+	 * @param registers the registers of the machine.
+	 * @param engine the engine that executes the program.
+	 * @param output the sink the output of the program is written to.
+	 */
+	public Machine(Program program, Registers registers, Engine engine, OutputSink output) {
+		this.labels = program.getLabels();
+		this.program = program.getInstructions();
+		this.source = program;
 		this.registers = registers;
+		this.bytecode = program.getBytecode();
+		this.engine = engine;
+		this.output = output;
 	}
 
 	/**
 	 * Execute the program in program, beginning at instruction 0.
 	 * Precondition: the program and its labels have been stored properly.
+	 * The output sink is flushed when the program ends, whether or not it succeeds.
 	 */
 	public void execute() {
-		programCounter = 0;
-		registers.clear(); // resets the values of all registers to 0.
+		execute(ExecutionLimits.NONE);
+	}
+
+	/**
+	 * Execute the program in program, beginning at instruction 0, until it ends or one of the given limits is
+	 * reached. A limited program is executed by the <code>SWITCH</code> engine, whatever the engine of the machine
+	 * (unless its instructions cannot be encoded, in which case the limits are checked between the instructions
+	 * executed by the <code>POLYMORPHIC</code> engine, each 'jnz' counting as one step with its labelled instruction).
+	 * Precondition: the program and its labels have been stored properly.
+	 *
+	 * @param limits the limits of the execution.
+	 * @throws ExecutionLimitException - when a limit is reached; the registers and program counter are left as they
+	 * were at that point.
+	 */
+	public void execute(ExecutionLimits limits) {
+		start(null, limits, null);
+	}
+
+	/**
+	 * Execute the program in program, beginning at instruction 0 with the registers set to the given values, until it
+	 * ends or one of the given limits is reached (see <code>execute(ExecutionLimits)</code>).
+	 *
+	 * @param initial the values of the registers when the program starts.
+	 * @param limits the limits of the execution.
+	 * @throws ExecutionLimitException - when a limit is reached.
+	 */
+	public void execute(Registers initial, ExecutionLimits limits) {
+		start(Objects.requireNonNull(initial), limits, null);
+	}
+
+	/**
+	 * Resume the execution of the program from a snapshot taken by <code>sml.Checkpoints</code> (possibly in another
+	 * JVM), with the registers set to their values in the snapshot.
+	 *
+	 * @param snapshot the snapshot.
+	 * @throws IllegalArgumentException - when the snapshot was not taken from an execution of the program, or the
+	 * program cannot be encoded.
+	 */
+	public void resume(Snapshot snapshot) {
+		resume(snapshot, ExecutionLimits.NONE);
+	}
+
+	/**
+	 * Resume the execution of the program from a snapshot, until it ends or one of the given limits is reached. A
+	 * resumed program is executed by the <code>SWITCH</code> engine, whatever the engine of the machine, and the steps
+	 * executed before the snapshot count towards the limit on the number of steps.
+	 *
+	 * @param snapshot the snapshot.
+	 * @param limits the limits of the execution.
+	 * @throws IllegalArgumentException - when the snapshot was not taken from an execution of the program, or the
+	 * program cannot be encoded.
+	 * @throws ExecutionLimitException - when a limit is reached.
+	 */
+	public void resume(Snapshot snapshot, ExecutionLimits limits) {
+		Bytecode encoded = encoded();
+		snapshot.verify(encoded);
+		start(snapshot.getRegisters(), limits, snapshot);
+	}
+
+	private void start(Registers initial, ExecutionLimits limits, Snapshot snapshot) {
+		programCounter = (snapshot != null) ? snapshot.getProgramCounter() : 0;
+		if (initial == null)
+			registers.clear(); // resets the values of all registers to 0.
+		else
+			registers.set(initial);
+		steps = -1;
+		tracer.start();
+		ExecutionEvent event = new ExecutionEvent();
+		event.begin();
+		String outcome = ExecutionEvent.FAILED;
+		try {
+			StepBudget budget = (limits.isUnlimited() && checkpoints == null) ? null
+					: new StepBudget(limits, checkpoints);
+			if (snapshot != null)
+				resume(snapshot, (budget != null) ? budget : new StepBudget(limits));
+			else if (stats != null)
+				runCounted(budget);
+			else if (budget == null)
+				run();
+			else
+				run(budget);
+			outcome = ExecutionEvent.COMPLETED;
+		}
+		catch (ExecutionLimitException e) {
+			outcome = e.getReason().name();
+			throw e;
+		}
+		catch (ArithmeticException e) {
+			outcome = ExecutionEvent.DIVISION_BY_ZERO;
+			throw e;
+		}
+		finally {
+			output.flush();
+			tracer.finish();
+			if (event.shouldCommit()) {
+				event.setEngine(engine.name());
+				event.setProgramSize((bytecode != null) ? bytecode.size() : program.size());
+				event.setSteps(steps);
+				event.setOutcome(outcome);
+				event.commit();
+			}
+		}
+	}
+
+	private void run() {
+		if (engine == Engine.SWITCH) {
+			execute(encoded(), null);
+			return;
+		}
+		if (engine == Engine.COMPILED) {
+			Bytecode encoded = encoded();
+			// Compiled code is not traced.
+			CompiledProgram compiledProgram = tracer.isEnabled() ? null : compile(encoded);
+			if (compiledProgram != null)
+				execute(compiledProgram);
+			else
+				execute(encoded, null);
+			return;
+		}
+		if (engine == Engine.ACCELERATED) {
+			Bytecode encoded = encoded();
+			// Closed-form regions are not traced.
+			if (tracer.isEnabled())
+				execute(encoded, null);
+			else
+				accelerate(encoded, closedForm(encoded));
+			return;
+		}
+		run(null);
+	}
+
+	/**
+	 * Executes the program with the <code>SWITCH</code> engine, counting it in the statistics of the machine.
+	 *
+	 * @param budget the limits of the execution, or <code>null</code> if there are none.
+	 */
+	private void runCounted(StepBudget budget) {
+		Bytecode encoded = encoded();
+		stats.begin(encoded);
+		long start = System.nanoTime();
+		try {
+			execute(encoded, budget);
+		}
+		finally {
+			stats.end(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Resumes the program from a snapshot with the <code>SWITCH</code> engine.
+	 *
+	 * @param snapshot the snapshot, which has been verified against the program.
+	 * @param budget the limits of the execution.
+	 */
+	private void resume(Snapshot snapshot, StepBudget budget) {
+		Bytecode encoded = encoded();
+		SwitchInterpreter interpreter = new SwitchInterpreter(encoded, registers, output, tracer, budget, null);
+		try {
+			interpreter.resume(snapshot);
+		}
+		finally {
+			programCounter = interpreter.getProgramCounter();
+			steps = interpreter.getSteps();
+		}
+	}
+
+	/**
+	 * Executes the program with limits, or with the <code>POLYMORPHIC</code> engine.
+	 *
+	 * @param budget the limits of the execution, or <code>null</code> for an unlimited POLYMORPHIC execution.
+	 */
+	private void run(StepBudget budget) {
+		if (budget != null) {
+			Bytecode encoded = bytecode;
+			if (encoded == null) {
+				try {
+					encoded = encoded();
+				}
+				catch (IllegalArgumentException e) {
+					// An instruction that is not part of the language; the instructions are executed as they are.
+				}
+			}
+			if (encoded != null) {
+				execute(encoded, budget);
+				return;
+			}
+		}
+		steps = 0;
+		long checkpoint = (budget == null) ? Long.MAX_VALUE : budget.start(steps);
 		while (programCounter < program.size()) { // while there are instructions in the ArrayList<Instruction>.
 			Instruction ins = program.get(programCounter); //use the program counter as an index to fetch the instructions in sequence.
 			// Add if statement that avoid executing a labelled instruction when read.
 			// Labelled instructions should only be executed from within a jnz command.
 			if(ins.label == null) {
+				if (steps == checkpoint)
+					checkpoint = budget.check(steps);
+				steps++;
+				if (tracer.isEnabled())
+					tracer.step(programCounter, ins);
 				int programCounterUpdate = ins.execute(this);
 				programCounter = (programCounterUpdate == NORMAL_PROGRAM_COUNTER_UPDATE) // if the programCounterUpdate is equal to NORMAL_PROGRAM_COUNTER_UPDATE
 						? programCounter + 1 // add one to the program counter.
@@ -51,6 +409,127 @@ public final class Machine {
 		}
 	}
 
+	/**
+	 * Executes an encoded program with the <code>SWITCH</code> engine.
+	 *
+	 * @param bytecode the encoded program.
+	 * @param budget the limits of the execution, or <code>null</code> if there are none.
+	 */
+	private void execute(Bytecode bytecode, StepBudget budget) {
+		SwitchInterpreter interpreter = new SwitchInterpreter(bytecode, registers, output, tracer,
+				(budget != null) ? budget : new StepBudget(ExecutionLimits.NONE), stats);
+		try {
+			interpreter.run();
+		}
+		finally {
+			programCounter = interpreter.getProgramCounter();
+			steps = interpreter.getSteps();
+		}
+	}
+
+	/**
+	 * Returns the encoded program. The encoding of a machine created with a list of instructions is kept for subsequent
+	 * executions until its instructions or labels are modified (see <code>getProgram()</code> and
+	 * <code>getLabels()</code>), when the program is encoded again and its compiled form and closed-form regions are
+	 * discarded.
+	 *
+	 * @return the encoded program.
+	 * @throws IllegalArgumentException - when the program cannot be encoded.
+	 */
+	Bytecode encoded() {
+		if (bytecode != null)
+			return bytecode;
+		if (encodedProgram != null && isEncoded())
+			return encodedProgram;
+		Instruction[] instructions = program.toArray(new Instruction[0]);
+		Labels current = labels.unmodifiableCopy();
+		encodedProgram = Bytecode.encode(program, labels);
+		encodedInstructions = instructions;
+		encodedLabels = current;
+		compiled = null;
+		closedForm = null;
+		return encodedProgram;
+	}
+
+	/**
+	 * @return whether the encoded program was created from the current instructions and labels.
+	 */
+	private boolean isEncoded() {
+		if (encodedInstructions.length != program.size())
+			return false;
+		for (int i = 0; i < encodedInstructions.length; i++)
+			if (encodedInstructions[i] != program.get(i))
+				return false;
+		return encodedLabels.equals(labels);
+	}
+
+	/**
+	 * Compiles an encoded program. The compiled form of the program is kept for subsequent executions.
+	 *
+	 * @param encoded the encoded program (see <code>encoded()</code>).
+	 * @return the compiled program, or <code>null</code> if the program cannot be compiled.
+	 */
+	private CompiledProgram compile(Bytecode encoded) {
+		if (source != null)
+			return source.compiled();
+		if (compiled != null)
+			return compiled;
+		try {
+			compiled = ProgramCompiler.compile(encoded);
+			return compiled;
+		}
+		catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the closed-form regions of an encoded program. Those of the program are kept for subsequent executions.
+	 *
+	 * @param encoded the encoded program (see <code>encoded()</code>).
+	 * @return the closed-form regions of the program.
+	 */
+	private ClosedForm closedForm(Bytecode encoded) {
+		if (source != null)
+			return source.closedForm();
+		if (closedForm == null)
+			closedForm = ClosedForm.of(encoded);
+		return closedForm;
+	}
+
+	/**
+	 * Executes an encoded program with the <code>ACCELERATED</code> engine. The instructions executed in closed form
+	 * are not counted, so the steps of the execution are not known.
+	 *
+	 * @param encoded the encoded program.
+	 * @param regions the closed-form regions of the program.
+	 */
+	private void accelerate(Bytecode encoded, ClosedForm regions) {
+		SwitchInterpreter interpreter = new SwitchInterpreter(encoded, registers, output, tracer,
+				new StepBudget(ExecutionLimits.NONE), null);
+		try {
+			regions.execute(interpreter, registers, encoded.size());
+		}
+		finally {
+			programCounter = interpreter.getProgramCounter();
+		}
+	}
+
+	/**
+	 * Executes a program with the <code>COMPILED</code> engine.
+	 *
+	 * @param compiledProgram the compiled program.
+	 */
+	private void execute(CompiledProgram compiledProgram) {
+		int[] programCounter = new int[1];
+		try {
+			compiledProgram.run(registers.values(), programCounter, output);
+		}
+		finally {
+			this.programCounter = programCounter[0];
+		}
+	}
+
 	/**
 	 * Returns Labels object with field labels - a HashMap<String, Integer>
 	 * object where the String object refers to the label e.g. "f3:" and
@@ -70,8 +549,82 @@ public final class Machine {
 	}
 
 	/**
-	 * Returns the Registers object with field registers - a HashMap<Register, Integer>
-	 * object where Register is the register and the Integer is the value the register contains.
+	 * Returns the encoded program, if the machine was created with one.
+	 * @return the encoded program, or <code>null</code> if the program is held as a list of instructions.
+	 */
+	public Bytecode getBytecode() {
+		return this.bytecode;
+	}
+
+	/**
+	 * Returns the sink the output of the program is written to.
+	 * @return the output sink of the machine.
+	 */
+	public OutputSink getOutput() {
+		return this.output;
+	}
+
+	/**
+	 * Returns the tracer of the execution of the program.
+	 * @return the tracer of the machine.
+	 */
+	public Tracer getTracer() {
+		return this.tracer;
+	}
+
+	/**
+	 * Sets the tracer of the execution of the program; <code>Tracer.off()</code> turns tracing off.
+	 * @param tracer the tracer of the machine.
+	 */
+	public void setTracer(Tracer tracer) {
+		this.tracer = Objects.requireNonNull(tracer);
+	}
+
+	/**
+	 * Returns the statistics of the execution of the program.
+	 * @return the statistics of the machine, or <code>null</code> if it does not keep any.
+	 */
+	public ExecutionStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Sets the statistics of the execution of the program; while the machine has statistics, it executes the program
+	 * with the <code>SWITCH</code> engine.
+	 * @param stats the statistics of the machine, or <code>null</code> to stop counting.
+	 */
+	public void setStats(ExecutionStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Returns the checkpoints that take snapshots of the execution of the program.
+	 * @return the checkpoints of the machine, or <code>null</code> if it does not take snapshots.
+	 */
+	public Checkpoints getCheckpoints() {
+		return this.checkpoints;
+	}
+
+	/**
+	 * Sets the checkpoints that take snapshots of the execution of the program; while the machine has checkpoints, it
+	 * executes the program with the <code>SWITCH</code> engine, as it does a limited program.
+	 * @param checkpoints the checkpoints of the machine, or <code>null</code> to stop taking snapshots.
+	 */
+	public void setCheckpoints(Checkpoints checkpoints) {
+		this.checkpoints = checkpoints;
+	}
+
+	/**
+	 * Returns the engine that executes the program.
+	 * @return the engine of the machine.
+	 */
+	public Engine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * Returns the Registers object with field registers - an int[] where the index
+	 * is the ordinal of the Register and the int is the value the register contains.
 	 * @return Registers object containing all the registers.
 	 */
 	public Registers getRegisters() {
@@ -85,6 +638,8 @@ public final class Machine {
 	 */
 	@Override
 	public String toString() {
+		if (bytecode != null)
+			return bytecode.toString();
 		return program.stream()
 				.map(Instruction::toString)
 				.collect(Collectors.joining("\n"));
@@ -96,6 +651,7 @@ public final class Machine {
 			return Objects.equals(this.labels, other.labels)
 					&& Objects.equals(this.program, other.program)
 					&& Objects.equals(this.registers, other.registers)
+					&& Objects.equals(this.bytecode, other.bytecode)
 					&& this.programCounter == other.programCounter;
 		}
 		return false;
@@ -103,6 +659,6 @@ public final class Machine {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(labels, program, registers, programCounter);
+		return Objects.hash(labels, program, registers, bytecode, programCounter);
 	}
 }
@@ -1,7 +1,18 @@
 package sml;
 
+import sml.analysis.ControlFlowGraph;
+import sml.analysis.Diagnostic;
+import sml.optimizer.DeadCodeEliminator;
+import sml.optimizer.PeepholeOptimizer;
+import sml.optimizer.Superinstructions;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 /**
  * This is the <code>Main</code> class for executing a Small Machine Language (SML) program.
@@ -10,39 +21,149 @@ import java.io.IOException;
  * @version 1.0
  */
 public class Main {
+	// The number of basic blocks reported by --profile.
+	private static final int PROFILE_BLOCKS = 10;
+	// The longest time a shutdown of the JVM waits for the snapshot of the program being executed.
+	private static final Duration SNAPSHOT_TIMEOUT = Duration.ofSeconds(10);
+
 	/**
-	 * Initialises the system and executes the program.
+	 * Initialises the system and executes the program (which may have been compiled by <code>sml.Smlc</code>).
+	 * Alternatively, with
+	 * <code>--batch &lt;directory or manifest&gt; &lt;results file&gt; [&lt;timeout in seconds&gt;]</code>, executes a
+	 * batch of programs in parallel, each with the default limits of <code>sml.BatchRunner</code> and the given (or
+	 * default) timeout, or with
+	 * <code>--sweep &lt;file&gt; &lt;inputs file&gt; &lt;results file&gt; [&lt;timeout in seconds&gt;]</code>, executes
+	 * the program once for each row of initial register values in parallel, each row with the default limits of
+	 * <code>sml.ParameterSweep</code> and the given (or default) timeout. With
+	 * <code>--stats &lt;JSON file&gt; &lt;file&gt;</code>, the program is executed as usual and its execution
+	 * statistics are written to the JSON file (see <code>sml.ExecutionStats</code>); with
+	 * <code>--profile &lt;file&gt;</code>, the hottest basic blocks of the program are reported after it is executed
+	 * (see <code>sml.BlockProfile</code>); with <code>--optimize &lt;file&gt;</code>, the program is optimized, its
+	 * dead code removed and its common pairs of instructions fused before it is executed (see
+	 * <code>sml.optimizer</code>). With <code>--analyze &lt;file&gt;</code>, the program is not executed; the problems
+	 * found by its static analysis are reported instead (see <code>sml.analysis</code>). With
+	 * <code>--checkpoint &lt;snapshot file&gt; &lt;steps&gt; &lt;file&gt;</code>, a snapshot of the execution is
+	 * written to the snapshot file every so many steps, and when the JVM is shut down (e.g. by a signal) before the
+	 * program ends (see <code>sml.Checkpoints</code>); with
+	 * <code>--resume &lt;snapshot file&gt; &lt;steps&gt; &lt;file&gt;</code>, the execution is resumed from the
+	 * snapshot in the file, and carries on taking snapshots.
 	 *
 	 * @param args name of the file containing the program text.
 	 */
 	public static void main(String... args) {
+		ExecutionStats stats = null;
+		boolean profile = false;
+		boolean optimize = false;
+		boolean analyze = false;
+		Checkpoints checkpoints = null;
+		boolean resume = false;
+		if((args.length == 3 || args.length == 4) && args[0].equals("--batch")) {
+			Duration timeout = (args.length == 4) ? timeout(args[3]) : BatchRunner.DEFAULT_TIMEOUT;
+			batch(Path.of(args[1]), Path.of(args[2]), timeout);
+			return;
+		}
+		if((args.length == 4 || args.length == 5) && args[0].equals("--sweep")) {
+			Duration timeout = (args.length == 5) ? timeout(args[4]) : ParameterSweep.DEFAULT_TIMEOUT;
+			sweep(args[1], Path.of(args[2]), Path.of(args[3]), timeout);
+			return;
+		}
+		if(args.length == 3 && args[0].equals("--stats")) {
+			stats = new ExecutionStats(Path.of(args[1]));
+			args = new String[] {args[2]};
+		}
+		if(args.length == 2 && args[0].equals("--profile")) {
+			stats = new ExecutionStats();
+			profile = true;
+			args = new String[] {args[1]};
+		}
+		if(args.length == 2 && args[0].equals("--optimize")) {
+			optimize = true;
+			args = new String[] {args[1]};
+		}
+		if(args.length == 2 && args[0].equals("--analyze")) {
+			analyze = true;
+			args = new String[] {args[1]};
+		}
+		if(args.length == 4 && (args[0].equals("--checkpoint") || args[0].equals("--resume"))) {
+			try {
+				checkpoints = new Checkpoints(Path.of(args[1]), Long.parseLong(args[2]));
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println("Error: " + args[2] + " is not a positive number of steps between snapshots.");
+				System.exit(-1);
+			}
+			resume = args[0].equals("--resume");
+			args = new String[] {args[3]};
+		}
 		if(args.length != 1) {
-			System.err.println("Incorrect number of arguments - Machine <file> - required");
+			System.err.println("Incorrect number of arguments - Machine <file>, Machine --batch <directory or manifest> <results file> [<timeout in seconds>], " +
+					"Machine --stats <JSON file> <file>, Machine --profile <file>, Machine --optimize <file>, " +
+					"Machine --analyze <file>, Machine --checkpoint <snapshot file> <steps> <file>, " +
+					"Machine --resume <snapshot file> <steps> <file> " +
+					"or Machine --sweep <file> <inputs file> <results file> [<timeout in seconds>] - required");
 			System.exit(-1);
 		}
 
 		try {
-			// Creates a new Translator Object
-			Translator t = new Translator(args[0]);
-			// Creates a new Machine Object
-			Machine m = new Machine(new Registers());
-			// Executes Translator.readAndTranslate method with the Labels object
-			// - a HashMap<String, Integer> and the Instruction list (m.getLabels())
-			// - a List<> containing all Instruction objects (m.getProgram())
-			t.readAndTranslate(m.getLabels(), m.getProgram());
+			// The output of the program is buffered; the machine writes it out when the program ends or stops.
+			OutputSink output = new BufferedOutputSink(new OutputStreamWriter(System.out));
+			Machine m;
+			if (args[0].endsWith(ProgramFile.EXTENSION)) {
+				// A program compiled by sml.Smlc is loaded without being translated.
+				Program program = ProgramFile.load(Path.of(args[0]));
+				m = new Machine(optimize ? optimize(program) : program, new Registers(), Machine.Engine.POLYMORPHIC, output);
+			}
+			else {
+				// Creates a new Translator Object
+				Translator t = new Translator(args[0]);
+				// Creates a new Machine Object
+				m = new Machine(new Registers(), Machine.Engine.POLYMORPHIC, output);
+				// Executes Translator.readAndTranslate method with the Labels object
+				// - a HashMap<String, Integer> and the Instruction list (m.getLabels())
+				// - a List<> containing all Instruction objects (m.getProgram())
+				t.readAndTranslate(m.getLabels(), m.getProgram());
+				if (optimize) {
+					PeepholeOptimizer.optimize(m.getLabels(), m.getProgram());
+					DeadCodeEliminator.eliminate(m.getLabels(), m.getProgram());
+					report(new Superinstructions().fuse(m.getLabels(), m.getProgram()));
+				}
+			}
+			m.setStats(stats);
+			m.setCheckpoints(checkpoints);
+			if (analyze) {
+				List<Diagnostic> diagnostics = Diagnostic.find(ControlFlowGraph.of(m.getProgram(), m.getLabels()));
+				diagnostics.forEach(System.out::println);
+				System.out.println("Found " + diagnostics.size() + " problems in the program.");
+				return;
+			}
 
 			System.out.println("Here is the program; it has " + m.getProgram().size() + " instructions.");
 			System.out.println(m);
 
+			Snapshot snapshot = resume ? Snapshot.read(checkpoints.getFile()) : null;
 			System.out.println("Beginning program execution.");
 
-			m.execute();
+			Thread hook = (checkpoints != null) ? snapshotOnShutdown(checkpoints) : null;
+			if (hook != null)
+				Runtime.getRuntime().addShutdownHook(hook);
+			try {
+				if (snapshot != null)
+					m.resume(snapshot);
+				else
+					m.execute();
+			}
+			finally {
+				if (hook != null)
+					removeShutdownHook(hook);
+			}
 			System.out.println("Ending program execution.");
 			System.out.println("Values of registers at program termination:" + m.getRegisters() + ".");
+			if (profile)
+				System.out.print(stats.getBlockProfile().report(PROFILE_BLOCKS));
 
 		}
-		catch(FileNotFoundException e) {
-			System.out.println("Error: " + args[0] + " not found.");
+		catch(FileNotFoundException | NoSuchFileException e) {
+			System.out.println("Error: " + ((e instanceof NoSuchFileException n) ? n.getFile() : args[0]) + " not found.");
 			System.exit(-1);
 		}
 		catch(IOException e) {
@@ -54,4 +175,139 @@ public class Main {
 			System.exit(-1);
 		}
 	}
+
+	/**
+	 * Returns a shutdown hook that asks the program being executed for a snapshot, and waits for it to be written.
+	 *
+	 * @param checkpoints the checkpoints of the machine.
+	 * @return the shutdown hook.
+	 */
+	private static Thread snapshotOnShutdown(Checkpoints checkpoints) {
+		return new Thread(() -> {
+			try {
+				if (checkpoints.requestAndAwait(SNAPSHOT_TIMEOUT))
+					System.out.println("Saved a snapshot of the program to " + checkpoints.getFile() + " after "
+							+ checkpoints.getLast().getSteps() + " steps.");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	private static void removeShutdownHook(Thread hook) {
+		try {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		}
+		catch (IllegalStateException e) {
+			// The JVM is already shutting down; the hook takes the snapshot.
+		}
+	}
+
+	/**
+	 * Optimizes a program, removes its dead code, and fuses its common pairs of instructions.
+	 *
+	 * @param program the program.
+	 * @return the optimized program.
+	 */
+	private static Program optimize(Program program) {
+		Superinstructions superinstructions = new Superinstructions();
+		Program optimized = superinstructions.fuse(DeadCodeEliminator.eliminate(PeepholeOptimizer.optimize(program)));
+		report(superinstructions.getTotal());
+		return optimized;
+	}
+
+	private static void report(long fused) {
+		System.out.println("Fused " + fused + " pairs of instructions into superinstructions.");
+	}
+
+	/**
+	 * Parses a timeout given in seconds on the command line, exiting if it is not a positive number of seconds.
+	 *
+	 * @param seconds the argument.
+	 * @return the timeout.
+	 */
+	private static Duration timeout(String seconds) {
+		try {
+			Duration timeout = Duration.ofSeconds(Long.parseLong(seconds));
+			if (timeout.isNegative() || timeout.isZero())
+				throw new NumberFormatException();
+			return timeout;
+		}
+		catch (NumberFormatException e) {
+			System.out.println("Error: " + seconds + " is not a positive number of seconds.");
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * Executes every program of a batch, and writes their results.
+	 *
+	 * @param source the directory or manifest of the programs.
+	 * @param results the file the results are written to.
+	 * @param timeout the time each program may run for.
+	 */
+	private static void batch(Path source, Path results, Duration timeout) {
+		try {
+			List<Path> programs = BatchRunner.programs(source);
+			System.out.println("Executing " + programs.size() + " programs.");
+			List<BatchRunner.Result> batch = new BatchRunner(timeout).run(programs);
+			BatchRunner.write(batch, results);
+			long failed = batch.stream().filter(result -> result.getError() != null).count();
+			System.out.println("Executed " + programs.size() + " programs (" + failed + " failed); results written to " +
+					results + ".");
+		}
+		catch(NoSuchFileException e) {
+			System.out.println("Error: " + source + " not found.");
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.out.println("Error: IO error when running the batch " + source);
+			System.exit(-1);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Error: the batch " + source + " was interrupted.");
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Executes a program once for each row of initial register values, and writes the final registers of each row.
+	 *
+	 * @param fileName the name of the file containing the program text.
+	 * @param inputs the CSV file of initial register values.
+	 * @param results the file the results are written to.
+	 * @param timeout the time each row may run for.
+	 */
+	private static void sweep(String fileName, Path inputs, Path results, Duration timeout) {
+		try {
+			Program program = new Translator(fileName).translate();
+			List<Registers> rows = ParameterSweep.readInputs(inputs);
+			System.out.println("Executing the program for " + rows.size() + " rows of inputs.");
+			List<ParameterSweep.Result> sweep = new ParameterSweep(program, timeout).run(rows);
+			ParameterSweep.write(sweep, results);
+			long failed = sweep.stream().filter(result -> result.getError() != null).count();
+			System.out.println("Executed " + rows.size() + " rows (" + failed + " failed); results written to " +
+					results + ".");
+		}
+		catch(NoSuchFileException e) {
+			System.out.println("Error: " + e.getFile() + " not found.");
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.out.println("Error: IO error when running the sweep of " + fileName);
+			System.exit(-1);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Error: the sweep of " + fileName + " was interrupted.");
+			System.exit(-1);
+		}
+		catch(Exception e) {
+			System.out.println("Please revise your SML program or inputs before attempting to rerun.");
+			System.exit(-1);
+		}
+	}
 }
@@ -0,0 +1,166 @@
+package sml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a <code>final</code> class that reads the lines of a Small Machine Language (SML) program file
+ * through a memory-mapped <code>FileChannel</code>. The file is mapped a window at a time, lines are split on the
+ * raw bytes (<code>'\n'</code>, <code>"\r\n"</code> or <code>'\r'</code>) and each line is decoded (UTF-8) into a
+ * single reusable <code>CharBuffer</code>, so that the heap used while reading is bounded by the longest line
+ * rather than by the size of the file.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class MappedLineReader implements Closeable {
+
+	/**
+	 * The default number of bytes of the file that are mapped at once.
+	 */
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private CharBuffer chars = CharBuffer.allocate(256);
+
+	/**
+	 * Opens the given file for reading.
+	 *
+	 * @param path the path of the file.
+	 * @throws IOException - if the file cannot be opened (e.g. <code>NoSuchFileException</code>).
+	 */
+	MappedLineReader(Path path) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Opens the given file for reading, mapping at most <code>windowSize</code> bytes at once.
+	 *
+	 * @param path the path of the file.
+	 * @param windowSize the number of bytes to map at once; each line must be shorter than this.
+	 * @throws IOException - if the file cannot be opened (e.g. <code>NoSuchFileException</code>).
+	 */
+	MappedLineReader(Path path, int windowSize) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		map(0);
+	}
+
+	/**
+	 * Returns the next line of the file, without its line terminator. The returned <code>CharSequence</code> is
+	 * reused, and is only valid until the next call.
+	 *
+	 * @return the next line, or <code>null</code> at the end of the file.
+	 * @throws IOException - if the file cannot be read, or a line is longer than the window size.
+	 */
+	CharSequence readLine() throws IOException {
+		if (windowStart + window.position() >= size)
+			return null;
+
+		int start = window.position();
+		int end = findLineEnd(start);
+		if (end == window.limit() && windowStart + end < size) {
+			// The line continues beyond the window, so map a new window from the start of the line.
+			map(windowStart + start);
+			start = 0;
+			end = findLineEnd(start);
+			if (end == window.limit() && windowStart + end < size)
+				throw new IOException("Line at byte " + windowStart + " is not shorter than " + windowSize + " bytes.");
+		}
+
+		decode(start, end);
+
+		// Skip the line terminator ("\r\n" counts as one).
+		int next = end;
+		if (next < window.limit()) {
+			byte terminator = window.get(next++);
+			if (terminator == '\r' && next < window.limit() && window.get(next) == '\n')
+				next++;
+			else if (terminator == '\r' && next == window.limit() && windowStart + next < size) {
+				map(windowStart + next);
+				if (window.get(0) == '\n')
+					window.position(1);
+				return chars;
+			}
+		}
+		window.position(next);
+		return chars;
+	}
+
+	/**
+	 * Returns the offset (in the window) of the line terminator of the line starting at the given offset, or the
+	 * limit of the window if it has no terminator in the window.
+	 */
+	private int findLineEnd(int start) {
+		int limit = window.limit();
+		for (int i = start; i < limit; i++) {
+			byte b = window.get(i);
+			if (b == '\n' || b == '\r')
+				return i;
+		}
+		return limit;
+	}
+
+	/**
+	 * Decodes the bytes of the window between the given offsets into the reusable <code>CharBuffer</code>.
+	 */
+	private void decode(int start, int end) {
+		if (chars.capacity() < end - start)
+			chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+		chars.clear();
+
+		// Fast path: SML programs are (almost always) ASCII, which needs no decoding.
+		int i = start;
+		while (i < end) {
+			byte b = window.get(i);
+			if (b < 0)
+				break;
+			chars.put((char) b);
+			i++;
+		}
+
+		if (i < end) {
+			int limit = window.limit();
+			window.limit(end).position(i);
+			decoder.reset();
+			CoderResult result = decoder.decode(window, chars, true);
+			if (result.isOverflow())
+				throw new IllegalStateException("Decoded line exceeds its buffer.");
+			decoder.flush(chars);
+			window.limit(limit);
+		}
+		chars.flip();
+	}
+
+	/**
+	 * Maps the window of the file starting at the given byte offset.
+	 */
+	private void map(long position) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,50 @@
+package sml;
+
+/**
+ * This interface is the destination of the output of a Small Machine Language (SML) program - the contents of the
+ * registers printed by the 'out' instruction. A <code>sml.Machine</code> writes to the sink it was created with, and
+ * flushes it when the program ends (or fails).
+ * <p>
+ * Implementations are given the register and its contents rather than a line of text, so that they can format (or
+ * ignore) the output without building a <code>String</code> for every 'out'.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ * @see sml.BufferedOutputSink
+ * @see sml.CollectingOutputSink
+ */
+public interface OutputSink {
+
+	/**
+	 * Writes the contents of a register, as the line <code>"&lt;register&gt; - &lt;value&gt;"</code>.
+	 *
+	 * @param register the register that is printed.
+	 * @param value the contents of the register.
+	 */
+	void print(RegisterName register, int value);
+
+	/**
+	 * Writes out any buffered output. The default implementation does nothing.
+	 */
+	default void flush() {
+	}
+
+	/**
+	 * Returns a sink that prints each line to <code>System.out</code> as soon as it is written. This is the sink a
+	 * <code>sml.Machine</code> uses unless it is given another one.
+	 *
+	 * @return the console sink.
+	 */
+	static OutputSink console() {
+		return (register, value) -> System.out.println(register.name() + " - " + value);
+	}
+
+	/**
+	 * Returns a sink that discards its output.
+	 *
+	 * @return the discarding sink.
+	 */
+	static OutputSink discard() {
+		return (register, value) -> { };
+	}
+}
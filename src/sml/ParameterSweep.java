@@ -0,0 +1,281 @@
+package sml;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class is a <code>final</code> class that executes one Small Machine Language (SML) program once for each of
+ * many initial register values (a parameter sweep), in parallel. The rows are split into one contiguous chunk per
+ * thread of a bounded <code>ForkJoinPool</code>, and each chunk is executed by a single <code>sml.Machine</code> that
+ * shares the immutable <code>sml.Program</code>. The output of the program is discarded.
+ * <p>
+ * A row for which the program does not end - e.g. one whose initial values make labelled 'jnz' instructions execute
+ * each other - must not hold up the sweep, so each row is given a timeout, which is its deadline (unless the limits
+ * of the sweep already have one). A row that fails, whether with an exception or by overflowing the stack, only fails
+ * its own result.
+ * <p>
+ * The inputs are read from a CSV file with a column per register. If the first line is a header of register names
+ * (e.g. <code>EAX,ECX</code>), the columns are those registers; otherwise they are <code>EAX..EDI</code> in order.
+ * Registers without a column start at 0, and blank lines are ignored.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ParameterSweep {
+
+	/**
+	 * The limits of the rows of a sweep created without any: at most a billion steps.
+	 */
+	public static final ExecutionLimits DEFAULT_LIMITS = ExecutionLimits.NONE.withMaxSteps(1_000_000_000L);
+	/**
+	 * The time each row of a sweep created without one may run for.
+	 */
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	/**
+	 * The outcome of one row of a sweep.
+	 */
+	public static final class Result {
+		private final Registers registers;
+		private final Throwable error;
+
+		Result(Registers registers, Throwable error) {
+			this.registers = registers;
+			this.error = error;
+		}
+
+		/**
+		 * @return the registers when the program ended (or failed).
+		 */
+		public Registers getRegisters() {
+			return registers;
+		}
+
+		/**
+		 * @return the exception (or <code>StackOverflowError</code>) that stopped the program, or <code>null</code> if
+		 * it ran to the end.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+	}
+
+	private final Program program;
+	private final Machine.Engine engine;
+	private final ExecutionLimits limits;
+	private final int parallelism;
+	private final Duration timeout;
+
+	/**
+	 * Constructor: a sweep of the given program with the <code>SWITCH</code> engine, <code>DEFAULT_LIMITS</code> and
+	 * <code>DEFAULT_TIMEOUT</code>, on as many threads as there are processors.
+	 *
+	 * @param program the program.
+	 */
+	public ParameterSweep(Program program) {
+		this(program, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor: a sweep of the given program with the <code>SWITCH</code> engine, <code>DEFAULT_LIMITS</code> and
+	 * the given timeout, on as many threads as there are processors.
+	 *
+	 * @param program the program.
+	 * @param timeout the time each row may run for.
+	 * @throws IllegalArgumentException - when the timeout is not positive.
+	 */
+	public ParameterSweep(Program program, Duration timeout) {
+		this(program, Machine.Engine.SWITCH, DEFAULT_LIMITS, Runtime.getRuntime().availableProcessors(), timeout);
+	}
+
+	/**
+	 * Constructor: a sweep of the given program with the given engine and limits, on the given number of threads.
+	 * Each row may run for <code>DEFAULT_TIMEOUT</code>.
+	 *
+	 * @param program the program.
+	 * @param engine the engine that executes the program.
+	 * @param limits the limits of each execution.
+	 * @param parallelism the number of threads.
+	 * @throws IllegalArgumentException - when the parallelism is not positive.
+	 */
+	public ParameterSweep(Program program, Machine.Engine engine, ExecutionLimits limits, int parallelism) {
+		this(program, engine, limits, parallelism, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor: a sweep of the given program with the given engine, limits and timeout, on the given number of
+	 * threads.
+	 *
+	 * @param program the program.
+	 * @param engine the engine that executes the program.
+	 * @param limits the limits of each execution.
+	 * @param parallelism the number of threads.
+	 * @param timeout the time each row may run for, unless the limits have a deadline.
+	 * @throws IllegalArgumentException - when the parallelism or the timeout is not positive.
+	 */
+	public ParameterSweep(Program program, Machine.Engine engine, ExecutionLimits limits, int parallelism,
+			Duration timeout) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("The parallelism must be positive, not " + parallelism + ".");
+		if (timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("The timeout must be positive, not " + timeout + ".");
+		this.program = program;
+		this.engine = engine;
+		this.limits = limits;
+		this.parallelism = parallelism;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Reads the initial register values of a sweep from a CSV file.
+	 *
+	 * @param file the CSV file.
+	 * @return the initial registers of each row.
+	 * @throws IOException - if the file cannot be read.
+	 * @throws IllegalArgumentException - when the header names an unknown register, or a value is not an integer.
+	 */
+	public static List<Registers> readInputs(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file);
+		Registers.Register[] columns = REGISTERS;
+		List<Registers> inputs = new ArrayList<>();
+		for (int row = 0; row < lines.size(); row++) {
+			String line = lines.get(row).strip();
+			if (line.isEmpty())
+				continue;
+			String[] fields = line.split(",");
+			if (inputs.isEmpty() && columns == REGISTERS && !isInteger(fields[0].strip())) {
+				columns = header(fields);
+				continue;
+			}
+			if (fields.length > columns.length) {
+				System.out.println("Error: Line " + (row + 1) + " of " + file + " has more than " + columns.length +
+						" values.");
+				throw new IllegalArgumentException();
+			}
+			Registers registers = new Registers();
+			for (int i = 0; i < fields.length; i++) {
+				try {
+					registers.set(columns[i], Integer.parseInt(fields[i].strip()));
+				}
+				catch (NumberFormatException e) {
+					System.out.println("Error: \"" + fields[i].strip() + "\" on line " + (row + 1) + " of " + file +
+							" is not an integer.");
+					throw e;
+				}
+			}
+			inputs.add(registers);
+		}
+		return inputs;
+	}
+
+	private static Registers.Register[] header(String[] fields) {
+		Registers.Register[] columns = new Registers.Register[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			try {
+				columns[i] = Registers.Register.valueOf(fields[i].strip());
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println("Error: \"" + fields[i].strip() + "\" is not a register.");
+				throw e;
+			}
+		}
+		return columns;
+	}
+
+	private static boolean isInteger(String s) {
+		try {
+			Integer.parseInt(s);
+			return true;
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Executes the program once for each of the given initial registers.
+	 *
+	 * @param inputs the initial registers of each row.
+	 * @return the result of each row, in the same order as the inputs.
+	 * @throws InterruptedException - if the thread is interrupted while waiting for the rows.
+	 */
+	public List<Result> run(List<Registers> inputs) throws InterruptedException {
+		Result[] results = new Result[inputs.size()];
+		int chunks = Math.max(1, Math.min(parallelism, inputs.size()));
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Future<?>> futures = new ArrayList<>(chunks);
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				int from = (int) ((long) inputs.size() * chunk / chunks);
+				int to = (int) ((long) inputs.size() * (chunk + 1) / chunks);
+				futures.add(pool.submit(() -> run(inputs, results, from, to)));
+			}
+			for (Future<?> future : futures)
+				future.get();
+			return Arrays.asList(results);
+		}
+		catch (ExecutionException e) {
+			// run(...) reports every Exception and StackOverflowError in its Result, so only a more serious Error can
+			// get here.
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void run(List<Registers> inputs, Result[] results, int from, int to) {
+		Machine m = new Machine(program, new Registers(), engine, OutputSink.discard());
+		for (int row = from; row < to; row++) {
+			Throwable error = null;
+			try {
+				m.execute(inputs.get(row), (limits.getDeadline() == null) ? limits.withTimeout(timeout) : limits);
+			}
+			catch (Exception | StackOverflowError e) {
+				// e.g. the POLYMORPHIC engine executing a long chain of labelled 'jnz' instructions.
+				error = e;
+			}
+			Registers registers = new Registers();
+			registers.set(m.getRegisters());
+			results[row] = new Result(registers, error);
+		}
+	}
+
+	/**
+	 * Writes the results of a sweep to a CSV file, one row per input: the row number (from 1), its status ("OK", or
+	 * the exception that stopped it), and the final value of each register.
+	 *
+	 * @param results the results of the sweep.
+	 * @param file the file to write.
+	 * @throws IOException - if the file cannot be written.
+	 */
+	public static void write(List<Result> results, Path file) throws IOException {
+		try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+			StringBuilder header = new StringBuilder("row,status");
+			for (Registers.Register register : REGISTERS)
+				header.append(',').append(register.name());
+			out.println(header);
+			StringBuilder row = new StringBuilder();
+			for (int i = 0; i < results.size(); i++) {
+				Result result = results.get(i);
+				row.setLength(0);
+				row.append(i + 1).append(',');
+				row.append((result.getError() == null) ? "OK" : result.getError().getClass().getName());
+				for (Registers.Register register : REGISTERS)
+					row.append(',').append(result.getRegisters().get(register));
+				out.println(row);
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package sml;
+
+import sml.compiler.CompiledProgram;
+import sml.compiler.ProgramCompiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * This class is a <code>final</code> class that represents a translated Small Machine Language (SML) program: its
+ * instructions, with every 'jnz' linked to the address of its labelled instruction, and its labels. An instance is
+ * immutable, so it can be shared by any number of <code>sml.Machine</code> instances - each holding only the
+ * registers and program counter of one execution - including machines running on different threads.
+ * <p>
+ * The program is encoded (see <code>sml.Bytecode</code>) once, when it is created, and compiled (see
+ * <code>sml.compiler.ProgramCompiler</code>) the first time it is executed by the <code>COMPILED</code> engine; its
+ * regions that can be executed in closed form (see <code>sml.ClosedForm</code>) are found the first time it is executed
+ * by the <code>ACCELERATED</code> engine.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Program {
+
+	private final List<Instruction> instructions;
+	private final Labels labels;
+	// The encoded program, or null if its instructions cannot be encoded.
+	private final Bytecode bytecode;
+	// The compiled program, once it has been compiled; racing threads may each compile it, which is harmless.
+	private volatile CompiledProgram compiled;
+	private volatile boolean uncompilable = false;
+	// The regions of the program that can be executed in closed form, once they have been found.
+	private volatile ClosedForm closedForm;
+
+	/**
+	 * Constructor: the program of the given instructions and labels, which are copied.
+	 *
+	 * @param instructions the instructions of the program.
+	 * @param labels the labels of the program.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public Program(List<Instruction> instructions, Labels labels) {
+		List<Instruction> linked = new ArrayList<>(instructions.size());
+		for (Instruction instruction : instructions)
+			linked.add(instruction.link(labels));
+		this.instructions = List.copyOf(linked);
+		this.labels = labels.unmodifiableCopy();
+		this.bytecode = encode(this.instructions, this.labels);
+	}
+
+	private static Bytecode encode(List<Instruction> instructions, Labels labels) {
+		try {
+			return Bytecode.encode(instructions, labels);
+		}
+		catch (IllegalArgumentException e) {
+			// An instruction that is not part of the language; the program can only be executed as instructions.
+			return null;
+		}
+	}
+
+	/**
+	 * @return the instructions of the program, as an unmodifiable list.
+	 */
+	public List<Instruction> getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * @return the labels of the program, which cannot be changed.
+	 */
+	public Labels getLabels() {
+		return labels;
+	}
+
+	/**
+	 * @return the encoded program, or <code>null</code> if the program contains an instruction that has no encoding.
+	 */
+	public Bytecode getBytecode() {
+		return bytecode;
+	}
+
+	/**
+	 * @return the number of instructions in the program.
+	 */
+	public int size() {
+		return instructions.size();
+	}
+
+	/**
+	 * Returns the compiled program, compiling it the first time.
+	 *
+	 * @return the compiled program, or <code>null</code> if the program cannot be compiled.
+	 */
+	CompiledProgram compiled() {
+		CompiledProgram result = compiled;
+		if (result != null || uncompilable || bytecode == null)
+			return result;
+		try {
+			result = ProgramCompiler.compile(bytecode);
+			compiled = result;
+			return result;
+		}
+		catch (UnsupportedOperationException e) {
+			uncompilable = true;
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the regions of the program that can be executed in closed form, finding them the first time.
+	 *
+	 * @return the regions of the program, or <code>null</code> if the program cannot be encoded.
+	 */
+	ClosedForm closedForm() {
+		ClosedForm result = closedForm;
+		if (result != null || bytecode == null)
+			return result;
+		result = ClosedForm.of(bytecode);
+		closedForm = result;
+		return result;
+	}
+
+	/**
+	 * String representation of the program.
+	 *
+	 * @return pretty formatted version of the code.
+	 */
+	@Override
+	public String toString() {
+		return instructions.stream()
+				.map(Instruction::toString)
+				.collect(Collectors.joining("\n"));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		Program other = (Program) o;
+		return instructions.equals(other.instructions) && labels.equals(other.labels);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(instructions, labels);
+	}
+}
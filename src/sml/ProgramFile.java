@@ -0,0 +1,170 @@
+package sml;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a <code>final</code> class that writes and reads translated Small Machine Language (SML) programs in a
+ * compact, versioned binary format (conventionally with the <code>.smlc</code> extension), so a program that never
+ * changes is translated once, by <code>sml.Smlc</code>, rather than every time it is run. Reading a file maps it into
+ * memory and copies the packed instructions straight into an <code>sml.Bytecode</code>, without going through the
+ * <code>sml.Translator</code> or reflection.
+ * <p>
+ * The format (version 1), in big-endian byte order, is:
+ * <ol>
+ *     <li>the magic number <code>"SMLC"</code>, a <code>u2</code> version and a <code>u2</code> of (reserved)
+ *     flags;</li>
+ *     <li>an <code>int</code> number of instructions, and an <code>int</code> number of labels;</li>
+ *     <li>the packed instructions - <code>Bytecode.WIDTH</code> <code>int</code>s each: the opcode id and flags, the
+ *     register ordinal, the register ordinal or immediate, and the resolved address of a 'jnz';</li>
+ *     <li>each label: the <code>int</code> address of its instruction, a <code>u2</code> length and its UTF-8
+ *     bytes;</li>
+ *     <li>the CRC-32 (as an <code>int</code>) of everything after the header.</li>
+ * </ol>
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ProgramFile {
+
+	public static final String EXTENSION = ".smlc";
+	public static final int VERSION = 1;
+
+	private static final int MAGIC = ('S' << 24) | ('M' << 16) | ('L' << 8) | 'C';
+	private static final int HEADER_SIZE = 16;
+	private static final int CHECKSUM_SIZE = 4;
+
+	private ProgramFile() {
+	}
+
+	/**
+	 * Writes an encoded program to a file.
+	 *
+	 * @param bytecode the encoded program.
+	 * @param file the file to write.
+	 * @throws IOException - if the file cannot be written.
+	 */
+	public static void write(Bytecode bytecode, Path file) throws IOException {
+		int[] code = bytecode.code();
+		int labels = 0;
+		for (int address = 0; address < bytecode.size(); address++)
+			if (bytecode.getLabel(address) != null)
+				labels++;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+				.putInt(MAGIC)
+				.putShort((short) VERSION)
+				.putShort((short) 0)
+				.putInt(bytecode.size())
+				.putInt(labels);
+		CRC32 checksum = new CRC32();
+		try (var out = new DataOutputStream(Files.newOutputStream(file))) {
+			out.write(header.array());
+			ByteBuffer body = ByteBuffer.allocate(code.length * Integer.BYTES);
+			body.asIntBuffer().put(code);
+			out.write(body.array());
+			checksum.update(body.array());
+			for (int address = 0; address < bytecode.size(); address++) {
+				String label = bytecode.getLabel(address);
+				if (label == null)
+					continue;
+				byte[] name = label.getBytes(StandardCharsets.UTF_8);
+				if (name.length > 0xFFFF)
+					throw new IOException("The label at " + address + " is too long to be written.");
+				ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + name.length)
+						.putInt(address)
+						.putShort((short) name.length)
+						.put(name);
+				out.write(entry.array());
+				checksum.update(entry.array());
+			}
+			out.writeInt((int) checksum.getValue());
+		}
+	}
+
+	/**
+	 * Reads an encoded program from a file.
+	 *
+	 * @param file the file to read.
+	 * @return the encoded program.
+	 * @throws IOException - if the file is not found (<code>NoSuchFileException</code>), cannot be read, or is not a
+	 * valid program file of a supported version.
+	 */
+	public static Bytecode read(Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw invalid(file, "it is too large");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.remaining() < HEADER_SIZE + CHECKSUM_SIZE || buffer.getInt() != MAGIC)
+			throw invalid(file, "it is not an SML program file");
+		int version = Short.toUnsignedInt(buffer.getShort());
+		if (version != VERSION)
+			throw invalid(file, "its version (" + version + ") is not supported");
+		buffer.getShort(); // flags
+		int size = buffer.getInt();
+		int labelCount = buffer.getInt();
+
+		int end = buffer.limit() - CHECKSUM_SIZE;
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.slice(HEADER_SIZE, end - HEADER_SIZE));
+		if ((int) checksum.getValue() != buffer.getInt(end))
+			throw invalid(file, "it is damaged");
+
+		try {
+			int[] code = new int[Math.multiplyExact(size, Bytecode.WIDTH)];
+			buffer.asIntBuffer().limit(code.length).get(code);
+			buffer.position(buffer.position() + code.length * Integer.BYTES);
+			String[] labels = new String[size];
+			byte[] name = new byte[0];
+			for (int i = 0; i < labelCount; i++) {
+				int address = buffer.getInt();
+				int length = Short.toUnsignedInt(buffer.getShort());
+				if (name.length < length)
+					name = new byte[length];
+				buffer.get(name, 0, length);
+				labels[address] = new String(name, 0, length, StandardCharsets.UTF_8);
+			}
+			if (buffer.position() != end)
+				throw invalid(file, "it has trailing data");
+			return Bytecode.of(code, labels);
+		}
+		catch (RuntimeException e) {
+			// A negative size, an address out of range, a truncated entry, or an instruction that is not valid.
+			throw invalid(file, "its content is not valid (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Reads a program from a file.
+	 *
+	 * @param file the file to read.
+	 * @return the program.
+	 * @throws IOException - if the file is not found (<code>NoSuchFileException</code>), cannot be read, or is not a
+	 * valid program file of a supported version.
+	 */
+	public static Program load(Path file) throws IOException {
+		Bytecode bytecode = read(file);
+		try {
+			return bytecode.decode();
+		}
+		catch (RuntimeException e) {
+			throw invalid(file, "its program cannot be decoded (" + e.getMessage() + ")");
+		}
+	}
+
+	private static IOException invalid(Path file, String reason) {
+		System.out.println("Error: Unable to load " + file + " as " + reason + ".");
+		return new IOException(file + ": " + reason);
+	}
+}
@@ -1,13 +1,13 @@
 package sml;
 
-import java.util.*;
+import java.util.Arrays;
 import java.util.stream.Collectors;
 
 /**
  * This class is a <code>final</code> class that stores the 8 <code>sml.Registers</code> (of type
- * <code>HashMap<sml.Register, Integer></code>) that are accessed and referenced in a Small Machine Language (SML)
- * program. The key stores each unique <code>sml.Register</code> and the <code>Integer</code>
- * value stored within it (default = 0).
+ * <code>int[]</code>) that are accessed and referenced in a Small Machine Language (SML)
+ * program. Each <code>sml.Register</code> is stored at the index of its <code>ordinal()</code> and holds the
+ * <code>int</code> value stored within it (default = 0).
  * The <code>sml.Registers</code> are defined by a <code>sml.RegisterName</code>. The <code>sml.RegisterName</code> is
  * limited to <code>EAX, EBX, ECX, EDX, ESP, EBP, ESI, EDI</code>.
  *
@@ -18,14 +18,21 @@ import java.util.stream.Collectors;
 public final class Registers {
 
     /**
-     * Creates a <code>HashMap(String, Integer)</code>. The <code>Register</code> key stores the
-     * <code>register</code> and the <code>Integer</code> value stores the integer stored in the index (default = 0).
+     * Creates an <code>int[]</code> with one slot per <code>Register</code>. The value of a
+     * <code>register</code> is stored at the index of <code>Register.ordinal()</code> (default = 0).
+     * Reads and writes are therefore allocation-free - no hashing or boxing takes place.
      */
-    private final Map<Register, Integer> registers = new HashMap<>();
+    private final int[] registers = new int[Register.values().length];
 
     public enum Register implements RegisterName {
         EAX, EBX, ECX, EDX, ESP, EBP, ESI, EDI
     }
+
+    /**
+     * A cached copy of <code>Register.values()</code>, which otherwise clones the array on every call.
+     */
+    private static final Register[] REGISTERS = Register.values();
+
     /**
      * Clears the registers, setting their value to 0.
      */
@@ -34,12 +41,19 @@ public final class Registers {
     }
 
     /**
-     * Populates the HashMap<> registers with the Register
-     * and resets the stored value in each register to 0.
+     * Resets the stored value in each register to 0.
      */
     public void clear() {
-        for (Register register : Register.values())
-            registers.put(register, 0);
+        Arrays.fill(registers, 0);
+    }
+
+    /**
+     * Sets every register to the value it has in the given registers.
+     *
+     * @param other the registers to copy.
+     */
+    public void set(Registers other) {
+        System.arraycopy(other.registers, 0, registers, 0, registers.length);
     }
 
     /**
@@ -49,7 +63,7 @@ public final class Registers {
      * @param value new value
      */
     public void set(RegisterName register, int value) {
-        registers.put((Register)register, value);
+        registers[((Register) register).ordinal()] = value;
     }
 
     /**
@@ -59,7 +73,17 @@ public final class Registers {
      * @return value
      */
     public int get(RegisterName register) {
-        return registers.get((Register)register);
+        return registers[((Register) register).ordinal()];
+    }
+
+    /**
+     * Returns the array backing the registers, indexed by <code>Register.ordinal()</code>, so that an interpreter
+     * loop can read and write the registers directly. The array is not copied.
+     *
+     * @return the array backing the registers.
+     */
+    int[] values() {
+        return registers;
     }
 
     /**
@@ -69,22 +93,31 @@ public final class Registers {
      */
     @Override
     public String toString() {
-        return registers.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .map(e -> e.getKey() + " = " + e.getValue())
+        return Arrays.stream(REGISTERS)
+                .map(r -> r + " = " + registers[r.ordinal()])
                 .collect(Collectors.joining(", ", "[", "]")) ;
     }
 
     @Override
     public boolean equals(Object o) {
         if(o instanceof Registers other) {
-            return registers.equals(other.registers);
+            return Arrays.equals(registers, other.registers);
         }
         return false;
     }
 
+    /**
+     * Returns the hash code of the registers. This is computed in the same way as the hash code of the
+     * <code>Map(Register, Integer)</code> that previously backed this class (the sum of
+     * <code>key.hashCode() ^ value.hashCode()</code> over every entry), without building the entries.
+     *
+     * @return the hash code of the registers.
+     */
     @Override
     public int hashCode() {
-        return registers.hashCode();
+        int hash = 0;
+        for (Register register : REGISTERS)
+            hash += register.hashCode() ^ Integer.hashCode(registers[register.ordinal()]);
+        return hash;
     }
 }
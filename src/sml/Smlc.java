@@ -0,0 +1,61 @@
+package sml;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * This is the <code>Smlc</code> class that compiles a Small Machine Language (SML) program into the binary format of
+ * <code>sml.ProgramFile</code>, which <code>sml.Main</code> can execute without translating it.
+ * <p>
+ * Usage: <code>java sml.Smlc &lt;file&gt; [output file]</code> - the output file defaults to the name of the file
+ * with the <code>.smlc</code> extension.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public class Smlc {
+
+	public static void main(String... args) {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Incorrect number of arguments - Smlc <file> [output file] - required");
+			System.exit(-1);
+		}
+		Path output = (args.length == 2) ? Path.of(args[1]) : outputFile(Path.of(args[0]));
+
+		try {
+			Program program = new Translator(args[0]).translate();
+			if (program.getBytecode() == null) {
+				System.out.println("Error: " + args[0] + " contains instructions that cannot be compiled.");
+				System.exit(-1);
+			}
+			ProgramFile.write(program.getBytecode(), output);
+			System.out.println("Compiled " + program.size() + " instructions to " + output + ".");
+		}
+		catch(FileNotFoundException | NoSuchFileException e) {
+			System.out.println("Error: " + args[0] + " not found.");
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.out.println("Error: IO error when compiling " + args[0] + " to " + output);
+			System.exit(-1);
+		}
+		catch(Exception e) {
+			System.out.println("Please revise your SML program before attempting to rerun.");
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Returns the default output file of a program: the file with its extension replaced by <code>.smlc</code>.
+	 *
+	 * @param file the file of the program.
+	 * @return the output file.
+	 */
+	static Path outputFile(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return file.resolveSibling(((dot > 0) ? name.substring(0, dot) : name) + ProgramFile.EXTENSION);
+	}
+}
@@ -0,0 +1,264 @@
+package sml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a <code>final</code> class that holds the state of an execution of a Small Machine Language (SML)
+ * program at a point between two of its steps, from which the execution can be resumed, on another machine or in
+ * another JVM (see <code>Machine.resume(Snapshot)</code>): the values of the registers, the number of steps executed,
+ * the address of the next instruction to be executed and the program counter, and the fingerprint of the program.
+ * The next instruction may be the labelled instruction of a 'jnz', executed in place; the program counter is then the
+ * address after the 'jnz', at which execution carries on. Snapshots are taken by an <code>sml.Checkpoints</code>.
+ * <p>
+ * A snapshot is written to a file in a compact binary format (version 1), in big-endian byte order:
+ * <ol>
+ *     <li>the magic number <code>"SMLS"</code>, a <code>u2</code> version and a <code>u2</code> of (reserved)
+ *     flags;</li>
+ *     <li>the <code>int</code> fingerprint of the program, the <code>long</code> number of steps, the <code>int</code>
+ *     address of the next instruction and the <code>int</code> program counter;</li>
+ *     <li>an <code>int</code> number of registers, and the <code>int</code> value of each;</li>
+ *     <li>the CRC-32 (as an <code>int</code>) of everything before it.</li>
+ * </ol>
+ * An instance is immutable.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Snapshot {
+
+	public static final int VERSION = 1;
+
+	private static final int MAGIC = ('S' << 24) | ('M' << 16) | ('L' << 8) | 'S';
+	private static final int HEADER_SIZE = 8;
+	private static final int STATE_SIZE = Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+	private static final int CHECKSUM_SIZE = 4;
+
+	private final int fingerprint;
+	private final long steps;
+	private final int address;
+	private final int programCounter;
+	private final int[] registers;
+
+	/**
+	 * Constructor: the snapshot of an execution.
+	 *
+	 * @param fingerprint the fingerprint of the program (see <code>fingerprint(Bytecode)</code>).
+	 * @param steps the number of instructions executed.
+	 * @param address the address of the next instruction to be executed.
+	 * @param programCounter the address at which execution carries on after that instruction.
+	 * @param registers the values of the registers, which are copied.
+	 */
+	Snapshot(int fingerprint, long steps, int address, int programCounter, int[] registers) {
+		this.fingerprint = fingerprint;
+		this.steps = steps;
+		this.address = address;
+		this.programCounter = programCounter;
+		this.registers = registers.clone();
+	}
+
+	/**
+	 * Returns the fingerprint of an encoded program: the CRC-32 of its packed instructions and its labels. Programs
+	 * with the same instructions and labels have the same fingerprint in every JVM.
+	 *
+	 * @param bytecode the encoded program.
+	 * @return the fingerprint of the program.
+	 */
+	public static int fingerprint(Bytecode bytecode) {
+		int[] code = bytecode.code();
+		ByteBuffer packed = ByteBuffer.allocate(code.length * Integer.BYTES);
+		packed.asIntBuffer().put(code);
+		CRC32 checksum = new CRC32();
+		checksum.update(packed.array());
+		for (int address = 0; address < bytecode.size(); address++) {
+			String label = bytecode.getLabel(address);
+			if (label == null)
+				continue;
+			checksum.update(ByteBuffer.allocate(Integer.BYTES).putInt(address).array());
+			checksum.update(label.getBytes(StandardCharsets.UTF_8));
+		}
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * Checks that the snapshot was taken from an execution of the given program.
+	 *
+	 * @param bytecode the encoded program.
+	 * @throws IllegalArgumentException - when the program has a different fingerprint, or the snapshot's addresses
+	 * are not in the program.
+	 */
+	void verify(Bytecode bytecode) {
+		String problem = null;
+		if (fingerprint != fingerprint(bytecode))
+			problem = "it was taken from a different program";
+		else if (address < 0 || address >= bytecode.size() || programCounter < 1 || programCounter > bytecode.size()
+				|| bytecode.getLabel(programCounter - 1) != null)
+			problem = "its addresses are not in the program";
+		else if (registers.length != Registers.Register.values().length)
+			problem = "it has " + registers.length + " registers";
+		if (problem != null) {
+			System.out.println("Error: Unable to resume the program from the snapshot as " + problem + ".");
+			throw new IllegalArgumentException("The snapshot cannot be resumed as " + problem + ".");
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a file. The snapshot is first written to a temporary file in the same directory and
+	 * forced to the storage device, and the temporary file then replaces the file, so the file always holds a complete
+	 * snapshot even if the JVM or the operating system stops part way through.
+	 *
+	 * @param file the file to write.
+	 * @throws IOException - if the file cannot be written.
+	 */
+	public void write(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + STATE_SIZE + Integer.BYTES
+				+ registers.length * Integer.BYTES + CHECKSUM_SIZE)
+				.putInt(MAGIC)
+				.putShort((short) VERSION)
+				.putShort((short) 0)
+				.putInt(fingerprint)
+				.putLong(steps)
+				.putInt(address)
+				.putInt(programCounter)
+				.putInt(registers.length);
+		for (int value : registers)
+			buffer.putInt(value);
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int) checksum.getValue());
+		buffer.flip();
+
+		Path absolute = file.toAbsolutePath();
+		Path directory = absolute.getParent();
+		Path temporary = Files.createTempFile(directory, absolute.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(true);
+			}
+			Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temporary);
+		}
+		force(directory);
+	}
+
+	/**
+	 * Forces the entries of a directory (e.g. a file that has been moved into it) to the storage device, where the
+	 * platform allows a directory to be opened.
+	 */
+	private static void force(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			// The platform does not allow a directory to be opened (e.g. Windows); the move is still atomic.
+		}
+	}
+
+	/**
+	 * Reads a snapshot from a file.
+	 *
+	 * @param file the file to read.
+	 * @return the snapshot.
+	 * @throws IOException - if the file is not found (<code>NoSuchFileException</code>), cannot be read, or is not a
+	 * valid snapshot file of a supported version.
+	 */
+	public static Snapshot read(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.remaining() < HEADER_SIZE + STATE_SIZE + Integer.BYTES + CHECKSUM_SIZE || buffer.getInt() != MAGIC)
+			throw invalid(file, "it is not an SML snapshot file");
+		int version = Short.toUnsignedInt(buffer.getShort());
+		if (version != VERSION)
+			throw invalid(file, "its version (" + version + ") is not supported");
+		buffer.getShort(); // flags
+
+		int end = buffer.limit() - CHECKSUM_SIZE;
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), 0, end);
+		if ((int) checksum.getValue() != buffer.getInt(end))
+			throw invalid(file, "it is damaged");
+
+		int fingerprint = buffer.getInt();
+		long steps = buffer.getLong();
+		int address = buffer.getInt();
+		int programCounter = buffer.getInt();
+		int count = buffer.getInt();
+		if (steps < 0 || count < 0 || (long) count * Integer.BYTES != end - buffer.position())
+			throw invalid(file, "its content is not valid");
+		int[] registers = new int[count];
+		buffer.asIntBuffer().get(registers);
+		return new Snapshot(fingerprint, steps, address, programCounter, registers);
+	}
+
+	private static IOException invalid(Path file, String reason) {
+		System.out.println("Error: Unable to load " + file + " as " + reason + ".");
+		return new IOException(file + ": " + reason);
+	}
+
+	/**
+	 * @return the fingerprint of the program the snapshot was taken from.
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return the number of instructions executed before the snapshot was taken.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the address of the next instruction to be executed.
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the address at which execution carries on after the next instruction.
+	 */
+	public int getProgramCounter() {
+		return programCounter;
+	}
+
+	/**
+	 * @return the values of the registers when the snapshot was taken.
+	 */
+	public Registers getRegisters() {
+		Registers result = new Registers();
+		System.arraycopy(registers, 0, result.values(), 0, Math.min(registers.length, result.values().length));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot[fingerprint=" + Integer.toHexString(fingerprint) + ", steps=" + steps + ", address=" + address
+				+ ", programCounter=" + programCounter + ", registers=" + Arrays.toString(registers) + "]";
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Snapshot other)) return false;
+		return fingerprint == other.fingerprint && steps == other.steps && address == other.address
+				&& programCounter == other.programCounter && Arrays.equals(registers, other.registers);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(steps) + Arrays.hashCode(registers);
+	}
+}
@@ -0,0 +1,119 @@
+package sml;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * This class is a <code>final</code> class that enforces <code>sml.ExecutionLimits</code> during one execution of a
+ * program. An engine counts the steps it executes, and calls <code>check</code> whenever the count reaches the
+ * checkpoint returned by the previous call (the first checkpoint is the step it starts at); between checkpoints, the
+ * cost of the limits is a comparison per step. Unlimited executions have a checkpoint that is never reached, unless
+ * they take snapshots (see <code>sml.Checkpoints</code>), which are taken at checkpoints.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class StepBudget {
+
+	private static final Duration MAX_REMAINING = Duration.ofNanos(Long.MAX_VALUE / 4);
+
+	private final ExecutionLimits limits;
+	// The deadline as a System.nanoTime(), if there is one.
+	private final long deadline;
+	private final Checkpoints checkpoints;
+	// The step at which the next snapshot is due, and the fingerprint of the program, once it has been found.
+	private long nextSnapshot = Long.MAX_VALUE;
+	private Integer fingerprint = null;
+
+	/**
+	 * Constructor: the budget of an execution that starts now.
+	 *
+	 * @param limits the limits of the execution.
+	 */
+	StepBudget(ExecutionLimits limits) {
+		this(limits, null);
+	}
+
+	/**
+	 * Constructor: the budget of an execution that starts now, and takes snapshots.
+	 *
+	 * @param limits the limits of the execution.
+	 * @param checkpoints the checkpoints that take the snapshots of the execution, or <code>null</code>.
+	 */
+	StepBudget(ExecutionLimits limits, Checkpoints checkpoints) {
+		this.limits = limits;
+		this.deadline = (limits.getDeadline() == null) ? 0
+				: System.nanoTime() + remainingNanos(Instant.now(), limits.getDeadline());
+		this.checkpoints = checkpoints;
+	}
+
+	/**
+	 * @param steps the number of instructions executed before the execution starts (0, unless it is resumed).
+	 * @return the first checkpoint.
+	 */
+	long start(long steps) {
+		if (checkpoints != null)
+			nextSnapshot = checkpoints.first(steps);
+		return (limits.isUnlimited() && checkpoints == null) ? Long.MAX_VALUE : steps;
+	}
+
+	/**
+	 * Checks the limits before the next instruction is executed.
+	 *
+	 * @param steps the number of instructions executed so far.
+	 * @return the number of steps at which to check again.
+	 * @throws ExecutionLimitException - when a limit has been reached.
+	 */
+	long check(long steps) {
+		if (limits.isUnlimited() && checkpoints == null)
+			return Long.MAX_VALUE;
+		if (steps >= limits.getMaxSteps())
+			throw stop(ExecutionLimitException.Reason.STEPS, steps);
+		if (limits.getCancellation() != null && limits.getCancellation().isCancelled())
+			throw stop(ExecutionLimitException.Reason.CANCELLED, steps);
+		if (limits.getDeadline() != null && System.nanoTime() - deadline >= 0)
+			throw stop(ExecutionLimitException.Reason.DEADLINE, steps);
+		long next = Math.min(limits.getMaxSteps(), steps + ExecutionLimits.CHECK_INTERVAL);
+		return (nextSnapshot > steps) ? Math.min(next, nextSnapshot) : next;
+	}
+
+	/**
+	 * @param steps the number of instructions executed so far.
+	 * @return whether a snapshot is to be taken before the next instruction is executed.
+	 */
+	boolean isSnapshotDue(long steps) {
+		return checkpoints != null && (steps >= nextSnapshot || checkpoints.isRequested());
+	}
+
+	/**
+	 * Takes a snapshot of the execution, and writes it to the file of the checkpoints.
+	 *
+	 * @param bytecode the encoded program.
+	 * @param steps the number of instructions executed so far.
+	 * @param address the address of the next instruction to be executed.
+	 * @param programCounter the address at which execution carries on after that instruction.
+	 * @param registers the values of the registers.
+	 */
+	void snapshot(Bytecode bytecode, long steps, int address, int programCounter, int[] registers) {
+		if (fingerprint == null)
+			fingerprint = Snapshot.fingerprint(bytecode);
+		checkpoints.write(new Snapshot(fingerprint, steps, address, programCounter, registers));
+		nextSnapshot = checkpoints.first(steps);
+	}
+
+	private static ExecutionLimitException stop(ExecutionLimitException.Reason reason, long steps) {
+		ExecutionLimitException e = new ExecutionLimitException(reason, steps);
+		System.out.println("Error: " + e.getMessage());
+		return e;
+	}
+
+	// The time to the deadline, kept within the range in which System.nanoTime() values can be compared.
+	// (Duration.between is not used on distant deadlines, as it relies on catching an ArithmeticException.)
+	private static long remainingNanos(Instant now, Instant deadline) {
+		if (!deadline.isAfter(now))
+			return 0;
+		if (deadline.isAfter(now.plus(MAX_REMAINING)))
+			return MAX_REMAINING.toNanos();
+		return Duration.between(now, deadline).toNanos();
+	}
+}
@@ -0,0 +1,242 @@
+package sml;
+
+import sml.jfr.DivisionByZeroEvent;
+
+/**
+ * This class is a <code>final</code> class that executes an encoded Small Machine Language (SML) program (see
+ * <code>sml.Bytecode</code>) in a single loop that dispatches on the dense opcode id of each packed instruction with
+ * a <code>switch</code>. Unlike executing a <code>List(sml.Instruction)</code>, there is no virtual call per
+ * instruction, and the registers are read and written directly through the array that backs them.
+ * <p>
+ * This follows the same rules as the instructions themselves: a labelled instruction is only executed by a 'jnz',
+ * which executes it in place and then carries on with the instruction after the 'jnz'.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class SwitchInterpreter {
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	private final Bytecode bytecode;
+	private final Registers registers;
+	private final OutputSink output;
+	private final Tracer tracer;
+	private final StepBudget budget;
+	private final ExecutionStats stats;
+
+	// The program counter; it contains the address of the next instruction to be executed.
+	private int programCounter = 0;
+	// The number of instructions executed.
+	private long steps = 0;
+
+	/**
+	 * Constructor: an interpreter of the given program that runs on the given registers.
+	 *
+	 * @param bytecode the encoded program.
+	 * @param registers the registers the program runs on.
+	 * @param output the sink that 'out' writes to.
+	 * @param tracer the tracer of the execution.
+	 * @param budget the limits of the execution.
+	 * @param stats the statistics the execution is counted in, or <code>null</code>.
+	 */
+	SwitchInterpreter(Bytecode bytecode, Registers registers, OutputSink output, Tracer tracer, StepBudget budget,
+			ExecutionStats stats) {
+		this.bytecode = bytecode;
+		this.registers = registers;
+		this.output = output;
+		this.tracer = tracer;
+		this.budget = budget;
+		this.stats = stats;
+	}
+
+	/**
+	 * Executes the program, beginning at instruction 0.
+	 *
+	 * @throws ArithmeticException - when a 'div' has an operand of 0.
+	 * @throws ExecutionLimitException - when a limit of the execution is reached.
+	 */
+	void run() {
+		run(0, bytecode.size());
+	}
+
+	/**
+	 * Executes the instructions of the program from one address up to (but not including) another. The number of
+	 * instructions executed is added to those of earlier calls.
+	 *
+	 * @param from the address of the first instruction to execute.
+	 * @param to the address at which execution stops.
+	 * @throws ArithmeticException - when a 'div' has an operand of 0.
+	 * @throws ExecutionLimitException - when a limit of the execution is reached.
+	 */
+	void run(int from, int to) {
+		execute(-1, from, to);
+	}
+
+	/**
+	 * Resumes the execution of the program from a snapshot (see <code>sml.Snapshot</code>): executes the next
+	 * instruction of the snapshot, even if it is labelled, and carries on at its program counter.
+	 *
+	 * @param snapshot the snapshot, which has been verified against the program.
+	 * @throws ArithmeticException - when a 'div' has an operand of 0.
+	 * @throws ExecutionLimitException - when a limit of the execution is reached.
+	 */
+	void resume(Snapshot snapshot) {
+		steps = snapshot.getSteps();
+		execute(snapshot.getAddress(), snapshot.getProgramCounter(), bytecode.size());
+	}
+
+	/**
+	 * Executes the instructions of the program up to (but not including) an address.
+	 *
+	 * @param address the address of an instruction to execute in place first, or -1 if there is none.
+	 * @param from the address at which execution carries on; if there is an instruction to execute first, the
+	 * instruction before this address is not labelled.
+	 * @param to the address at which execution stops.
+	 */
+	private void execute(int address, int from, int to) {
+		final int[] code = bytecode.code();
+		final int[] r = registers.values();
+		final int size = to;
+		final boolean tracing = tracer.isEnabled();
+		final long[] hits = (stats != null) ? stats.hits() : null;
+		final long[] taken = (stats != null) ? stats.taken() : null;
+		final boolean observed = tracing || hits != null;
+		long steps = this.steps;
+		long checkpoint = budget.start(steps);
+		// A resumed execution begins at the instruction that reached the snapshot, and is redirected to the
+		// instruction of the snapshot at its first checkpoint, so the steps do not test for it.
+		int resumed = address;
+		int pc = from;
+		if (resumed >= 0) {
+			pc--;
+			checkpoint = steps;
+		}
+		try {
+			while (pc < size) {
+				int i = pc * Bytecode.WIDTH;
+				pc++;
+				if ((code[i] & Bytecode.LABELLED) != 0)
+					continue;
+				dispatch:
+				while (true) {
+					if (steps == checkpoint) {
+						if (resumed >= 0) {
+							i = resumed * Bytecode.WIDTH;
+							resumed = -1;
+						}
+						checkpoint = checkpoint(steps, i / Bytecode.WIDTH, pc);
+					}
+					steps++;
+					if (observed) {
+						if (tracing)
+							step(i / Bytecode.WIDTH);
+						if (hits != null)
+							hits[i / Bytecode.WIDTH]++;
+					}
+					switch (code[i] & Bytecode.OPCODE_MASK) {
+						case Bytecode.ADD -> r[code[i + 1]] += r[code[i + 2]];
+						case Bytecode.SUB -> r[code[i + 1]] -= r[code[i + 2]];
+						case Bytecode.MUL -> r[code[i + 1]] *= r[code[i + 2]];
+						case Bytecode.DIV -> {
+							int value1 = r[code[i + 1]];
+							int value2 = r[code[i + 2]];
+							if (value1 == 0 || value2 == 0) {
+								String instruction = bytecode.toString(i / Bytecode.WIDTH);
+								System.out.println("Error: Unable to execute command \"" + instruction + "\" - / by zero. ");
+								DivisionByZeroEvent.record(instruction);
+								throw new ArithmeticException();
+							}
+							r[code[i + 1]] = value1 / value2;
+						}
+						case Bytecode.OUT -> output.print(REGISTERS[code[i + 1]], r[code[i + 1]]);
+						case Bytecode.MOV -> r[code[i + 1]] = code[i + 2];
+						// The 'mov' comes first, as the two registers may be the same.
+						case Bytecode.MOVADD -> {
+							r[code[i + 2]] = code[i + 3];
+							r[code[i + 1]] += code[i + 3];
+						}
+						case Bytecode.MOVSUB -> {
+							r[code[i + 2]] = code[i + 3];
+							r[code[i + 1]] -= code[i + 3];
+						}
+						case Bytecode.MOVMUL -> {
+							r[code[i + 2]] = code[i + 3];
+							r[code[i + 1]] *= code[i + 3];
+						}
+						case Bytecode.JNZ -> {
+							if (r[code[i + 1]] != 0) {
+								if (taken != null)
+									taken[i / Bytecode.WIDTH]++;
+								// Execute the labelled instruction in place.
+								i = code[i + 3] * Bytecode.WIDTH;
+								continue dispatch;
+							}
+							if (tracing)
+								tracer.branchNotTaken(tracer.isStepping() ? bytecode.toString(i / Bytecode.WIDTH) : null,
+										REGISTERS[code[i + 1]]);
+						}
+						case Bytecode.SUBJNZ -> {
+							if ((r[code[i + 1]] -= r[code[i + 2]]) != 0) {
+								if (taken != null)
+									taken[i / Bytecode.WIDTH]++;
+								i = code[i + 3] * Bytecode.WIDTH;
+								continue dispatch;
+							}
+							if (tracing)
+								tracer.branchNotTaken(tracer.isStepping() ? bytecode.toString(i / Bytecode.WIDTH) : null,
+										REGISTERS[code[i + 1]]);
+						}
+						case Bytecode.ADDJNZ -> {
+							if ((r[code[i + 1]] += r[code[i + 2]]) != 0) {
+								if (taken != null)
+									taken[i / Bytecode.WIDTH]++;
+								i = code[i + 3] * Bytecode.WIDTH;
+								continue dispatch;
+							}
+							if (tracing)
+								tracer.branchNotTaken(tracer.isStepping() ? bytecode.toString(i / Bytecode.WIDTH) : null,
+										REGISTERS[code[i + 1]]);
+						}
+						default -> throw new IllegalStateException("Unknown opcode id " + (code[i] & Bytecode.OPCODE_MASK));
+					}
+					break;
+				}
+			}
+		}
+		finally {
+			programCounter = pc;
+			this.steps = steps;
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the execution if one is due, then checks its limits; snapshots are taken between steps,
+	 * before the limits can stop the execution.
+	 *
+	 * @return the number of steps at which to check again.
+	 */
+	private long checkpoint(long steps, int address, int programCounter) {
+		if (budget.isSnapshotDue(steps))
+			budget.snapshot(bytecode, steps, address, programCounter, registers.values());
+		return budget.check(steps);
+	}
+
+	private void step(int address) {
+		tracer.step(address, tracer.isStepping() ? bytecode.toString(address) : null);
+	}
+
+	/**
+	 * @return the program counter at the point the program finished (or failed).
+	 */
+	int getProgramCounter() {
+		return programCounter;
+	}
+
+	/**
+	 * @return the number of instructions executed, up to the point the program finished (or failed).
+	 */
+	long getSteps() {
+		return steps;
+	}
+}
@@ -0,0 +1,146 @@
+package sml;
+
+import java.util.function.Consumer;
+
+/**
+ * This class is a <code>final</code> class that traces the execution of a Small Machine Language (SML) program on a
+ * <code>sml.Machine</code>. What is traced depends on its <code>Level</code>:
+ * <ul>
+ *     <li><code>OFF</code> - nothing (the default). The engines do not call the tracer at all, so tracing costs
+ *     nothing when it is off;</li>
+ *     <li><code>SUMMARY</code> - the number of instructions executed, and the number of 'jnz' instructions that did
+ *     not execute their labelled instruction, when the program ends;</li>
+ *     <li><code>STEP</code> - as <code>SUMMARY</code>, and also each instruction as it is executed, and each 'jnz'
+ *     that does not execute its labelled instruction.</li>
+ * </ul>
+ * Each event is written as a line of text to the consumer the tracer was created with (by default,
+ * <code>System.out</code>). A program traced by a machine with the <code>COMPILED</code> engine is executed by the
+ * <code>SWITCH</code> engine.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Tracer {
+
+	/**
+	 * The levels of detail of a trace.
+	 */
+	public enum Level {
+		OFF,
+		SUMMARY,
+		STEP
+	}
+
+	private static final Tracer OFF = new Tracer(Level.OFF);
+
+	private final Level level;
+	private final Consumer<String> out;
+	private long steps = 0;
+	private long branchesNotTaken = 0;
+
+	/**
+	 * Constructor: a tracer at the given level that writes to <code>System.out</code>.
+	 *
+	 * @param level the level of detail of the trace.
+	 */
+	public Tracer(Level level) {
+		this(level, line -> System.out.println(line));
+	}
+
+	/**
+	 * Constructor: a tracer at the given level that writes each line of the trace to the given consumer.
+	 *
+	 * @param level the level of detail of the trace.
+	 * @param out the consumer of the lines of the trace.
+	 */
+	public Tracer(Level level, Consumer<String> out) {
+		this.level = level;
+		this.out = out;
+	}
+
+	/**
+	 * @return a tracer that traces nothing.
+	 */
+	public static Tracer off() {
+		return OFF;
+	}
+
+	/**
+	 * @return the level of detail of the trace.
+	 */
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return <code>true</code> if the tracer is not <code>OFF</code>, and so must be told about every step.
+	 */
+	public boolean isEnabled() {
+		return level != Level.OFF;
+	}
+
+	/**
+	 * @return <code>true</code> if each step is written to the trace.
+	 */
+	public boolean isStepping() {
+		return level == Level.STEP;
+	}
+
+	/**
+	 * Records the execution of an instruction.
+	 *
+	 * @param address the address of the instruction.
+	 * @param instruction the instruction (or its source text); only converted to a String when stepping.
+	 */
+	public void step(int address, Object instruction) {
+		steps++;
+		if (isStepping())
+			out.accept("Executing " + address + ": " + instruction);
+	}
+
+	/**
+	 * Records a 'jnz' that did not execute its labelled instruction, because its register was 0.
+	 *
+	 * @param instruction the 'jnz' (or its source text); only converted to a String when stepping.
+	 * @param register the register of the 'jnz'.
+	 */
+	public void branchNotTaken(Object instruction, RegisterName register) {
+		branchesNotTaken++;
+		if (isStepping())
+			out.accept("Did not execute \"" + instruction + "\" as " + register.name() +
+					" = 0. Moving to execute next valid command.");
+	}
+
+	/**
+	 * @return the number of instructions executed since the program started.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the number of 'jnz' instructions that did not execute their labelled instruction since the program
+	 * started.
+	 */
+	public long getBranchesNotTaken() {
+		return branchesNotTaken;
+	}
+
+	/**
+	 * Called by the machine when a program starts.
+	 */
+	void start() {
+		if (isEnabled()) {
+			steps = 0;
+			branchesNotTaken = 0;
+		}
+	}
+
+	/**
+	 * Called by the machine when a program ends (or fails); writes the summary.
+	 */
+	void finish() {
+		if (isEnabled())
+			out.accept("Executed " + steps + " instructions (" + branchesNotTaken + " 'jnz' not taken).");
+	}
+}
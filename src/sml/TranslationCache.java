@@ -0,0 +1,281 @@
+package sml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a <code>final</code> class that caches translated Small Machine Language (SML) programs, keyed by the
+ * SHA-256 hash of the bytes of their files, so a file that is run again (or a copy of it) is not translated again.
+ * The most recently used programs are kept in memory, up to a configurable number; the least recently used is
+ * evicted when the cache is full.
+ * <p>
+ * Optionally, the cache also keeps each program on disk, in a directory, as a serialized <code>sml.Bytecode</code>
+ * named after the hash. A program that is not in memory is decoded from the directory (if it is there) rather than
+ * translated. Programs containing instructions that have no encoding are only cached in memory.
+ * <p>
+ * The cache can be shared between threads. Two threads that miss on the same file at the same time may both
+ * translate it.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class TranslationCache {
+
+	private static final String EXTENSION = ".bytecode";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// Only a Bytecode, and the arrays and strings it is made of, may be deserialized from the cache directory.
+	private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+			"sml.Bytecode;java.lang.String;maxdepth=3;!*");
+
+	/**
+	 * A snapshot of the counters of a cache.
+	 */
+	public static final class Stats {
+		private final long hits;
+		private final long diskHits;
+		private final long misses;
+		private final long evictions;
+		private final int size;
+		private final int capacity;
+
+		Stats(long hits, long diskHits, long misses, long evictions, int size, int capacity) {
+			this.hits = hits;
+			this.diskHits = diskHits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * @return the number of programs found in memory.
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return the number of programs not in memory that were decoded from the cache directory.
+		 */
+		public long getDiskHits() {
+			return diskHits;
+		}
+
+		/**
+		 * @return the number of programs that had to be translated.
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return the number of programs evicted from memory.
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return the number of programs in memory.
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the most programs kept in memory.
+		 */
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return the fraction of lookups found in memory or on disk (0 if there have been none).
+		 */
+		public double getHitRate() {
+			long lookups = hits + diskHits + misses;
+			return (lookups == 0) ? 0 : (double) (hits + diskHits) / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return "TranslationCache.Stats[hits=" + hits + ", diskHits=" + diskHits + ", misses=" + misses +
+					", evictions=" + evictions + ", size=" + size + ", capacity=" + capacity + "]";
+		}
+	}
+
+	private final int capacity;
+	private final Path directory;
+	private final Map<String, Program> programs;
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Constructor: an in-memory cache of at most <code>capacity</code> programs.
+	 *
+	 * @param capacity the most programs kept in memory.
+	 */
+	public TranslationCache(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Constructor: a cache of at most <code>capacity</code> programs in memory, that also keeps the programs in the
+	 * given directory.
+	 *
+	 * @param capacity the most programs kept in memory.
+	 * @param directory the directory the programs are kept in, or <code>null</code> to keep them only in memory.
+	 * @throws IllegalArgumentException - when the capacity is not positive.
+	 */
+	public TranslationCache(int capacity, Path directory) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity must be positive, not " + capacity + ".");
+		this.capacity = capacity;
+		this.directory = directory;
+		this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+				if (size() <= TranslationCache.this.capacity)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the translated program of a file, translating it only if the same content is not cached.
+	 *
+	 * @param file the file containing the SML program.
+	 * @return the translated program.
+	 * @throws IOException - if the file is not found (<code>NoSuchFileException</code>) or cannot be read.
+	 */
+	public Program get(Path file) throws IOException {
+		String key = hash(file);
+		synchronized (this) {
+			Program program = programs.get(key);
+			if (program != null) {
+				hits++;
+				return program;
+			}
+		}
+		Program program = load(key);
+		boolean translated = (program == null);
+		if (translated) {
+			program = new Translator(file.toString()).translate();
+			// The file is read again to be translated; if it changed in between, the program does not belong to the
+			// content that was hashed, so it is returned without being cached.
+			if (!key.equals(hash(file))) {
+				synchronized (this) {
+					misses++;
+				}
+				return program;
+			}
+			store(key, program);
+		}
+		synchronized (this) {
+			if (translated)
+				misses++;
+			else
+				diskHits++;
+			programs.put(key, program);
+		}
+		return program;
+	}
+
+	/**
+	 * @return a snapshot of the counters of the cache.
+	 */
+	public synchronized Stats getStats() {
+		return new Stats(hits, diskHits, misses, evictions, programs.size(), capacity);
+	}
+
+	/**
+	 * Removes every program from memory (but not from the cache directory), and resets the counters.
+	 */
+	public synchronized void clear() {
+		programs.clear();
+		hits = 0;
+		diskHits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the bytes of a file, in hexadecimal.
+	 *
+	 * @param file the file.
+	 * @return the hash.
+	 * @throws IOException - if the file cannot be read.
+	 */
+	static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Every Java platform supports SHA-256.
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private Program load(String key) {
+		if (directory == null)
+			return null;
+		try (var in = new ObjectInputStream(Files.newInputStream(directory.resolve(key + EXTENSION)))) {
+			in.setObjectInputFilter(FILTER);
+			return ((Bytecode) in.readObject()).decode();
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+		catch (IOException | ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+			// A damaged (or foreign) entry is ignored; it is replaced when the program is translated.
+			return null;
+		}
+	}
+
+	private void store(String key, Program program) {
+		if (directory == null || program.getBytecode() == null)
+			return;
+		try {
+			Files.createDirectories(directory);
+			// Written to a temporary file and moved into place, so a reader never sees a partial entry.
+			Path temporary = Files.createTempFile(directory, key, ".tmp");
+			try {
+				try (var out = new ObjectOutputStream(Files.newOutputStream(temporary))) {
+					out.writeObject(program.getBytecode());
+				}
+				Files.move(temporary, directory.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+		catch (IOException e) {
+			// The program is still cached in memory.
+			System.out.println("Error: Unable to write the translated program to " + directory + ".");
+		}
+	}
+}
@@ -1,19 +1,24 @@
 package sml;
 
-import java.io.File;
+import sml.jfr.TranslationEvent;
+
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
-import java.util.Scanner;
-import java.lang.reflect.*;
 
 import static sml.Registers.Register;
 
 /**
  * This class is a <code>final</code> class that represents the translator that processes a Small Machine Language (SML)
  * program into internal form.
+ * An instance keeps the state of the line being translated, so it must not be shared between threads; the
+ * instruction registry it uses is immutable and can be.
+ * <p>
+ * Besides the instructions of the language, the translator accepts the superinstructions produced by
+ * <code>sml.optimizer.Superinstructions</code> ('subjnz', 'addjnz', 'movadd', 'movsub' and 'movmul'), so that the
+ * source text of a fused program (e.g. <code>Program.toString()</code>) can be translated again. They are an
+ * extension of the language for that purpose only; programs are not expected to be written with them.
  *
  * @author mcmanusniall
  * @version 1.0
@@ -21,28 +26,64 @@ import static sml.Registers.Register;
 public final class Translator {
 
     private final String fileName;
-    private String line = "";
+    private final InstructionRegistry registry;
+    private static final Register[] REGISTERS = Register.values();
+
+    private final Lexer lexer = new Lexer();
     public Translator(String fileName) {
-        this.fileName =  fileName;
+        this(fileName, InstructionRegistry.getInstance());
+    }
+
+    /**
+     * Constructor: a translator for the given file that creates instructions through the given registry.
+     *
+     * @param fileName the name of the file containing the SML program.
+     * @param registry the registry that maps each opcode to the factory of its instruction.
+     */
+    public Translator(String fileName, InstructionRegistry registry) {
+        this.fileName = fileName;
+        this.registry = registry;
     }
 
 
+    /**
+     * Reads in and translates the SML program file into an immutable <code>sml.Program</code>, which can be executed
+     * by any number of machines.
+     *
+     * @return the translated program.
+     * @throws IOException - if input file is not found (<code>NoSuchFileException</code>) or cannot be read.
+     */
+    public Program translate() throws IOException {
+        Labels labels = new Labels();
+        List<Instruction> program = new ArrayList<>();
+        readAndTranslate(labels, program);
+        return new Program(program, labels);
+    }
+
     /**
      * Reads in the SML program file line by line and translates it into the internal format. Labels that are stated
      * are stored in the <code>labels</code> HashMap and instructions are stored in the <code>program</code> List.
+     * The file is memory-mapped and each line is translated as it is read (see <code>sml.MappedLineReader</code>),
+     * so large programs are read at disk speed without holding the text of the file on the heap. A
+     * <code>sml.jfr.TranslationEvent</code> is recorded for each file translated.
      *
      * @param labels - empty HashMap object to store labels.
      * @param program - empty List to store <code>sml.Instruction</code> objects.
-     * @throws IOException - if input file is not found.
+     * @throws IOException - if input file is not found (<code>NoSuchFileException</code>) or cannot be read.
      */
     public void readAndTranslate(Labels labels, List<Instruction> program) throws IOException {
-        try(var sc = new Scanner(new File(fileName), StandardCharsets.UTF_8)) {
+        TranslationEvent event = new TranslationEvent();
+        event.begin();
+        int lines = 0;
+        try(var reader = new MappedLineReader(Path.of(fileName))) {
             labels.reset();
             program.clear();
 
-            // Each iteration processes line and reads the next input line into "line"
-            while(sc.hasNextLine()) {
-                line = sc.nextLine();
+            // Each iteration reads the next input line into the lexer and processes it
+            CharSequence line;
+            while((line = reader.readLine()) != null) {
+                lines++;
+                lexer.reset(line);
                 String label = getLabel();
 
                 Instruction instruction = getInstruction(label);
@@ -53,6 +94,25 @@ public final class Translator {
                 }
             }
         }
+        link(labels, program);
+        if(event.shouldCommit()) {
+            event.setFile(fileName);
+            event.setLines(lines);
+            event.setInstructions(program.size());
+            event.commit();
+        }
+    }
+
+    /**
+     * Resolves the labels referenced by each instruction (i.e. the target of a 'jnz') to addresses once, after the
+     * whole program has been read. A reference to a label that does not exist fails here, before execution starts.
+     *
+     * @param labels - the labels of the translated program.
+     * @param program - the translated <code>sml.Instruction</code> objects.
+     * @throws NullPointerException - when a referenced label doesn't exist.
+     */
+    private void link(Labels labels, List<Instruction> program) {
+        program.replaceAll(instruction -> instruction.link(labels));
     }
 
     /**
@@ -66,126 +126,92 @@ public final class Translator {
      */
     private Instruction getInstruction(String label) throws IllegalArgumentException {
 
-        if(line.isEmpty())
+        if(lexer.isEmpty())
             return null;
 
-        String instruction = line;
-        String opcode = scan();
-        Properties properties = new Properties();
-
-        // Try with resources to access the key-value pairs (format: opcode-InstructionSubclass.class).
-        try (var input = Translator.class.getResourceAsStream("/SMLinstructions.properties")) {
-            // Load key-value pairs into properties var.
-            properties.load(input);
-            // Get the name of the instruction subclass from the opcode key.
-            String instructionSubclass = properties.getProperty(opcode);
-            // Create new class object.
-            Class<?> classObject = Class.forName(instructionSubclass);
-            // Get the constructor.
-            Constructor<?> constructor = classObject.getDeclaredConstructors()[0];
+        int instructionStart = lexer.position();
+        lexer.next();
+
+        try {
+            // Get the factory of the instruction subclass from the opcode.
+            InstructionRegistry.Factory factory = registry.getFactory(lexer);
+            if (factory == null) {
+                System.out.println("Error: \"" + lexer.word() + "\" is not a recognised opcode.");
+                throw new IllegalArgumentException();
+            }
             // Get constructor arguments.
-            Object[] argsAsObjects = getArguments(label, constructor);
+            Object[] argsAsObjects = getArguments(label, factory);
             // Create an instruction object with the parameters.
-            return (Instruction) constructor.newInstance(argsAsObjects);
-        }
-        catch (IOException | ClassNotFoundException | InstantiationException | IllegalAccessException |
-               InvocationTargetException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+            return factory.create(argsAsObjects);
         }
         catch(IllegalArgumentException e) {
-            System.out.println("Error: \"" + instruction + "\" contains an illegal argument.");
+            System.out.println("Error: \"" + lexer.text(instructionStart) + "\" contains an illegal argument.");
             e.printStackTrace();
             throw e;
         }
     }
 
     /**
-     * Dynamically gets the arguments from a given line in an SML program, given the constructor of the
+     * Dynamically gets the arguments from a given line in an SML program, given the factory of the
      * associated SML instruction.
      *
      * @param label the instruction label.
-     * @param constructor the constructor method for an SML instruction (subclass).
+     * @param factory the factory of an SML instruction (subclass).
      * @return An array of Objects (Object[]) containing the parameters for the related instruction.
      * @throws RuntimeException - when arguments are unable to be gathered. Usually due to an illegally formatted command.
      */
-    private Object[] getArguments(String label, Constructor<?> constructor) {
+    private Object[] getArguments(String label, InstructionRegistry.Factory factory) {
 
-        ArrayList<Object> args = new ArrayList<>();
-        args.add(label);
+        Object[] args = new Object[factory.getParameterCount()];
+        args[0] = label;
 
        try{
            // Loop through the parameters, starting at the second to discard the label.
-           for (int i = 1; i < constructor.getParameterCount(); i++) {
-               // Get the first argument.
-               String arg = scan();
-               // Get the first parameter (that is not the label).
-               Class<?> parameterType = constructor.getParameterTypes()[i];
+           for (int i = 1; i < args.length; i++) {
+               // Move to the next argument.
+               lexer.next();
+               // Get the parameter (that is not the label).
+               Class<?> parameterType = factory.getParameterType(i);
                if (parameterType == RegisterName.class) {
-                   Register register = Register.valueOf(arg);
-                   args.add(register);
+                   args[i] = getRegister();
                } else if (parameterType == Integer.class) {
-                   Integer integer = Integer.valueOf(arg);
-                   args.add(integer);
+                   args[i] = lexer.intValue();
                } else if (parameterType == String.class) {
-                   String string = String.valueOf(arg);
-                   args.add(string);
+                   args[i] = lexer.word();
                }
            }
-           return args.toArray();
+           return args;
        } catch (NumberFormatException e){
-           System.out.println("Error: Unable to gather arguments for command \"" + line + "\".");
+           System.out.println("Error: Unable to gather arguments for command \"" + lexer.text(lexer.position()) + "\".");
            throw e;
        }
     }
 
     /**
-     * Scans through each word in a given line in an SML program and returns a label for each line.
-     * If no label exists <code>null</code> is returned.
+     * Returns the register named by the current word of the line.
+     *
+     * @return the register.
+     * @throws IllegalArgumentException - when the word is not the name of a register.
+     */
+    private Register getRegister() {
+        for (Register register : REGISTERS)
+            if (lexer.matches(register.name()))
+                return register;
+        throw new IllegalArgumentException("No enum constant " + Register.class.getCanonicalName() + "." + lexer.word());
+    }
+
+    /**
+     * Scans the first word of the line and returns a label for the line.
+     * If no label exists <code>null</code> is returned and the word is left to be scanned as the opcode.
      * If a label exists, the <code>String</code> object of the label is returned.
      * @return the optional label of each line.
      */
     private String getLabel() {
-        String word = scan();
-        if(word.endsWith(":"))
-            return word.substring(0, word.length() - 1);
+        lexer.next();
+        if(lexer.endsWith(':'))
+            return lexer.wordWithoutSuffix();
         // undo scanning the word
-        line = word + line;
+        lexer.rewind();
         return null;
     }
-
-    /**
-     * Return the first word of each line and remove it from line.
-     * A check is made to identify if there are more than 4 spaces in an SML instruction, thereby making it
-     * illegally formatted. If this is the case, a <code>RuntimeException()</code> is thrown.
-     * @return the first word of a given line. If there is no word, return "".
-     **/
-    private String scan() throws RuntimeException {
-        line = line.trim();
-        checkWhitespace();
-        for(int i = 0; i < line.length(); i++)
-            if(Character.isWhitespace(line.charAt(i))) {
-                String word = line.substring(0, i);
-                line = line.substring(i);
-                return word;
-            }
-        return line;
-    }
-
-    /**
-     * Check if the instruction line contains more than 3 spaces, which means
-     * the formatting of the instruction is incorrect and should be revised.
-     */
-    private void checkWhitespace() {
-        int whitespaceCounter = 0;
-        for(int i = 0; i < line.length(); i++) {
-            if (Character.isWhitespace(line.charAt(i))) {
-                whitespaceCounter++;
-            }
-        }
-        if(whitespaceCounter > 3) {
-            System.out.println("Error: Detected an incorrectly formatted instruction - \"" + line + "\".");
-            throw new RuntimeException();
-        }
-    }
 }
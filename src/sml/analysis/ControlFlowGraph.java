@@ -0,0 +1,352 @@
+package sml.analysis;
+
+import sml.Instruction;
+import sml.Labels;
+import sml.RegisterName;
+import sml.Registers;
+import sml.instruction.AddInstruction;
+import sml.instruction.AddJumpIfNotZeroInstruction;
+import sml.instruction.DivideInstruction;
+import sml.instruction.JumpIfNotZeroInstruction;
+import sml.instruction.MoveArithmeticInstruction;
+import sml.instruction.MoveInstruction;
+import sml.instruction.MultiplyInstruction;
+import sml.instruction.PrintInstruction;
+import sml.instruction.SubtractInstruction;
+import sml.instruction.SubtractJumpIfNotZeroInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is a <code>final</code> class that models the control-flow graph (CFG) of a translated Small Machine
+ * Language (SML) program, with a node for each instruction (identified by its address) and a node <code>exit</code>
+ * (whose address is the size of the program) for the end of the program.
+ * <p>
+ * The unlabelled instructions are executed in order, so the successor of an unlabelled instruction is the next
+ * unlabelled instruction. A 'jnz' (or a superinstruction that ends with one) also has the instruction of its label as
+ * a successor; that labelled instruction is executed in place, so its successors are the instructions that follow
+ * the jumps that execute it (the jumps "return" there). A labelled instruction reached from several jumps therefore
+ * has the successors of all of them, which over-approximates the paths of the program, as a static analysis must.
+ * <p>
+ * Each node also records the registers its instruction reads (<i>uses</i>) and writes (<i>defines</i>). Every
+ * register is read at <code>exit</code>, since the registers are the result of the program, and a 'div' reads every
+ * register, since it may fail and leave the registers as they are. An instruction that is not part of the language
+ * is assumed to read every register and continue with the next instruction (see <code>isExact()</code>).
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ControlFlowGraph {
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+	static final int ALL_REGISTERS = (1 << REGISTERS.length) - 1;
+
+	private final List<Instruction> program;
+	private final int entry;
+	private final int[][] successors;
+	private final int[][] predecessors;
+	private final int[] targets;
+	private final int[] uses;
+	private final int[] defines;
+	private final BitSet reachable = new BitSet();
+	private final boolean exact;
+
+	private ControlFlowGraph(List<Instruction> program, Labels labels) {
+		int size = program.size();
+		this.program = List.copyOf(program);
+		this.successors = new int[size + 1][];
+		this.predecessors = new int[size + 1][];
+		this.targets = new int[size];
+		this.uses = new int[size + 1];
+		this.defines = new int[size + 1];
+		boolean exact = true;
+
+		// The next unlabelled instruction after each address.
+		int[] next = new int[size + 1];
+		next[size] = size;
+		for (int address = size - 1; address >= 0; address--)
+			next[address] = (address + 1 < size && program.get(address + 1).getLabel() != null)
+					? next[address + 1]
+					: address + 1;
+		this.entry = (size > 0 && program.get(0).getLabel() != null) ? next[0] : 0;
+
+		for (int address = 0; address < size; address++) {
+			Instruction instruction = program.get(address);
+			String label = target(instruction);
+			targets[address] = (label == null) ? -1 : resolve(instruction, label, labels);
+			exact &= isLanguage(instruction);
+			setUsesAndDefines(address, instruction);
+		}
+		uses[size] = ALL_REGISTERS;
+		this.exact = exact;
+
+		// The addresses each labelled instruction returns to, propagated along chains of labelled jumps.
+		BitSet[] returns = new BitSet[size];
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		for (int address = 0; address < size; address++) {
+			if (targets[address] >= 0 && program.get(address).getLabel() == null) {
+				returns(returns, targets[address]).set(next[address]);
+				pending.add(targets[address]);
+			}
+		}
+		while (!pending.isEmpty()) {
+			int address = pending.poll();
+			int target = targets[address];
+			if (target < 0)
+				continue;
+			BitSet own = returns(returns, target);
+			int before = own.cardinality();
+			own.or(returns[address]);
+			if (own.cardinality() != before)
+				pending.add(target);
+		}
+
+		List<List<Integer>> incoming = new ArrayList<>();
+		for (int address = 0; address <= size; address++)
+			incoming.add(new ArrayList<>());
+		for (int address = 0; address < size; address++) {
+			BitSet out = new BitSet();
+			if (program.get(address).getLabel() == null)
+				out.set(next[address]);
+			else if (returns[address] != null)
+				out.or(returns[address]);
+			if (targets[address] >= 0)
+				out.set(targets[address]);
+			successors[address] = out.stream().toArray();
+			for (int successor : successors[address])
+				incoming.get(successor).add(address);
+		}
+		successors[size] = new int[0];
+		for (int address = 0; address <= size; address++)
+			predecessors[address] = incoming.get(address).stream().mapToInt(Integer::intValue).toArray();
+
+		ArrayDeque<Integer> reach = new ArrayDeque<>(List.of(entry));
+		reachable.set(entry);
+		while (!reach.isEmpty()) {
+			for (int successor : successors[reach.poll()]) {
+				if (!reachable.get(successor)) {
+					reachable.set(successor);
+					reach.add(successor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the control-flow graph of a program, e.g. of <code>Machine.getProgram()</code> and
+	 * <code>Machine.getLabels()</code>.
+	 *
+	 * @param program the instructions of the program.
+	 * @param labels the labels of the program, used to resolve the 'jnz' instructions that are not linked.
+	 * @return the control-flow graph.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public static ControlFlowGraph of(List<Instruction> program, Labels labels) {
+		return new ControlFlowGraph(program, labels);
+	}
+
+	private static BitSet returns(BitSet[] returns, int address) {
+		if (returns[address] == null)
+			returns[address] = new BitSet();
+		return returns[address];
+	}
+
+	/**
+	 * @return the label an instruction may execute, or <code>null</code> if it is not a jump.
+	 */
+	private static String target(Instruction instruction) {
+		if (instruction instanceof JumpIfNotZeroInstruction jnz)
+			return jnz.getInstructionLabel();
+		if (instruction instanceof SubtractJumpIfNotZeroInstruction subjnz)
+			return subjnz.getInstructionLabel();
+		if (instruction instanceof AddJumpIfNotZeroInstruction addjnz)
+			return addjnz.getInstructionLabel();
+		return null;
+	}
+
+	private static int resolve(Instruction instruction, String label, Labels labels) {
+		int address = JumpIfNotZeroInstruction.UNRESOLVED_ADDRESS;
+		if (instruction instanceof JumpIfNotZeroInstruction jnz)
+			address = jnz.getTargetAddress();
+		else if (instruction instanceof SubtractJumpIfNotZeroInstruction subjnz)
+			address = subjnz.getTargetAddress();
+		else if (instruction instanceof AddJumpIfNotZeroInstruction addjnz)
+			address = addjnz.getTargetAddress();
+		return (address == JumpIfNotZeroInstruction.UNRESOLVED_ADDRESS) ? labels.getAddress(label) : address;
+	}
+
+	private static boolean isLanguage(Instruction instruction) {
+		return instruction instanceof MoveInstruction || instruction instanceof AddInstruction
+				|| instruction instanceof SubtractInstruction || instruction instanceof MultiplyInstruction
+				|| instruction instanceof DivideInstruction || instruction instanceof PrintInstruction
+				|| instruction instanceof MoveArithmeticInstruction || target(instruction) != null;
+	}
+
+	private void setUsesAndDefines(int address, Instruction instruction) {
+		if (instruction instanceof MoveInstruction mov) {
+			defines[address] = bit(mov.getResult());
+		} else if (instruction instanceof AddInstruction add) {
+			uses[address] = bit(add.getResult()) | bit(add.getSource());
+			defines[address] = bit(add.getResult());
+		} else if (instruction instanceof SubtractInstruction sub) {
+			uses[address] = bit(sub.getResult()) | bit(sub.getSource());
+			defines[address] = bit(sub.getResult());
+		} else if (instruction instanceof MultiplyInstruction mul) {
+			uses[address] = bit(mul.getResult()) | bit(mul.getSource());
+			defines[address] = bit(mul.getResult());
+		} else if (instruction instanceof DivideInstruction div) {
+			uses[address] = ALL_REGISTERS;
+			defines[address] = bit(div.getResult());
+		} else if (instruction instanceof PrintInstruction out) {
+			uses[address] = bit(out.getSource());
+		} else if (instruction instanceof JumpIfNotZeroInstruction jnz) {
+			uses[address] = bit(jnz.getSource());
+		} else if (instruction instanceof SubtractJumpIfNotZeroInstruction subjnz) {
+			uses[address] = bit(subjnz.getResult()) | bit(subjnz.getSource());
+			defines[address] = bit(subjnz.getResult());
+		} else if (instruction instanceof AddJumpIfNotZeroInstruction addjnz) {
+			uses[address] = bit(addjnz.getResult()) | bit(addjnz.getSource());
+			defines[address] = bit(addjnz.getResult());
+		} else if (instruction instanceof MoveArithmeticInstruction movop) {
+			// The 'mov' sets the source before the arithmetic reads it, so only the result is read (unless it is the
+			// source).
+			uses[address] = bit(movop.getResult()) & ~bit(movop.getSource());
+			defines[address] = bit(movop.getResult()) | bit(movop.getSource());
+		} else {
+			uses[address] = ALL_REGISTERS;
+		}
+	}
+
+	private static int bit(RegisterName register) {
+		return 1 << ((Registers.Register) register).ordinal();
+	}
+
+	static Set<Registers.Register> registers(int mask) {
+		Set<Registers.Register> registers = EnumSet.noneOf(Registers.Register.class);
+		for (Registers.Register register : REGISTERS)
+			if ((mask & (1 << register.ordinal())) != 0)
+				registers.add(register);
+		return Collections.unmodifiableSet(registers);
+	}
+
+	/**
+	 * @return the number of instructions in the program; also the address of the <code>exit</code> node.
+	 */
+	public int size() {
+		return program.size();
+	}
+
+	/**
+	 * @return the address of the exit node.
+	 */
+	public int getExit() {
+		return program.size();
+	}
+
+	/**
+	 * @return the address of the first instruction executed (the first unlabelled instruction), or of the
+	 * <code>exit</code> node if there is none.
+	 */
+	public int getEntry() {
+		return entry;
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the instruction.
+	 */
+	public Instruction getInstruction(int address) {
+		return program.get(address);
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the addresses of the nodes that can be executed after it, in ascending order.
+	 */
+	public int[] getSuccessors(int address) {
+		return successors[address].clone();
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the addresses of the nodes that can be executed before it, in ascending order.
+	 */
+	public int[] getPredecessors(int address) {
+		return predecessors[address].clone();
+	}
+
+	/**
+	 * @param address the address of an instruction.
+	 * @return the address of the labelled instruction the instruction may execute, or -1 if it is not a jump.
+	 */
+	public int getTarget(int address) {
+		return targets[address];
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return whether the node can be reached from the entry of the program.
+	 */
+	public boolean isReachable(int address) {
+		return reachable.get(address);
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the registers the node reads.
+	 */
+	public Set<Registers.Register> getUses(int address) {
+		return registers(uses[address]);
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the registers the node writes.
+	 */
+	public Set<Registers.Register> getDefines(int address) {
+		return registers(defines[address]);
+	}
+
+	/**
+	 * @return whether every instruction of the program is an instruction of the language (or a superinstruction),
+	 * so that the graph is exactly the control flow of the program.
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	int[] successors(int address) {
+		return successors[address];
+	}
+
+	int[] predecessors(int address) {
+		return predecessors[address];
+	}
+
+	int uses(int address) {
+		return uses[address];
+	}
+
+	int defines(int address) {
+		return defines[address];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder graph = new StringBuilder();
+		for (int address = 0; address <= size(); address++) {
+			graph.append(address).append(": ")
+					.append((address == size()) ? "exit" : program.get(address).toString())
+					.append(" -> ").append(Arrays.toString(successors[address]))
+					.append('\n');
+		}
+		return graph.toString();
+	}
+}
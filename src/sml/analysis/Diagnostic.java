@@ -0,0 +1,170 @@
+package sml.analysis;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instruction.AddJumpIfNotZeroInstruction;
+import sml.instruction.JumpIfNotZeroInstruction;
+import sml.instruction.SubtractJumpIfNotZeroInstruction;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class is a <code>final</code> class that models a problem found in a Small Machine Language (SML) program by
+ * the analysis of its <code>sml.analysis.ControlFlowGraph</code> (see <code>find</code>): an instruction that is never
+ * executed, or a cycle of 'jnz' instructions that never ends.
+ * <p>
+ * A 'jnz' does not change any register, so a cycle of 'jnz' instructions that is entered never ends unless one of
+ * the registers it tests is 0. When every 'jnz' on the way round tests the register of the jump that entered the
+ * cycle (which is not 0, or the cycle would not have been entered), the cycle is <i>provably</i> infinite.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Diagnostic {
+
+	/**
+	 * The kinds of problem.
+	 */
+	public enum Kind {
+		/**
+		 * An instruction that can never be executed: a labelled instruction that no reachable jump refers to.
+		 */
+		UNREACHABLE,
+		/**
+		 * A cycle of 'jnz' instructions that never ends once it is entered.
+		 */
+		INFINITE_LOOP,
+		/**
+		 * A cycle of 'jnz' instructions that never ends if the registers it tests are not 0 when it is entered.
+		 */
+		POSSIBLE_INFINITE_LOOP
+	}
+
+	private final Kind kind;
+	private final int address;
+	private final String message;
+
+	private Diagnostic(Kind kind, int address, String message) {
+		this.kind = kind;
+		this.address = address;
+		this.message = message;
+	}
+
+	/**
+	 * @return the kind of problem.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the address of the instruction the problem is found at.
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return a description of the problem.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Finds the problems of a program: its unreachable instructions, in order of address, followed by its cycles of
+	 * 'jnz' instructions, each reported once at the first jump that enters it.
+	 *
+	 * @param graph the control-flow graph of the program.
+	 * @return the problems found.
+	 */
+	public static List<Diagnostic> find(ControlFlowGraph graph) {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		for (int address = 0; address < graph.size(); address++) {
+			if (!graph.isReachable(address))
+				diagnostics.add(new Diagnostic(Kind.UNREACHABLE, address, "Instruction \"" +
+						graph.getInstruction(address) + "\" is never executed."));
+		}
+		BitSet reported = new BitSet();
+		for (int address = 0; address < graph.size(); address++) {
+			if (graph.isReachable(address) && graph.getInstruction(address).getLabel() == null
+					&& graph.getTarget(address) >= 0)
+				cycle(graph, address, reported, diagnostics);
+		}
+		return diagnostics;
+	}
+
+	/**
+	 * Follows the chain of labelled 'jnz' instructions executed by the jump at the given address, and reports the
+	 * cycle it ends in, if any.
+	 */
+	private static void cycle(ControlFlowGraph graph, int jump, BitSet reported, List<Diagnostic> diagnostics) {
+		Set<Integer> chain = new LinkedHashSet<>();
+		Set<Registers.Register> tested = new LinkedHashSet<>();
+		int address = graph.getTarget(jump);
+		while (graph.getInstruction(address) instanceof JumpIfNotZeroInstruction jnz && chain.add(address)) {
+			tested.add((Registers.Register) jnz.getSource());
+			address = graph.getTarget(address);
+		}
+		if (!chain.contains(address) || reported.get(address))
+			return;
+		// The instructions from address onwards form the cycle.
+		List<Integer> cycle = new ArrayList<>();
+		boolean inCycle = false;
+		for (int member : chain) {
+			inCycle |= member == address;
+			if (inCycle)
+				cycle.add(member);
+		}
+		cycle.forEach(reported::set);
+		String addresses = cycle.stream().map(String::valueOf).collect(Collectors.joining(", "));
+		if (tested.equals(Set.of(condition(graph.getInstruction(jump)))))
+			diagnostics.add(new Diagnostic(Kind.INFINITE_LOOP, jump, "The 'jnz' instructions at " + addresses +
+					" form a cycle that never ends once \"" + graph.getInstruction(jump) + "\" enters it."));
+		else
+			diagnostics.add(new Diagnostic(Kind.POSSIBLE_INFINITE_LOOP, jump, "The 'jnz' instructions at " +
+					addresses + " form a cycle that never ends if " +
+					tested.stream().map(Enum::name).collect(Collectors.joining(" and ")) + " are not 0 when \"" +
+					graph.getInstruction(jump) + "\" enters it."));
+	}
+
+	/**
+	 * @return the register that is not 0 when a jump executes its labelled instruction.
+	 */
+	private static Registers.Register condition(Instruction jump) {
+		if (jump instanceof SubtractJumpIfNotZeroInstruction subjnz)
+			return (Registers.Register) subjnz.getResult();
+		if (jump instanceof AddJumpIfNotZeroInstruction addjnz)
+			return (Registers.Register) addjnz.getResult();
+		return (Registers.Register) ((JumpIfNotZeroInstruction) jump).getSource();
+	}
+
+	/**
+	 * String representation of the problem.
+	 *
+	 * @return the kind, address and description of the problem.
+	 */
+	@Override
+	public String toString() {
+		return kind + " at " + address + ": " + message;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		Diagnostic that = (Diagnostic) o;
+		return address == that.address && kind == that.kind && message.equals(that.message);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(kind, address, message);
+	}
+}
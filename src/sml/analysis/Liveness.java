@@ -0,0 +1,100 @@
+package sml.analysis;
+
+import sml.Registers;
+import sml.instruction.AddInstruction;
+import sml.instruction.MoveArithmeticInstruction;
+import sml.instruction.MoveInstruction;
+import sml.instruction.MultiplyInstruction;
+import sml.instruction.SubtractInstruction;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+
+/**
+ * This class is a <code>final</code> class that computes which registers are <i>live</i> before and after each
+ * instruction of a program - those whose value may be read later, before it is overwritten - by a backward dataflow
+ * analysis over its <code>sml.analysis.ControlFlowGraph</code>. Every register is live at the end of the program.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Liveness {
+
+	private final ControlFlowGraph graph;
+	private final int[] liveIn;
+	private final int[] liveOut;
+
+	private Liveness(ControlFlowGraph graph) {
+		this.graph = graph;
+		int nodes = graph.size() + 1;
+		this.liveIn = new int[nodes];
+		this.liveOut = new int[nodes];
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		boolean[] queued = new boolean[nodes];
+		for (int address = nodes - 1; address >= 0; address--) {
+			pending.add(address);
+			queued[address] = true;
+		}
+		while (!pending.isEmpty()) {
+			int address = pending.poll();
+			queued[address] = false;
+			int out = 0;
+			for (int successor : graph.successors(address))
+				out |= liveIn[successor];
+			int in = graph.uses(address) | (out & ~graph.defines(address));
+			liveOut[address] = out;
+			if (in != liveIn[address]) {
+				liveIn[address] = in;
+				for (int predecessor : graph.predecessors(address)) {
+					if (!queued[predecessor]) {
+						queued[predecessor] = true;
+						pending.add(predecessor);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the live registers of a program.
+	 *
+	 * @param graph the control-flow graph of the program.
+	 * @return the live registers.
+	 */
+	public static Liveness of(ControlFlowGraph graph) {
+		return new Liveness(graph);
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the registers that are live before the node is executed.
+	 */
+	public Set<Registers.Register> getLiveIn(int address) {
+		return ControlFlowGraph.registers(liveIn[address]);
+	}
+
+	/**
+	 * @param address the address of a node.
+	 * @return the registers that are live after the node is executed.
+	 */
+	public Set<Registers.Register> getLiveOut(int address) {
+		return ControlFlowGraph.registers(liveOut[address]);
+	}
+
+	/**
+	 * Returns whether the instruction at the given address is a <i>dead store</i>: a 'mov', 'add', 'sub' or 'mul', or
+	 * a fused 'mov' and arithmetic (which do nothing but write their registers), whose results are never read.
+	 *
+	 * @param address the address of an instruction.
+	 * @return whether the instruction can be removed without changing the program.
+	 */
+	public boolean isDeadStore(int address) {
+		if (address == graph.size())
+			return false;
+		var instruction = graph.getInstruction(address);
+		boolean store = instruction instanceof MoveInstruction || instruction instanceof AddInstruction
+				|| instruction instanceof SubtractInstruction || instruction instanceof MultiplyInstruction
+				|| instruction instanceof MoveArithmeticInstruction;
+		return store && (graph.defines(address) & liveOut[address]) == 0;
+	}
+}
@@ -0,0 +1,124 @@
+package sml.analysis;
+
+import sml.RegisterName;
+import sml.Registers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class is a <code>final</code> class that computes which definitions of each register (the instructions that
+ * write it) may <i>reach</i> each instruction of a program without being overwritten, by a forward dataflow analysis
+ * over its <code>sml.analysis.ControlFlowGraph</code>. The value a register holds when the program starts is the
+ * definition <code>ENTRY</code>.
+ * <p>
+ * The sets of definitions are held as bit sets of the addresses, so the analysis needs memory in proportion to the
+ * square of the size of the program (in bits).
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ReachingDefinitions {
+
+	/**
+	 * The definition of a register by the start of the program.
+	 */
+	public static final int ENTRY = -1;
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	private final ControlFlowGraph graph;
+	private final BitSet[] reachIn;
+
+	private ReachingDefinitions(ControlFlowGraph graph) {
+		this.graph = graph;
+		int size = graph.size();
+		int nodes = size + 1;
+		// Bits 0 to size - 1 are the definitions at each address; bit size + r is the entry definition of register r.
+		BitSet[] kill = new BitSet[REGISTERS.length];
+		for (int register = 0; register < REGISTERS.length; register++) {
+			kill[register] = new BitSet();
+			kill[register].set(size + register);
+		}
+		for (int address = 0; address < size; address++) {
+			int register = register(graph.defines(address));
+			if (register >= 0)
+				kill[register].set(address);
+		}
+
+		this.reachIn = new BitSet[nodes];
+		BitSet[] reachOut = new BitSet[nodes];
+		for (int address = 0; address < nodes; address++) {
+			reachIn[address] = new BitSet();
+			reachOut[address] = new BitSet();
+		}
+		reachIn[graph.getEntry()].set(size, size + REGISTERS.length);
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		boolean[] queued = new boolean[nodes];
+		for (int address = 0; address < nodes; address++) {
+			pending.add(address);
+			queued[address] = true;
+		}
+		while (!pending.isEmpty()) {
+			int address = pending.poll();
+			queued[address] = false;
+			BitSet in = reachIn[address];
+			for (int predecessor : graph.predecessors(address))
+				in.or(reachOut[predecessor]);
+			BitSet out = (BitSet) in.clone();
+			int register = register(graph.defines(address));
+			if (register >= 0) {
+				out.andNot(kill[register]);
+				out.set(address);
+			}
+			if (!out.equals(reachOut[address])) {
+				reachOut[address] = out;
+				for (int successor : graph.successors(address)) {
+					if (!queued[successor]) {
+						queued[successor] = true;
+						pending.add(successor);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the reaching definitions of a program.
+	 *
+	 * @param graph the control-flow graph of the program.
+	 * @return the reaching definitions.
+	 */
+	public static ReachingDefinitions of(ControlFlowGraph graph) {
+		return new ReachingDefinitions(graph);
+	}
+
+	private static int register(int mask) {
+		return (mask == 0) ? -1 : Integer.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * Returns the definitions of a register that may reach a node, i.e. the instructions whose value of the register
+	 * may be read by the node.
+	 *
+	 * @param address the address of a node.
+	 * @param register the register.
+	 * @return the addresses of the definitions in ascending order, preceded by <code>ENTRY</code> if the value the
+	 * register held at the start of the program may reach the node.
+	 */
+	public List<Integer> getDefinitions(int address, RegisterName register) {
+		int ordinal = ((Registers.Register) register).ordinal();
+		BitSet in = reachIn[address];
+		List<Integer> definitions = new ArrayList<>();
+		if (in.get(graph.size() + ordinal))
+			definitions.add(ENTRY);
+		for (int definition = in.nextSetBit(0); definition >= 0 && definition < graph.size();
+				definition = in.nextSetBit(definition + 1)) {
+			if (register(graph.defines(definition)) == ordinal)
+				definitions.add(definition);
+		}
+		return definitions;
+	}
+}
@@ -0,0 +1,299 @@
+package sml.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a <code>final</code> class that writes a minimal JVM class file: a class with no fields and only
+ * <code>static</code> methods. Only the parts of the class file format that <code>sml.compiler.ProgramCompiler</code>
+ * needs are supported.
+ * <p>
+ * The class file version is 49 (Java 5), the last version that does not require a <code>StackMapTable</code>, so
+ * that branches can be emitted without computing stack map frames.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class ClassWriter {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * The maximum number of entries (and the maximum method size, in bytes) allowed by the class file format.
+	 */
+	static final int MAX_CONSTANTS = 65535;
+	static final int MAX_CODE_LENGTH = 65535;
+
+	private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(constants);
+	private final Map<String, Integer> indices = new HashMap<>();
+	private int constantCount = 1;
+
+	private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+	private final DataOutputStream methods = new DataOutputStream(methodBytes);
+	private int methodCount;
+
+	private final String className;
+
+	/**
+	 * Constructor: a writer of a class with the given (internal) name, e.g. "sml/compiler/Program".
+	 *
+	 * @param className the internal name of the class.
+	 */
+	ClassWriter(String className) {
+		this.className = className;
+	}
+
+	private int constant(String key, int tag, Writer writer) {
+		Integer index = indices.get(key);
+		if (index != null)
+			return index;
+		if (constantCount >= MAX_CONSTANTS)
+			throw new UnsupportedOperationException("Too many constants for a single class file.");
+		try {
+			pool.writeByte(tag);
+			writer.write(pool);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		indices.put(key, constantCount);
+		return constantCount++;
+	}
+
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	int utf8(String value) {
+		return constant("U" + value, CONSTANT_UTF8, out -> out.writeUTF(value));
+	}
+
+	int integer(int value) {
+		return constant("I" + value, CONSTANT_INTEGER, out -> out.writeInt(value));
+	}
+
+	int classRef(String internalName) {
+		int name = utf8(internalName);
+		return constant("C" + internalName, CONSTANT_CLASS, out -> out.writeShort(name));
+	}
+
+	int string(String value) {
+		int utf8 = utf8(value);
+		return constant("S" + value, CONSTANT_STRING, out -> out.writeShort(utf8));
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		int classIndex = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int nameAndType = constant("N" + name + descriptor, CONSTANT_NAME_AND_TYPE, out -> {
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+		return constant("M" + owner + "." + name + descriptor, CONSTANT_METHODREF, out -> {
+			out.writeShort(classIndex);
+			out.writeShort(nameAndType);
+		});
+	}
+
+	/**
+	 * Adds a <code>public static</code> method to the class.
+	 *
+	 * @param methodName the name of the method.
+	 * @param descriptor the descriptor of the method, e.g. "([I[I)V".
+	 * @param code the body of the method.
+	 */
+	void addMethod(String methodName, String descriptor, Code code) {
+		int name = utf8(methodName);
+		int type = utf8(descriptor);
+		int codeAttribute = utf8("Code");
+		byte[] body = code.toByteArray();
+		if (body.length > MAX_CODE_LENGTH)
+			throw new UnsupportedOperationException("The method is too large for a single class file.");
+
+		try {
+			methods.writeShort(ACC_PUBLIC | ACC_STATIC);
+			methods.writeShort(name);
+			methods.writeShort(type);
+			methods.writeShort(1); // attributes
+			methods.writeShort(codeAttribute);
+			List<int[]> handlers = code.handlers;
+			methods.writeInt(12 + body.length + handlers.size() * 8);
+			methods.writeShort(code.maxStack);
+			methods.writeShort(code.maxLocals);
+			methods.writeInt(body.length);
+			methods.write(body);
+			methods.writeShort(handlers.size());
+			for (int[] handler : handlers)
+				for (int value : handler)
+					methods.writeShort(value);
+			methods.writeShort(0); // code attributes
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		methodCount++;
+	}
+
+	/**
+	 * Returns the bytes of the class file.
+	 *
+	 * @return the class file.
+	 */
+	byte[] toByteArray() {
+		int thisClass = classRef(className);
+		int superClass = classRef("java/lang/Object");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(constantCount);
+			out.write(constants.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(methodCount);
+			out.write(methodBytes.toByteArray());
+			out.writeShort(0); // class attributes
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * This class is a <code>final</code> class that assembles the body of a method, patching branch offsets once
+	 * their targets are known.
+	 */
+	static final class Code {
+		static final int ICONST_0 = 0x03;
+		static final int BIPUSH = 0x10;
+		static final int SIPUSH = 0x11;
+		static final int LDC_W = 0x13;
+		static final int ILOAD = 0x15;
+		static final int ALOAD = 0x19;
+		static final int IALOAD = 0x2E;
+		static final int ISTORE = 0x36;
+		static final int ASTORE = 0x3A;
+		static final int IASTORE = 0x4F;
+		static final int IADD = 0x60;
+		static final int ISUB = 0x64;
+		static final int IMUL = 0x68;
+		static final int IFEQ = 0x99;
+		static final int GOTO = 0xA7;
+		static final int RETURN = 0xB1;
+		static final int INVOKESTATIC = 0xB8;
+		static final int ATHROW = 0xBF;
+
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		private final List<int[]> handlers = new ArrayList<>();
+		private final List<int[]> branches = new ArrayList<>();
+		private final List<Integer> labels = new ArrayList<>();
+		private final int maxStack;
+		private final int maxLocals;
+
+		Code(int maxStack, int maxLocals) {
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		int position() {
+			return code.size();
+		}
+
+		void op(int opcode) {
+			code.write(opcode);
+		}
+
+		void op(int opcode, int operand) {
+			code.write(opcode);
+			code.write(operand);
+		}
+
+		void op2(int opcode, int operand) {
+			code.write(opcode);
+			code.write(operand >> 8);
+			code.write(operand);
+		}
+
+		/**
+		 * Pushes an <code>int</code> constant, using the shortest instruction.
+		 */
+		void push(int value, ClassWriter writer) {
+			if (value >= -1 && value <= 5)
+				op(ICONST_0 + value);
+			else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+				op(BIPUSH, value);
+			else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+				op2(SIPUSH, value);
+			else
+				op2(LDC_W, writer.integer(value));
+		}
+
+		/**
+		 * @return a new label, which must be bound with <code>bind</code> before the code is complete.
+		 */
+		int newLabel() {
+			labels.add(-1);
+			return labels.size() - 1;
+		}
+
+		void bind(int label) {
+			labels.set(label, position());
+		}
+
+		/**
+		 * Emits a branch instruction (e.g. <code>GOTO</code>) to the given label.
+		 */
+		void branch(int opcode, int label) {
+			branches.add(new int[] {position(), label});
+			op2(opcode, 0);
+		}
+
+		/**
+		 * Adds an exception handler for the code between the given positions.
+		 */
+		void handler(int start, int end, int handlerLabel) {
+			if (end > start)
+				handlers.add(new int[] {start, end, handlerLabel, 0});
+		}
+
+		byte[] toByteArray() {
+			byte[] bytes = code.toByteArray();
+			for (int[] branch : branches) {
+				int offset = labels.get(branch[1]) - branch[0];
+				if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+					throw new UnsupportedOperationException("Branch offset out of range.");
+				bytes[branch[0] + 1] = (byte) (offset >> 8);
+				bytes[branch[0] + 2] = (byte) offset;
+			}
+			for (int[] handler : handlers)
+				handler[2] = labels.get(handler[2]);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package sml.compiler;
+
+import sml.OutputSink;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * This class is a <code>final</code> class that wraps the method of a hidden class generated by
+ * <code>sml.compiler.ProgramCompiler</code>, which runs a whole Small Machine Language (SML) program.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class CompiledProgram {
+
+	private final MethodHandle method;
+	private final int size;
+
+	CompiledProgram(MethodHandle method, int size) {
+		this.method = method;
+		this.size = size;
+	}
+
+	/**
+	 * Runs the program, beginning at instruction 0. The registers are read into local variables at the start, and
+	 * written back when the program finishes or fails.
+	 *
+	 * @param registers the contents of the registers, indexed by <code>Register.ordinal()</code>.
+	 * @param programCounter an array whose first element receives the program counter at the point the program
+	 *                       finished (the number of instructions) or failed (the instruction after the failure).
+	 * @param output the sink that 'out' writes to.
+	 * @throws ArithmeticException - when a 'div' has an operand of 0.
+	 */
+	public void run(int[] registers, int[] programCounter, OutputSink output) {
+		try {
+			method.invokeExact(registers, programCounter, output);
+		}
+		catch (RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the number of instructions in the program.
+	 */
+	public int size() {
+		return size;
+	}
+}
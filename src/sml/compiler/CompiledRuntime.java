@@ -0,0 +1,50 @@
+package sml.compiler;
+
+import sml.OutputSink;
+import sml.Registers;
+import sml.jfr.DivisionByZeroEvent;
+
+/**
+ * This class is a <code>final</code> class containing the operations that code generated by
+ * <code>sml.compiler.ProgramCompiler</code> calls, for the parts of an SML instruction that are not plain
+ * arithmetic on the registers.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+final class CompiledRuntime {
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	private CompiledRuntime() {
+	}
+
+	/**
+	 * Divides the contents of two registers, as a 'div' does.
+	 *
+	 * @param value1 the contents of the first register.
+	 * @param value2 the contents of the second register.
+	 * @param instruction the source text of the 'div', for the error message.
+	 * @return the quotient.
+	 * @throws ArithmeticException - when either value is 0.
+	 */
+	static int divide(int value1, int value2, String instruction) {
+		if (value1 == 0 || value2 == 0) {
+			System.out.println("Error: Unable to execute command \"" + instruction + "\" - / by zero. ");
+			DivisionByZeroEvent.record(instruction);
+			throw new ArithmeticException();
+		}
+		return value1 / value2;
+	}
+
+	/**
+	 * Prints the contents of a register, as an 'out' does.
+	 *
+	 * @param output the sink the contents are written to.
+	 * @param register the ordinal of the register.
+	 * @param value the contents of the register.
+	 */
+	static void print(OutputSink output, int register, int value) {
+		output.print(REGISTERS[register], value);
+	}
+}
@@ -0,0 +1,260 @@
+package sml.compiler;
+
+import sml.Bytecode;
+import sml.OutputSink;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static sml.compiler.ClassWriter.Code.*;
+
+/**
+ * This class is a <code>final</code> class that compiles an encoded Small Machine Language (SML) program (see
+ * <code>sml.Bytecode</code>) into JVM bytecode. The program becomes the <code>static</code> methods of a hidden class
+ * (see <code>MethodHandles.Lookup.defineHiddenClass</code>) that hold the 8 registers in local <code>int</code>
+ * variables. The program is split into consecutive segments, one method each, that are small enough for the JIT
+ * compiler to compile (HotSpot does not compile methods of more than 8000 bytes); the registers are read from and
+ * written back to the array that backs them at the start and end of each segment.
+ * <p>
+ * The generated code follows the same rules as the instructions themselves: a labelled instruction is only executed
+ * by a 'jnz', which executes it in place (the labelled instruction is inlined into the 'jnz'). A program whose
+ * 'jnz' instructions refer to each other in a cycle, or that is too large for a single method, cannot be compiled.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class ProgramCompiler {
+
+	private static final String RUNTIME = "sml/compiler/CompiledRuntime";
+	private static final String CLASS_NAME = "sml/compiler/CompiledProgram$Code";
+	private static final String METHOD_NAME = "run";
+	private static final String SEGMENT_NAME = "segment";
+	private static final String METHOD_DESCRIPTOR = "([I[ILsml/OutputSink;)V";
+	private static final int SEGMENT_SIZE = 7000;
+	private static final int REGISTER_COUNT = 8;
+
+	// Local variables of the generated method.
+	private static final int REGISTERS_ARGUMENT = 0;
+	private static final int PROGRAM_COUNTER_ARGUMENT = 1;
+	private static final int OUTPUT_ARGUMENT = 2;
+	private static final int FIRST_REGISTER = 3;
+	private static final int FAILED_PROGRAM_COUNTER = FIRST_REGISTER + REGISTER_COUNT;
+	private static final int EXCEPTION = FAILED_PROGRAM_COUNTER + 1;
+	private static final int MAX_STACK = 4;
+
+	private final Bytecode bytecode;
+	private final ClassWriter writer = new ClassWriter(CLASS_NAME);
+	private final BitSet inlining = new BitSet();
+	// The method being generated, and the label of the failure handler of each program counter in it.
+	private ClassWriter.Code code;
+	private Map<Integer, Integer> failureHandlers;
+
+	private ProgramCompiler(Bytecode bytecode) {
+		this.bytecode = bytecode;
+	}
+
+	/**
+	 * Compiles the given program.
+	 *
+	 * @param bytecode the encoded program.
+	 * @return the compiled program.
+	 * @throws UnsupportedOperationException - when the program cannot be compiled.
+	 */
+	public static CompiledProgram compile(Bytecode bytecode) {
+		byte[] classFile = new ProgramCompiler(bytecode).generate();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			MethodHandle method = lookup.findStatic(lookup.lookupClass(), METHOD_NAME,
+					MethodType.methodType(void.class, int[].class, int[].class, OutputSink.class));
+			return new CompiledProgram(method, bytecode.size());
+		}
+		catch (IllegalAccessException | NoSuchMethodException | LinkageError e) {
+			throw new UnsupportedOperationException("Unable to define the compiled program.", e);
+		}
+	}
+
+	private byte[] generate() {
+		ClassWriter.Code run = new ClassWriter.Code(MAX_STACK, EXCEPTION + 1);
+		int segment = 0;
+		int address = 0;
+		while (address < bytecode.size()) {
+			address = segment(segment, address);
+			run.op(ALOAD, REGISTERS_ARGUMENT);
+			run.op(ALOAD, PROGRAM_COUNTER_ARGUMENT);
+			run.op(ALOAD, OUTPUT_ARGUMENT);
+			run.op2(INVOKESTATIC, writer.methodRef(CLASS_NAME, SEGMENT_NAME + segment, METHOD_DESCRIPTOR));
+			segment++;
+		}
+		code = run;
+		storeProgramCounter(() -> code.push(bytecode.size(), writer));
+		code.op(RETURN);
+		writer.addMethod(METHOD_NAME, METHOD_DESCRIPTOR, code);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Generates the method of a segment of the program.
+	 *
+	 * @param segment the index of the segment.
+	 * @param start the address of the first instruction of the segment.
+	 * @return the address after the last instruction of the segment.
+	 */
+	private int segment(int segment, int start) {
+		code = new ClassWriter.Code(MAX_STACK, EXCEPTION + 1);
+		failureHandlers = new HashMap<>();
+
+		// Read the registers into local variables.
+		for (int register = 0; register < REGISTER_COUNT; register++) {
+			code.op(ALOAD, REGISTERS_ARGUMENT);
+			code.push(register, writer);
+			code.op(IALOAD);
+			code.op(ISTORE, FIRST_REGISTER + register);
+		}
+
+		int address = start;
+		while (address < bytecode.size() && code.position() < SEGMENT_SIZE) {
+			if (bytecode.getLabel(address) == null)
+				instruction(address, address + 1);
+			address++;
+		}
+
+		// Write the registers back, and return.
+		writeBack();
+		code.op(RETURN);
+
+		// Each failure handler records the program counter at the failure, then joins the common handler, which
+		// writes the registers (and the program counter) back and rethrows the exception.
+		if (!failureHandlers.isEmpty()) {
+			int rethrow = code.newLabel();
+			for (Map.Entry<Integer, Integer> handler : failureHandlers.entrySet()) {
+				code.bind(handler.getValue());
+				code.op(ASTORE, EXCEPTION);
+				code.push(handler.getKey(), writer);
+				code.op(ISTORE, FAILED_PROGRAM_COUNTER);
+				code.branch(GOTO, rethrow);
+			}
+			code.bind(rethrow);
+			writeBack();
+			storeProgramCounter(() -> code.op(ILOAD, FAILED_PROGRAM_COUNTER));
+			code.op(ALOAD, EXCEPTION);
+			code.op(ATHROW);
+		}
+
+		writer.addMethod(SEGMENT_NAME + segment, METHOD_DESCRIPTOR, code);
+		return address;
+	}
+
+	/**
+	 * Emits the code of the instruction at the given address.
+	 *
+	 * @param address the address of the instruction.
+	 * @param programCounter the program counter while the instruction executes (the address after the top-level
+	 *                       instruction being executed), recorded if the instruction fails.
+	 */
+	private void instruction(int address, int programCounter) {
+		int a = FIRST_REGISTER + bytecode.getRegister(address);
+		int b = FIRST_REGISTER + bytecode.getOperand(address);
+		switch (bytecode.getOpcodeId(address)) {
+			case Bytecode.ADD -> arithmetic(a, b, IADD);
+			case Bytecode.SUB -> arithmetic(a, b, ISUB);
+			case Bytecode.MUL -> arithmetic(a, b, IMUL);
+			case Bytecode.DIV -> {
+				code.op(ILOAD, a);
+				code.op(ILOAD, b);
+				code.op2(LDC_W, writer.string(bytecode.toString(address)));
+				call(programCounter, "divide", "(IILjava/lang/String;)I");
+				code.op(ISTORE, a);
+			}
+			case Bytecode.OUT -> {
+				code.op(ALOAD, OUTPUT_ARGUMENT);
+				code.push(bytecode.getRegister(address), writer);
+				code.op(ILOAD, a);
+				call(programCounter, "print", "(Lsml/OutputSink;II)V");
+			}
+			case Bytecode.MOV -> move(a, bytecode.getOperand(address));
+			case Bytecode.JNZ -> jump(address, a, programCounter);
+			case Bytecode.SUBJNZ -> {
+				arithmetic(a, b, ISUB);
+				jump(address, a, programCounter);
+			}
+			case Bytecode.ADDJNZ -> {
+				arithmetic(a, b, IADD);
+				jump(address, a, programCounter);
+			}
+			case Bytecode.MOVADD -> {
+				move(b, bytecode.getValue(address));
+				arithmetic(a, b, IADD);
+			}
+			case Bytecode.MOVSUB -> {
+				move(b, bytecode.getValue(address));
+				arithmetic(a, b, ISUB);
+			}
+			case Bytecode.MOVMUL -> {
+				move(b, bytecode.getValue(address));
+				arithmetic(a, b, IMUL);
+			}
+			default -> throw new UnsupportedOperationException("Unknown opcode id " + bytecode.getOpcodeId(address));
+		}
+	}
+
+	/**
+	 * Emits the code that executes the labelled instruction of the 'jnz' at the given address in place, if the
+	 * register is not 0.
+	 */
+	private void jump(int address, int a, int programCounter) {
+		int target = bytecode.getTarget(address);
+		if (inlining.get(target))
+			throw new UnsupportedOperationException("The 'jnz' instructions at " + address + " form a cycle.");
+		int end = code.newLabel();
+		code.op(ILOAD, a);
+		code.branch(IFEQ, end);
+		// Execute the labelled instruction in place.
+		inlining.set(address);
+		instruction(target, programCounter);
+		inlining.clear(address);
+		code.bind(end);
+	}
+
+	private void move(int a, int value) {
+		code.push(value, writer);
+		code.op(ISTORE, a);
+	}
+
+	private void arithmetic(int a, int b, int opcode) {
+		code.op(ILOAD, a);
+		code.op(ILOAD, b);
+		code.op(opcode);
+		code.op(ISTORE, a);
+	}
+
+	/**
+	 * Emits a call to <code>sml.compiler.CompiledRuntime</code>, covered by the failure handler of the program
+	 * counter.
+	 */
+	private void call(int programCounter, String name, String descriptor) {
+		int start = code.position();
+		code.op2(INVOKESTATIC, writer.methodRef(RUNTIME, name, descriptor));
+		int handler = failureHandlers.computeIfAbsent(programCounter, pc -> code.newLabel());
+		code.handler(start, code.position(), handler);
+	}
+
+	private void writeBack() {
+		for (int register = 0; register < REGISTER_COUNT; register++) {
+			code.op(ALOAD, REGISTERS_ARGUMENT);
+			code.push(register, writer);
+			code.op(ILOAD, FIRST_REGISTER + register);
+			code.op(IASTORE);
+		}
+	}
+
+	private void storeProgramCounter(Runnable value) {
+		code.op(ALOAD, PROGRAM_COUNTER_ARGUMENT);
+		code.op(ICONST_0);
+		value.run();
+		code.op(IASTORE);
+	}
+}
@@ -0,0 +1,49 @@
+package sml.instruction;
+
+import sml.Instruction;
+import sml.RegisterName;
+
+/**
+ * This class is a subclass of the <code>abstract</code> class <code>sml.Instruction</code> and models a
+ * <i>superinstruction</i> of the Small Machine Language (SML): an 'add' followed by a 'jnz' on its result, fused into
+ * one instruction so that the pair is dispatched once (see
+ * <code>sml.instruction.ArithmeticJumpIfNotZeroInstruction</code>).
+ * <p>
+ * Programs are not expected to contain it directly; it is produced from the pair by
+ * <code>sml.optimizer.Superinstructions</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public class AddJumpIfNotZeroInstruction extends ArithmeticJumpIfNotZeroInstruction {
+    public static final String OP_CODE = "addjnz";
+
+    /**
+     * Constructor: an instruction with a label, an 'addjnz' opcode, two registers, and a label.
+     *
+     * @param label optional label (can be null).
+     * @param result the first <code>sml.Register</code>, in which the result of the 'add' is stored, and whose
+     *               contents are the condition of the 'jnz'.
+     * @param source the second <code>sml.Register</code>, the operand of the 'add'.
+     * @param instructionLabel the label of a labelled instruction in the SML program.
+     */
+    public AddJumpIfNotZeroInstruction(String label, RegisterName result, RegisterName source,
+            String instructionLabel) {
+        this(label, result, source, instructionLabel, JumpIfNotZeroInstruction.UNRESOLVED_ADDRESS);
+    }
+
+    private AddJumpIfNotZeroInstruction(String label, RegisterName result, RegisterName source,
+            String instructionLabel, int targetAddress) {
+        super(label, OP_CODE, result, source, instructionLabel, targetAddress);
+    }
+
+    @Override
+    int apply(int value1, int value2) {
+        return value1 + value2;
+    }
+
+    @Override
+    Instruction withTargetAddress(int address) {
+        return new AddJumpIfNotZeroInstruction(label, getResult(), getSource(), getInstructionLabel(), address);
+    }
+}
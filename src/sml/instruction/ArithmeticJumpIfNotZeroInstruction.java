@@ -0,0 +1,154 @@
+package sml.instruction;
+
+import sml.Instruction;
+import sml.Labels;
+import sml.Machine;
+import sml.RegisterName;
+
+import java.util.Objects;
+
+/**
+ * This class is an <code>abstract</code> subclass of the <code>abstract</code> class <code>sml.Instruction</code> and
+ * models the <i>superinstructions</i> of the Small Machine Language (SML) that fuse an arithmetic instruction with
+ * the 'jnz' on its result that follows it, so that the pair is dispatched once. It performs the arithmetic of two
+ * registers - <code>result</code> and <code>source</code> (both of type <code>sml.RegisterName</code>) - storing the
+ * result in the first, and then executes the labelled instruction - <code>instructionLabel</code> - if the result is
+ * not 0, exactly as the two instructions would (see <code>sml.instruction.JumpIfNotZeroInstruction</code>). Each
+ * subclass is one arithmetic operation.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+abstract class ArithmeticJumpIfNotZeroInstruction extends Instruction {
+    private final RegisterName result;
+    private final RegisterName source;
+    private final String instructionLabel;
+    private final int targetAddress;
+
+    /**
+     * Constructor: an instruction with a label, an opcode, two registers, a label, and the address of the labelled
+     * instruction.
+     *
+     * @param label optional label (can be null).
+     * @param opcode the opcode of the subclass, e.g. "subjnz".
+     * @param result the first <code>sml.Register</code>, in which the result of the arithmetic is stored, and whose
+     *               contents are the condition of the 'jnz'.
+     * @param source the second <code>sml.Register</code>, the operand of the arithmetic.
+     * @param instructionLabel the label of a labelled instruction in the SML program.
+     * @param targetAddress the address of the labelled instruction, or UNRESOLVED_ADDRESS.
+     */
+    ArithmeticJumpIfNotZeroInstruction(String label, String opcode, RegisterName result, RegisterName source,
+            String instructionLabel, int targetAddress) {
+        super(label, opcode);
+        this.result = result;
+        this.source = source;
+        this.instructionLabel = instructionLabel;
+        this.targetAddress = targetAddress;
+    }
+
+    /**
+     * Performs the arithmetic of the instruction.
+     *
+     * @param value1 the integer stored in the first register.
+     * @param value2 the integer stored in the second register.
+     * @return the result to store in the first register.
+     */
+    abstract int apply(int value1, int value2);
+
+    /**
+     * Returns a copy of the instruction whose label has been resolved to the given address.
+     *
+     * @param address the address of the labelled instruction.
+     * @return the linked instruction.
+     */
+    abstract Instruction withTargetAddress(int address);
+
+    /**
+     * Executes the instruction, performing the arithmetic of the two registers and storing the result in the first,
+     * and then executing the labelled instruction if the result is not 0.
+     *
+     * @param m the machine the instruction runs on.
+     * @return NORMAL_PROGRAM_COUNTER_UPDATE - assures the program counter is increased by 1 if successful.
+     */
+    @Override
+    public int execute(Machine m) {
+        int value1 = m.getRegisters().get(result);
+        int value2 = m.getRegisters().get(source);
+        int value = apply(value1, value2);
+        m.getRegisters().set(result, value);
+        JumpIfNotZeroInstruction.executeIfNotZero(m, this, result, value, instructionLabel, targetAddress);
+        return NORMAL_PROGRAM_COUNTER_UPDATE;
+    }
+
+    /**
+     * Resolves the label of the instruction to be conditionally executed to its address.
+     *
+     * @param labels the labels of the program the instruction belongs to.
+     * @return an instruction with its target address resolved.
+     * @throws NullPointerException - when the label doesn't exist.
+     */
+    @Override
+    public Instruction link(Labels labels) {
+        return withTargetAddress(labels.getAddress(instructionLabel));
+    }
+
+    /**
+     * Returns the register in which the result of the arithmetic is stored.
+     *
+     * @return the <code>result</code> register.
+     */
+    public RegisterName getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the register that the arithmetic reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the label of the instruction that is conditionally executed.
+     *
+     * @return the <code>instructionLabel</code>.
+     */
+    public String getInstructionLabel() {
+        return instructionLabel;
+    }
+
+    /**
+     * Returns the address of the labelled instruction, or UNRESOLVED_ADDRESS if the instruction has not been linked.
+     *
+     * @return the address of the labelled instruction.
+     */
+    public int getTargetAddress() {
+        return targetAddress;
+    }
+
+    /**
+     * Returns a String representation of the instruction.
+     *
+     * @return a String representation of the instruction.
+     */
+    @Override
+    public String toString() {
+        return getLabelString() + getOpcode() + " " + result + " " + source + " " + instructionLabel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ArithmeticJumpIfNotZeroInstruction that = (ArithmeticJumpIfNotZeroInstruction) o;
+        return result.equals(that.result) && source.equals(that.source)
+                && instructionLabel.equals(that.instructionLabel);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(result, source, instructionLabel);
+    }
+}
@@ -3,6 +3,8 @@ package sml.instruction;
 import sml.Instruction;
 import sml.Machine;
 import sml.RegisterName;
+import sml.jfr.DivisionByZeroEvent;
+
 import java.util.Objects;
 
 /**
@@ -34,6 +36,24 @@ public class DivideInstruction extends Instruction {
         this.source = source;
     }
 
+    /**
+     * Returns the register in which the result of the instruction is stored.
+     *
+     * @return the <code>result</code> register.
+     */
+    public RegisterName getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the register that the instruction reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
     /**
      * Executes the instruction, dividing the contents of the first referenced register by the second and storing the
      * result in the first.
@@ -49,6 +69,7 @@ public class DivideInstruction extends Instruction {
         int value2 = m.getRegisters().get(source);
         if (value1 == 0 || value2 == 0) {
             System.out.println("Error: Unable to execute command \"" + this + "\" - / by zero. ");
+            DivisionByZeroEvent.record(toString());
             throw new ArithmeticException();
         } else {
             m.getRegisters().set(result, value1 / value2);
@@ -1,6 +1,7 @@
 package sml.instruction;
 
 import sml.Instruction;
+import sml.Labels;
 import sml.Machine;
 import sml.RegisterName;
 import java.util.Objects;
@@ -18,7 +19,9 @@ import java.util.Objects;
 public class JumpIfNotZeroInstruction extends Instruction {
     private final RegisterName source;
     private final String instructionLabel;
+    private final int targetAddress;
     public static final String OP_CODE = "jnz";
+    public static final int UNRESOLVED_ADDRESS = -1;
 
     /**
      * Constructor: an instruction with a label, a 'jnz' opcode, a register, and a label.
@@ -30,14 +33,29 @@ public class JumpIfNotZeroInstruction extends Instruction {
      * @param instructionLabel the label of a labelled instruction in the SML program.
      */
     public JumpIfNotZeroInstruction(String label, RegisterName source, String instructionLabel) {
+        this(label, source, instructionLabel, UNRESOLVED_ADDRESS);
+    }
+
+    /**
+     * Constructor: a 'jnz' instruction whose label has already been resolved to the address of the labelled
+     * instruction.
+     *
+     * @param label optional label (can be null).
+     * @param source the <code>sml.Register</code> referenced in the condition.
+     * @param instructionLabel the label of a labelled instruction in the SML program.
+     * @param targetAddress the address of the labelled instruction, or UNRESOLVED_ADDRESS.
+     */
+    private JumpIfNotZeroInstruction(String label, RegisterName source, String instructionLabel, int targetAddress) {
         super(label, OP_CODE);
         this.source = source;
         this.instructionLabel = instructionLabel;
+        this.targetAddress = targetAddress;
     }
 
     /**
      * Executes the instruction, checking if the content of the referenced register is equal to 0.
-     * If the register contains a value of 0, the labelled command is not executed and the program continues.
+     * If the register contains a value of 0, the labelled command is not executed (which is reported to the tracer of
+     * the machine) and the program continues.
      * If the register contains a value that is not 0, the labelled command is executed.
      *
      * @param m the machine the instruction runs on.
@@ -45,15 +63,77 @@ public class JumpIfNotZeroInstruction extends Instruction {
      */
     @Override
     public int execute(Machine m) {
-        if(m.getRegisters().get(source) == 0) {
-            System.out.println("Did not execute \"" + this.toString() + "\" as " + source.toString() +
-                                " = 0. Moving to execute next valid command.");
+        executeIfNotZero(m, this, source, m.getRegisters().get(source), instructionLabel, targetAddress);
+        return NORMAL_PROGRAM_COUNTER_UPDATE;
+    }
+
+    /**
+     * Executes the labelled instruction of a 'jnz' (or of a superinstruction that ends with one) in place, if the
+     * condition is not 0; otherwise reports to the tracer of the machine that it was not executed.
+     *
+     * @param m the machine the instruction runs on.
+     * @param jump the 'jnz' (or superinstruction).
+     * @param register the register tested by the condition.
+     * @param value the value of the register.
+     * @param instructionLabel the label of the labelled instruction.
+     * @param targetAddress the address of the labelled instruction, or UNRESOLVED_ADDRESS.
+     */
+    static void executeIfNotZero(Machine m, Instruction jump, RegisterName register, int value,
+            String instructionLabel, int targetAddress) {
+        if(value == 0) {
+            if (m.getTracer().isEnabled())
+                m.getTracer().branchNotTaken(jump, register);
         }
-        else if(m.getRegisters().get(source) != 0) {
-            Instruction labelledInstruction = m.getProgram().get(m.getLabels().getAddress(instructionLabel));
+        else {
+            // A linked instruction only touches its resolved address; an unlinked one (e.g. built by hand) falls
+            // back to looking the label up.
+            int address = (targetAddress == UNRESOLVED_ADDRESS)
+                    ? m.getLabels().getAddress(instructionLabel)
+                    : targetAddress;
+            Instruction labelledInstruction = m.getProgram().get(address);
+            if (m.getTracer().isEnabled())
+                m.getTracer().step(address, labelledInstruction);
             labelledInstruction.execute(m);
         }
-        return NORMAL_PROGRAM_COUNTER_UPDATE;
+    }
+
+    /**
+     * Resolves the label of the instruction to be conditionally executed to its address.
+     *
+     * @param labels the labels of the program the instruction belongs to.
+     * @return a 'jnz' instruction with its target address resolved.
+     * @throws NullPointerException - when the label doesn't exist.
+     */
+    @Override
+    public Instruction link(Labels labels) {
+        return new JumpIfNotZeroInstruction(label, source, instructionLabel, labels.getAddress(instructionLabel));
+    }
+
+    /**
+     * Returns the register that the instruction reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the label of the instruction that is conditionally executed.
+     *
+     * @return the <code>instructionLabel</code>.
+     */
+    public String getInstructionLabel() {
+        return instructionLabel;
+    }
+
+    /**
+     * Returns the address of the labelled instruction, or UNRESOLVED_ADDRESS if the instruction has not been linked.
+     *
+     * @return the address of the labelled instruction.
+     */
+    public int getTargetAddress() {
+        return targetAddress;
     }
 
     /**
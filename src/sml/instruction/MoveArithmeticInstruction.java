@@ -0,0 +1,120 @@
+package sml.instruction;
+
+import sml.Instruction;
+import sml.Machine;
+import sml.RegisterName;
+
+import java.util.Objects;
+
+/**
+ * This class is an <code>abstract</code> subclass of the <code>abstract</code> class <code>sml.Instruction</code> and
+ * models the <i>superinstructions</i> of the Small Machine Language (SML) that fuse a 'mov' with the 'add', 'sub' or
+ * 'mul' that follows it and reads the register it sets, so that the pair is dispatched once. It stores the
+ * <code>value</code> in one register - <code>source</code> - and then performs the arithmetic of a second register
+ * - <code>result</code> - and the first (both of type <code>sml.RegisterName</code>), exactly as the two instructions
+ * would. Each subclass is one arithmetic operation.
+ * <p>
+ * Programs are not expected to contain them directly; they are produced from the pair by
+ * <code>sml.optimizer.Superinstructions</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public abstract class MoveArithmeticInstruction extends Instruction {
+    private final RegisterName result;
+    private final RegisterName source;
+    private final Integer value;
+
+    /**
+     * Constructor: an instruction with a label, an opcode, two registers, and an integer.
+     *
+     * @param label optional label (can be null).
+     * @param opcode the opcode of the subclass, e.g. "movadd".
+     * @param result the first <code>sml.Register</code>, in which the result of the arithmetic is stored.
+     * @param source the second <code>sml.Register</code>, in which the value is stored by the 'mov', and which is the
+     *               operand of the arithmetic.
+     * @param value the integer to store in the second register.
+     */
+    protected MoveArithmeticInstruction(String label, String opcode, RegisterName result, RegisterName source,
+            Integer value) {
+        super(label, opcode);
+        this.result = result;
+        this.source = source;
+        this.value = value;
+    }
+
+    /**
+     * Performs the arithmetic of the instruction.
+     *
+     * @param value1 the integer stored in the first register.
+     * @param value2 the integer stored in the second register.
+     * @return the result to store in the first register.
+     */
+    protected abstract int apply(int value1, int value2);
+
+    /**
+     * Executes the instruction, storing the value in the second register, and then performing the arithmetic of the
+     * two registers and storing the result in the first.
+     *
+     * @param m the machine the instruction runs on.
+     * @return NORMAL_PROGRAM_COUNTER_UPDATE - assures the program counter is increased by 1 if successful.
+     */
+    @Override
+    public int execute(Machine m) {
+        m.getRegisters().set(source, value);
+        // The first register is read after the 'mov', as it may be the second.
+        int value1 = m.getRegisters().get(result);
+        m.getRegisters().set(result, apply(value1, value));
+        return NORMAL_PROGRAM_COUNTER_UPDATE;
+    }
+
+    /**
+     * Returns the register in which the result of the arithmetic is stored.
+     *
+     * @return the <code>result</code> register.
+     */
+    public RegisterName getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the register that the 'mov' stores the value in, and the arithmetic reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the integer that the 'mov' stores.
+     *
+     * @return the <code>value</code> to be stored.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns a String representation of the instruction.
+     *
+     * @return a String representation of the instruction.
+     */
+    @Override
+    public String toString() {
+        return getLabelString() + getOpcode() + " " + result + " " + source + " " + value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MoveArithmeticInstruction that = (MoveArithmeticInstruction) o;
+        return result.equals(that.result) && source.equals(that.source) && value.equals(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getOpcode(), result, source, value);
+    }
+}
@@ -33,6 +33,24 @@ public class MoveInstruction extends Instruction {
         this.value = value;
     }
 
+    /**
+     * Returns the register in which the result of the instruction is stored.
+     *
+     * @return the <code>result</code> register.
+     */
+    public RegisterName getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the integer that the instruction stores.
+     *
+     * @return the <code>value</code> to be stored.
+     */
+    public int getValue() {
+        return value;
+    }
+
     /**
      * Executes the instruction, storing the value passed in the referenced register.
      *
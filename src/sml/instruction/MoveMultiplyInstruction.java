@@ -0,0 +1,33 @@
+package sml.instruction;
+
+import sml.RegisterName;
+
+/**
+ * This class is a subclass of the <code>abstract</code> class <code>sml.instruction.MoveArithmeticInstruction</code>
+ * and models the <i>superinstruction</i> of the Small Machine Language (SML) that fuses a 'mov' with a 'mul' of
+ * the register it sets: <code>mov source value</code> followed by <code>mul result source</code>.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public class MoveMultiplyInstruction extends MoveArithmeticInstruction {
+    public static final String OP_CODE = "movmul";
+
+    /**
+     * Constructor: an instruction with a label, a 'movmul' opcode, two registers, and an integer.
+     *
+     * @param label optional label (can be null).
+     * @param result the first <code>sml.Register</code>, in which the result of the 'mul' is stored.
+     * @param source the second <code>sml.Register</code>, in which the value is stored, and which is the operand of
+     *               the 'mul'.
+     * @param value the integer to store in the second register.
+     */
+    public MoveMultiplyInstruction(String label, RegisterName result, RegisterName source, Integer value) {
+        super(label, OP_CODE, result, source, value);
+    }
+
+    @Override
+    protected int apply(int value1, int value2) {
+        return value1 * value2;
+    }
+}
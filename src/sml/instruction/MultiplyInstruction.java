@@ -33,6 +33,24 @@ public class MultiplyInstruction extends Instruction {
         this.source = source;
     }
 
+    /**
+     * Returns the register in which the result of the instruction is stored.
+     *
+     * @return the <code>result</code> register.
+     */
+    public RegisterName getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the register that the instruction reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
     /**
      * Executes the instruction, multiplying the contents of the two referenced registers and storing the result in the
      * first.
@@ -29,15 +29,24 @@ public class PrintInstruction extends Instruction {
     }
 
     /**
-     * Executes the instruction, printing the integer stored in the referenced register.
+     * Returns the register that the instruction reads its operand from.
+     *
+     * @return the <code>source</code> register.
+     */
+    public RegisterName getSource() {
+        return source;
+    }
+
+    /**
+     * Executes the instruction, printing the integer stored in the referenced register to the output sink of the
+     * machine.
      *
      * @param m the machine the instruction runs on.
      * @return NORMAL_PROGRAM_COUNTER_UPDATE - assures the program counter is increased by 1 if successful.
      */
     @Override
     public int execute(Machine m) {
-        String message = source.name() + " - " + m.getRegisters().get(source);
-        System.out.println(message);
+        m.getOutput().print(source, m.getRegisters().get(source));
         return NORMAL_PROGRAM_COUNTER_UPDATE;
     }
 
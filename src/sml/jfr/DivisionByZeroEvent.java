@@ -0,0 +1,45 @@
+package sml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is a <code>final</code> class that models the Java Flight Recorder (JFR) event recorded when a 'div'
+ * instruction of a Small Machine Language (SML) program has an operand of 0, just before the
+ * <code>ArithmeticException</code> is thrown. It is recorded by every engine.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@Name(DivisionByZeroEvent.NAME)
+@Label("SML Division By Zero")
+@Category("SML")
+@Description("A 'div' instruction with an operand of 0")
+public final class DivisionByZeroEvent extends Event {
+
+	/**
+	 * The name of the event, by which it can be enabled in a recording.
+	 */
+	public static final String NAME = "sml.DivisionByZero";
+
+	@Label("Instruction")
+	private final String instruction;
+
+	private DivisionByZeroEvent(String instruction) {
+		this.instruction = instruction;
+	}
+
+	/**
+	 * Records the event, if it is enabled.
+	 *
+	 * @param instruction the source text of the 'div'.
+	 */
+	public static void record(String instruction) {
+		DivisionByZeroEvent event = new DivisionByZeroEvent(instruction);
+		if (event.shouldCommit())
+			event.commit();
+	}
+}
@@ -0,0 +1,96 @@
+package sml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is a <code>final</code> class that models the Java Flight Recorder (JFR) event recorded when
+ * <code>sml.Machine</code> executes a Small Machine Language (SML) program. Its duration is the time taken to execute
+ * the program, and its outcome is one of the constants of this class, or the reason an execution limit was reached
+ * (see <code>sml.ExecutionLimitException.Reason</code>).
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@Name(ExecutionEvent.NAME)
+@Label("SML Execution")
+@Category("SML")
+@Description("Execution of an SML program by a machine")
+@StackTrace(false)
+public final class ExecutionEvent extends Event {
+
+	/**
+	 * The name of the event, by which it can be enabled in a recording.
+	 */
+	public static final String NAME = "sml.Execution";
+
+	/**
+	 * The outcome of a program that ran to its end.
+	 */
+	public static final String COMPLETED = "COMPLETED";
+
+	/**
+	 * The outcome of a program that failed on a 'div' with an operand of 0.
+	 */
+	public static final String DIVISION_BY_ZERO = "DIVISION_BY_ZERO";
+
+	/**
+	 * The outcome of a program that failed for any other reason.
+	 */
+	public static final String FAILED = "FAILED";
+
+	@Label("Engine")
+	private String engine;
+
+	@Label("Program Size")
+	@Description("The number of instructions in the program")
+	private int programSize;
+
+	@Label("Steps")
+	@Description("The number of instructions executed, or -1 if the engine does not count them " +
+			"(the POLYMORPHIC engine counts a taken 'jnz' and its labelled instruction as one)")
+	private long steps;
+
+	@Label("Outcome")
+	private String outcome;
+
+	/**
+	 * Sets the engine that executed the program.
+	 *
+	 * @param engine the name of the engine.
+	 */
+	public void setEngine(String engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Sets the size of the program.
+	 *
+	 * @param programSize the number of instructions in the program.
+	 */
+	public void setProgramSize(int programSize) {
+		this.programSize = programSize;
+	}
+
+	/**
+	 * Sets the number of instructions executed.
+	 *
+	 * @param steps the number of instructions executed, or -1 if they were not counted.
+	 */
+	public void setSteps(long steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * Sets the outcome of the execution.
+	 *
+	 * @param outcome the outcome.
+	 */
+	public void setOutcome(String outcome) {
+		this.outcome = outcome;
+	}
+}
@@ -0,0 +1,67 @@
+package sml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is a <code>final</code> class that models the Java Flight Recorder (JFR) event recorded when
+ * <code>sml.Translator</code> reads and translates a Small Machine Language (SML) program file. Its duration is the
+ * time taken to read, translate and link the program.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+@Name(TranslationEvent.NAME)
+@Label("SML Translation")
+@Category("SML")
+@Description("Reading and translation of an SML program file")
+@StackTrace(false)
+public final class TranslationEvent extends Event {
+
+	/**
+	 * The name of the event, by which it can be enabled in a recording.
+	 */
+	public static final String NAME = "sml.Translation";
+
+	@Label("File")
+	private String file;
+
+	@Label("Lines")
+	@Description("The number of lines read from the file")
+	private int lines;
+
+	@Label("Instructions")
+	@Description("The number of instructions translated")
+	private int instructions;
+
+	/**
+	 * Sets the file that was translated.
+	 *
+	 * @param file the name of the file.
+	 */
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	/**
+	 * Sets the number of lines read from the file.
+	 *
+	 * @param lines the number of lines.
+	 */
+	public void setLines(int lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * Sets the number of instructions the file was translated into.
+	 *
+	 * @param instructions the number of instructions.
+	 */
+	public void setInstructions(int instructions) {
+		this.instructions = instructions;
+	}
+}
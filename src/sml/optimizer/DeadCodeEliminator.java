@@ -0,0 +1,79 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Labels;
+import sml.Program;
+import sml.analysis.ControlFlowGraph;
+import sml.analysis.Liveness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a <code>final</code> class that removes the dead code of a translated Small Machine Language (SML)
+ * program, found by the analysis of its control-flow graph (see <code>sml.analysis</code>): the instructions that can
+ * never be executed, and the unlabelled stores whose result is never read (see <code>Liveness.isDeadStore</code>).
+ * Removing an instruction can make others dead, so the analysis is repeated until nothing more is removed.
+ * <p>
+ * Unlike <code>sml.optimizer.PeepholeOptimizer</code>, which follows the program in order, the analysis follows the
+ * labelled instructions executed by each 'jnz', and handles superinstructions. A program containing an instruction
+ * that is not part of the language is left as it is.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class DeadCodeEliminator {
+
+	private DeadCodeEliminator() {
+	}
+
+	/**
+	 * Removes the dead code of a program.
+	 *
+	 * @param program the program.
+	 * @return the program without its dead code.
+	 */
+	public static Program eliminate(Program program) {
+		List<Instruction> instructions = new ArrayList<>(program.getInstructions());
+		Labels labels = new Labels();
+		if (eliminate(labels, instructions, program.getLabels()) == 0)
+			return program;
+		return new Program(instructions, labels);
+	}
+
+	/**
+	 * Removes the dead code of a program in place: the instructions are rewritten, and the labels are replaced by the
+	 * addresses of the labelled instructions that remain, to which every 'jnz' is linked.
+	 *
+	 * @param labels the labels of the program.
+	 * @param program the instructions of the program.
+	 * @return the number of instructions removed.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public static int eliminate(Labels labels, List<Instruction> program) {
+		return eliminate(labels, program, labels);
+	}
+
+	private static int eliminate(Labels labels, List<Instruction> program, Labels source) {
+		int removed = 0;
+		while (true) {
+			ControlFlowGraph graph = ControlFlowGraph.of(program, source);
+			if (!graph.isExact())
+				return removed;
+			Liveness liveness = Liveness.of(graph);
+			List<Instruction> live = new ArrayList<>(program.size());
+			for (int address = 0; address < program.size(); address++) {
+				Instruction instruction = program.get(address);
+				boolean dead = !graph.isReachable(address)
+						|| (instruction.getLabel() == null && liveness.isDeadStore(address));
+				if (!dead)
+					live.add(instruction);
+			}
+			if (live.size() == program.size())
+				return removed;
+			removed += program.size() - live.size();
+			PeepholeOptimizer.replace(labels, program, live);
+			source = labels;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Labels;
+import sml.Program;
+import sml.RegisterName;
+import sml.Registers;
+import sml.instruction.AddInstruction;
+import sml.instruction.DivideInstruction;
+import sml.instruction.JumpIfNotZeroInstruction;
+import sml.instruction.MoveInstruction;
+import sml.instruction.MultiplyInstruction;
+import sml.instruction.PrintInstruction;
+import sml.instruction.SubtractInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class is a <code>final</code> class that rewrites a translated Small Machine Language (SML) program into an
+ * equivalent, shorter one, for use between <code>Translator.readAndTranslate</code> and <code>Machine.execute</code>.
+ * <p>
+ * The unlabelled instructions of a program are executed in order, and a labelled instruction is only executed in
+ * place by a 'jnz', so the program is a straight line of instructions with conditional single instructions. The
+ * optimizer makes three passes over it:
+ * <ol>
+ *     <li>Constant folding: the values of the registers are followed from the start of the program (where they are
+ *     not known, since a machine can start a program with any registers), through each 'mov'. An 'add', 'sub',
+ *     'mul' or 'div' of known values becomes a 'mov' of the result (so a 'mov' followed by arithmetic on the
+ *     register folds into one 'mov'); one that cannot change its register (e.g. the 'add' of a register holding 0)
+ *     is removed; a 'jnz' on a register known to hold 0 is removed, and one on a register known not to is replaced
+ *     by a copy of its labelled instruction.</li>
+ *     <li>Dead store elimination: a 'mov', 'add', 'sub' or 'mul' whose result is overwritten before it is read is
+ *     removed. Every register is read at the end of the program, since its registers are the result of the
+ *     program.</li>
+ *     <li>Labelled instructions that are no longer the target of any 'jnz' are removed.</li>
+ * </ol>
+ * The output of the program, its final registers, and any division by zero (with its error message and the registers
+ * at that point) are unchanged; the number of steps executed can only fall. A program containing an instruction that
+ * is not part of the language (which may change the program counter) is left as it is.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class PeepholeOptimizer {
+
+	private static final Registers.Register[] REGISTERS = Registers.Register.values();
+
+	private PeepholeOptimizer() {
+	}
+
+	/**
+	 * Optimizes a program.
+	 *
+	 * @param program the program.
+	 * @return the optimized program.
+	 */
+	public static Program optimize(Program program) {
+		if (!program.getInstructions().stream().allMatch(PeepholeOptimizer::isLanguage))
+			return program;
+		List<Instruction> instructions = new ArrayList<>(program.getInstructions());
+		Labels labels = new Labels();
+		optimize(labels, instructions);
+		return new Program(instructions, labels);
+	}
+
+	/**
+	 * Optimizes a program in place: the instructions are rewritten, and the labels are replaced by the addresses of
+	 * the labelled instructions that remain, to which every 'jnz' is linked.
+	 *
+	 * @param labels the labels of the program.
+	 * @param program the instructions of the program.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public static void optimize(Labels labels, List<Instruction> program) {
+		if (!program.stream().allMatch(PeepholeOptimizer::isLanguage))
+			return;
+		List<Instruction> folded = fold(program);
+		List<Instruction> live = eliminateDeadStores(folded);
+		replace(labels, program, removeUnusedLabels(live));
+	}
+
+	/**
+	 * Replaces the instructions of a program with the rewritten ones, and its labels with the addresses of the
+	 * labelled instructions among them, to which every 'jnz' is linked.
+	 *
+	 * @param labels the labels of the program.
+	 * @param program the instructions of the program.
+	 * @param rewritten the rewritten instructions.
+	 */
+	static void replace(Labels labels, List<Instruction> program, List<Instruction> rewritten) {
+		labels.reset();
+		for (int address = 0; address < rewritten.size(); address++) {
+			if (rewritten.get(address).getLabel() != null)
+				labels.addLabel(rewritten.get(address).getLabel(), address);
+		}
+		program.clear();
+		for (Instruction instruction : rewritten)
+			program.add(instruction.link(labels));
+	}
+
+	/**
+	 * Folds the instructions whose operands are known, following the values of the registers through the
+	 * unlabelled instructions.
+	 */
+	private static List<Instruction> fold(List<Instruction> program) {
+		Map<String, Instruction> targets = labelled(program);
+		int[] values = new int[REGISTERS.length];
+		boolean[] known = new boolean[REGISTERS.length];
+		List<Instruction> result = new ArrayList<>(program.size());
+		for (Instruction instruction : program) {
+			if (instruction.getLabel() != null)
+				result.add(instruction);
+			else if (instruction instanceof JumpIfNotZeroInstruction jnz)
+				fold(jnz, target(targets, jnz), values, known, result);
+			else
+				fold(instruction, values, known, result);
+		}
+		return result;
+	}
+
+	private static void fold(JumpIfNotZeroInstruction jnz, Instruction target, int[] values, boolean[] known,
+			List<Instruction> result) {
+		int source = ordinal(jnz.getSource());
+		if (known[source] && values[source] == 0)
+			return; // never executes its labelled instruction.
+		if (known[source] && isFoldable(target, values, known)) {
+			fold(unlabelled(target), values, known, result);
+			return;
+		}
+		result.add(jnz);
+		// The labelled instruction may or may not have been executed.
+		if (target instanceof MoveInstruction || target instanceof AddInstruction || target instanceof SubtractInstruction
+				|| target instanceof MultiplyInstruction || target instanceof DivideInstruction)
+			known[ordinal(result(target))] = false;
+		else if (!(target instanceof PrintInstruction))
+			Arrays.fill(known, false);
+	}
+
+	/**
+	 * @return whether a labelled instruction can be executed in place of a 'jnz' that is known to be taken, without
+	 * changing the error message of a failing 'div'.
+	 */
+	private static boolean isFoldable(Instruction target, int[] values, boolean[] known) {
+		if (target instanceof DivideInstruction div) {
+			int result = ordinal(div.getResult());
+			int source = ordinal(div.getSource());
+			return known[result] && known[source] && values[result] != 0 && values[source] != 0;
+		}
+		return target instanceof MoveInstruction || target instanceof AddInstruction
+				|| target instanceof SubtractInstruction || target instanceof MultiplyInstruction
+				|| target instanceof PrintInstruction;
+	}
+
+	private static void fold(Instruction instruction, int[] values, boolean[] known, List<Instruction> result) {
+		if (instruction instanceof MoveInstruction mov) {
+			values[ordinal(mov.getResult())] = mov.getValue();
+			known[ordinal(mov.getResult())] = true;
+			result.add(instruction);
+		}
+		else if (instruction instanceof AddInstruction || instruction instanceof SubtractInstruction
+				|| instruction instanceof MultiplyInstruction || instruction instanceof DivideInstruction) {
+			int r = ordinal(result(instruction));
+			int s = ordinal(source(instruction));
+			if (known[r] && known[s] && (!(instruction instanceof DivideInstruction) || (values[r] != 0 && values[s] != 0))) {
+				values[r] = evaluate(instruction, values[r], values[s]);
+				result.add(new MoveInstruction(null, REGISTERS[r], values[r]));
+			}
+			else if (known[s] && isIdentity(instruction, values[s])) {
+				// leaves the register unchanged.
+			}
+			else if (instruction instanceof MultiplyInstruction && ((known[s] && values[s] == 0) || (known[r] && values[r] == 0))) {
+				values[r] = 0;
+				known[r] = true;
+				result.add(new MoveInstruction(null, REGISTERS[r], 0));
+			}
+			else {
+				known[r] = false;
+				result.add(instruction);
+			}
+		}
+		else if (instruction instanceof PrintInstruction) {
+			result.add(instruction);
+		}
+		else {
+			Arrays.fill(known, false);
+			result.add(instruction);
+		}
+	}
+
+	private static int evaluate(Instruction instruction, int value1, int value2) {
+		if (instruction instanceof AddInstruction)
+			return value1 + value2;
+		if (instruction instanceof SubtractInstruction)
+			return value1 - value2;
+		if (instruction instanceof MultiplyInstruction)
+			return value1 * value2;
+		return value1 / value2;
+	}
+
+	private static boolean isIdentity(Instruction instruction, int source) {
+		return (source == 0 && (instruction instanceof AddInstruction || instruction instanceof SubtractInstruction))
+				|| (source == 1 && instruction instanceof MultiplyInstruction);
+	}
+
+	/**
+	 * Removes the instructions that write a register that is overwritten before it is read, working back from the end
+	 * of the program (where every register is read).
+	 */
+	private static List<Instruction> eliminateDeadStores(List<Instruction> program) {
+		Map<String, Instruction> targets = labelled(program);
+		boolean[] live = new boolean[REGISTERS.length];
+		Arrays.fill(live, true);
+		List<Instruction> result = new ArrayList<>(program.size());
+		for (int address = program.size() - 1; address >= 0; address--) {
+			Instruction instruction = program.get(address);
+			if (instruction.getLabel() != null) {
+				result.add(instruction);
+			}
+			else if (instruction instanceof MoveInstruction mov) {
+				if (live[ordinal(mov.getResult())]) {
+					live[ordinal(mov.getResult())] = false;
+					result.add(instruction);
+				}
+			}
+			else if (instruction instanceof AddInstruction || instruction instanceof SubtractInstruction
+					|| instruction instanceof MultiplyInstruction) {
+				if (live[ordinal(result(instruction))]) {
+					live[ordinal(source(instruction))] = true;
+					result.add(instruction);
+				}
+			}
+			else if (instruction instanceof PrintInstruction out) {
+				live[ordinal(out.getSource())] = true;
+				result.add(instruction);
+			}
+			else if (instruction instanceof JumpIfNotZeroInstruction jnz) {
+				Instruction target = target(targets, jnz);
+				live[ordinal(jnz.getSource())] = true;
+				if (target instanceof AddInstruction || target instanceof SubtractInstruction
+						|| target instanceof MultiplyInstruction) {
+					live[ordinal(result(target))] = true;
+					live[ordinal(source(target))] = true;
+				}
+				else if (target instanceof PrintInstruction out) {
+					live[ordinal(out.getSource())] = true;
+				}
+				else if (!(target instanceof MoveInstruction)) {
+					Arrays.fill(live, true);
+				}
+				result.add(instruction);
+			}
+			else {
+				// A 'div' may fail, leaving every register as it is.
+				Arrays.fill(live, true);
+				result.add(instruction);
+			}
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	/**
+	 * Removes the labelled instructions that cannot be executed by any 'jnz'.
+	 */
+	private static List<Instruction> removeUnusedLabels(List<Instruction> program) {
+		Map<String, Instruction> targets = labelled(program);
+		Set<String> used = new HashSet<>();
+		List<String> pending = new ArrayList<>();
+		for (Instruction instruction : program) {
+			if (instruction.getLabel() == null && instruction instanceof JumpIfNotZeroInstruction jnz)
+				pending.add(jnz.getInstructionLabel());
+		}
+		while (!pending.isEmpty()) {
+			String label = pending.remove(pending.size() - 1);
+			// A labelled 'jnz' makes the instruction it refers to executable too.
+			if (used.add(label) && targets.get(label) instanceof JumpIfNotZeroInstruction jnz)
+				pending.add(jnz.getInstructionLabel());
+		}
+		List<Instruction> result = new ArrayList<>(program.size());
+		for (Instruction instruction : program) {
+			if (instruction.getLabel() == null || used.contains(instruction.getLabel()))
+				result.add(instruction);
+		}
+		return result;
+	}
+
+	private static boolean isLanguage(Instruction instruction) {
+		return instruction instanceof MoveInstruction || instruction instanceof AddInstruction
+				|| instruction instanceof SubtractInstruction || instruction instanceof MultiplyInstruction
+				|| instruction instanceof DivideInstruction || instruction instanceof PrintInstruction
+				|| instruction instanceof JumpIfNotZeroInstruction;
+	}
+
+	/**
+	 * @return the labelled instructions of a program, by label.
+	 */
+	private static Map<String, Instruction> labelled(List<Instruction> program) {
+		Map<String, Instruction> targets = new HashMap<>();
+		for (Instruction instruction : program) {
+			if (instruction.getLabel() != null)
+				targets.put(instruction.getLabel(), instruction);
+		}
+		return targets;
+	}
+
+	/**
+	 * @return the labelled instruction of a 'jnz'.
+	 * @throws NullPointerException - when the label doesn't exist.
+	 */
+	private static Instruction target(Map<String, Instruction> targets, JumpIfNotZeroInstruction jnz) {
+		return Objects.requireNonNull(targets.get(jnz.getInstructionLabel()),
+				"Label " + jnz.getInstructionLabel() + " does not exist.");
+	}
+
+	/**
+	 * @return a copy of a labelled instruction without its label.
+	 */
+	private static Instruction unlabelled(Instruction instruction) {
+		if (instruction instanceof MoveInstruction mov)
+			return new MoveInstruction(null, mov.getResult(), mov.getValue());
+		if (instruction instanceof AddInstruction add)
+			return new AddInstruction(null, add.getResult(), add.getSource());
+		if (instruction instanceof SubtractInstruction sub)
+			return new SubtractInstruction(null, sub.getResult(), sub.getSource());
+		if (instruction instanceof MultiplyInstruction mul)
+			return new MultiplyInstruction(null, mul.getResult(), mul.getSource());
+		if (instruction instanceof DivideInstruction div)
+			return new DivideInstruction(null, div.getResult(), div.getSource());
+		return new PrintInstruction(null, ((PrintInstruction) instruction).getSource());
+	}
+
+	private static RegisterName result(Instruction instruction) {
+		if (instruction instanceof MoveInstruction mov)
+			return mov.getResult();
+		if (instruction instanceof AddInstruction add)
+			return add.getResult();
+		if (instruction instanceof SubtractInstruction sub)
+			return sub.getResult();
+		if (instruction instanceof MultiplyInstruction mul)
+			return mul.getResult();
+		return ((DivideInstruction) instruction).getResult();
+	}
+
+	private static RegisterName source(Instruction instruction) {
+		if (instruction instanceof AddInstruction add)
+			return add.getSource();
+		if (instruction instanceof SubtractInstruction sub)
+			return sub.getSource();
+		if (instruction instanceof MultiplyInstruction mul)
+			return mul.getSource();
+		return ((DivideInstruction) instruction).getSource();
+	}
+
+	private static int ordinal(RegisterName register) {
+		return ((Registers.Register) register).ordinal();
+	}
+}
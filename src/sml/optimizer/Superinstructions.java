@@ -0,0 +1,174 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Labels;
+import sml.Program;
+import sml.instruction.AddInstruction;
+import sml.instruction.AddJumpIfNotZeroInstruction;
+import sml.instruction.JumpIfNotZeroInstruction;
+import sml.instruction.MoveAddInstruction;
+import sml.instruction.MoveInstruction;
+import sml.instruction.MoveMultiplyInstruction;
+import sml.instruction.MoveSubtractInstruction;
+import sml.instruction.MultiplyInstruction;
+import sml.instruction.SubtractInstruction;
+import sml.instruction.SubtractJumpIfNotZeroInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a <code>final</code> class that replaces the most common pairs of instructions in a translated Small
+ * Machine Language (SML) program with <i>superinstructions</i>, which do the work of the pair in one dispatch. The
+ * pairs are a 'sub' or 'add' followed by a 'jnz' on the register it changes - the step of a countdown - and a 'mov'
+ * followed by an 'add', 'sub' or 'mul' that reads the register it sets - arithmetic with a constant:
+ * <pre>
+ *     sub EAX ECX
+ *     jnz EAX f1      becomes      subjnz EAX ECX f1
+ *
+ *     mov EBX 5
+ *     add EAX EBX     becomes      movadd EAX EBX 5
+ * </pre>
+ * Only unlabelled pairs are fused, since a labelled instruction is not executed in sequence. When an arithmetic
+ * instruction could be fused with either the 'mov' before it or the 'jnz' after it, it is fused with the 'jnz'. Each engine executes the
+ * superinstructions (see <code>sml.Bytecode</code>), and counts them as one step. A program should be optimized (see
+ * <code>sml.optimizer.PeepholeOptimizer</code>) before it is fused, as the optimizer leaves a program with
+ * superinstructions as it is.
+ * <p>
+ * An instance counts the pairs it has fused, by pattern, over all the programs it has fused; how often the
+ * superinstructions are executed is counted by <code>sml.ExecutionStats</code>. An instance is not thread-safe.
+ *
+ * @author mcmanusniall
+ * @version 1.0
+ */
+public final class Superinstructions {
+
+	/**
+	 * The pattern of a 'sub' followed by a 'jnz' on its result.
+	 */
+	public static final String SUB_JNZ = SubtractInstruction.OP_CODE + "+" + JumpIfNotZeroInstruction.OP_CODE;
+
+	/**
+	 * The pattern of an 'add' followed by a 'jnz' on its result.
+	 */
+	public static final String ADD_JNZ = AddInstruction.OP_CODE + "+" + JumpIfNotZeroInstruction.OP_CODE;
+
+	/**
+	 * The patterns of a 'mov' followed by an 'add', 'sub' or 'mul' that reads the register it sets.
+	 */
+	public static final String MOV_ADD = MoveInstruction.OP_CODE + "+" + AddInstruction.OP_CODE;
+	public static final String MOV_SUB = MoveInstruction.OP_CODE + "+" + SubtractInstruction.OP_CODE;
+	public static final String MOV_MUL = MoveInstruction.OP_CODE + "+" + MultiplyInstruction.OP_CODE;
+
+	private final Map<String, Long> fusions = new LinkedHashMap<>();
+
+	/**
+	 * Constructor: a fuser that has not fused anything.
+	 */
+	public Superinstructions() {
+		fusions.put(SUB_JNZ, 0L);
+		fusions.put(ADD_JNZ, 0L);
+		fusions.put(MOV_ADD, 0L);
+		fusions.put(MOV_SUB, 0L);
+		fusions.put(MOV_MUL, 0L);
+	}
+
+	/**
+	 * Fuses the pairs of a program.
+	 *
+	 * @param program the program.
+	 * @return the fused program.
+	 */
+	public Program fuse(Program program) {
+		List<Instruction> instructions = new ArrayList<>(program.getInstructions());
+		Labels labels = new Labels();
+		if (fuse(labels, instructions) == 0)
+			return program;
+		return new Program(instructions, labels);
+	}
+
+	/**
+	 * Fuses the pairs of a program in place: the instructions are rewritten, and the labels are replaced by the
+	 * addresses of the labelled instructions, to which every 'jnz' is linked.
+	 *
+	 * @param labels the labels of the program.
+	 * @param program the instructions of the program.
+	 * @return the number of pairs fused.
+	 * @throws NullPointerException - when a 'jnz' refers to a label that doesn't exist.
+	 */
+	public int fuse(Labels labels, List<Instruction> program) {
+		List<Instruction> fused = new ArrayList<>(program.size());
+		int count = 0;
+		for (int address = 0; address < program.size(); address++) {
+			Instruction instruction = program.get(address);
+			Instruction next = (address + 1 < program.size()) ? program.get(address + 1) : null;
+			Instruction afterNext = (address + 2 < program.size()) ? program.get(address + 2) : null;
+			Instruction superinstruction = fuseJump(instruction, next);
+			if (superinstruction == null && fuseJump(next, afterNext) == null)
+				superinstruction = fuseMove(instruction, next);
+			if (superinstruction == null) {
+				fused.add(instruction);
+			}
+			else {
+				fusions.merge(instruction.getOpcode() + "+" + next.getOpcode(), 1L, Long::sum);
+				fused.add(superinstruction);
+				address++;
+				count++;
+			}
+		}
+		if (count > 0)
+			PeepholeOptimizer.replace(labels, program, fused);
+		return count;
+	}
+
+	/**
+	 * @return the superinstruction of a 'sub' or 'add' followed by a 'jnz' on its result, or <code>null</code> if the
+	 * pair cannot be fused.
+	 */
+	private static Instruction fuseJump(Instruction instruction, Instruction next) {
+		if (instruction == null || instruction.getLabel() != null || next == null || next.getLabel() != null
+				|| !(next instanceof JumpIfNotZeroInstruction jnz))
+			return null;
+		if (instruction instanceof SubtractInstruction sub && sub.getResult().equals(jnz.getSource()))
+			return new SubtractJumpIfNotZeroInstruction(null, sub.getResult(), sub.getSource(),
+					jnz.getInstructionLabel());
+		if (instruction instanceof AddInstruction add && add.getResult().equals(jnz.getSource()))
+			return new AddJumpIfNotZeroInstruction(null, add.getResult(), add.getSource(), jnz.getInstructionLabel());
+		return null;
+	}
+
+	/**
+	 * @return the superinstruction of a 'mov' followed by an 'add', 'sub' or 'mul' that reads the register it sets,
+	 * or <code>null</code> if the pair cannot be fused.
+	 */
+	private static Instruction fuseMove(Instruction instruction, Instruction next) {
+		if (instruction.getLabel() != null || next == null || next.getLabel() != null
+				|| !(instruction instanceof MoveInstruction mov))
+			return null;
+		if (next instanceof AddInstruction add && add.getSource().equals(mov.getResult()))
+			return new MoveAddInstruction(null, add.getResult(), add.getSource(), mov.getValue());
+		if (next instanceof SubtractInstruction sub && sub.getSource().equals(mov.getResult()))
+			return new MoveSubtractInstruction(null, sub.getResult(), sub.getSource(), mov.getValue());
+		if (next instanceof MultiplyInstruction mul && mul.getSource().equals(mov.getResult()))
+			return new MoveMultiplyInstruction(null, mul.getResult(), mul.getSource(), mov.getValue());
+		return null;
+	}
+
+	/**
+	 * @return the number of pairs fused by this instance, by pattern (e.g. <code>SUB_JNZ</code>), in the order of
+	 * the constants.
+	 */
+	public Map<String, Long> getFusions() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(fusions));
+	}
+
+	/**
+	 * @return the total number of pairs fused by this instance.
+	 */
+	public long getTotal() {
+		return fusions.values().stream().mapToLong(Long::longValue).sum();
+	}
+}
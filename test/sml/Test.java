@@ -2,10 +2,18 @@ package sml;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -361,5 +369,1408 @@ class Test {
         Instruction subtractInstruction = new sml.instruction.SubtractInstruction(null, resultRegisterName, sourceRegisterName);
         assertEquals("sub EAX ECX", subtractInstruction.toString());
     }
-}
 
+    @org.junit.jupiter.api.Test
+    public void testRegistersToString() {
+        Registers registers = new Registers();
+        registers.set(Registers.Register.EBX, 4);
+        registers.set(Registers.Register.EDI, -1);
+        assertEquals("[EAX = 0, EBX = 4, ECX = 0, EDX = 0, ESP = 0, EBP = 0, ESI = 0, EDI = -1]",
+                registers.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRegistersClearAndEquality() {
+        Registers registers = new Registers();
+        Registers other = new Registers();
+        registers.set(Registers.Register.ECX, 12);
+        assertNotEquals(other, registers);
+        other.set(Registers.Register.ECX, 12);
+        assertEquals(other, registers);
+        assertEquals(other.hashCode(), registers.hashCode());
+        registers.clear();
+        assertEquals(0, registers.get(Registers.Register.ECX));
+        assertEquals(new Registers(), registers);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testJNZInstructionIsLinkedOnTranslation() throws IOException {
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator("./test/resources/programWithLegalInstructions.txt");
+        t.readAndTranslate(m.getLabels(), m.getProgram());
+        sml.instruction.JumpIfNotZeroInstruction jnzInstruction =
+                (sml.instruction.JumpIfNotZeroInstruction) m.getProgram().get(13);
+        assertEquals(m.getLabels().getAddress("f8008"), jnzInstruction.getTargetAddress());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testJNZInstructionLabelDoesNotExistFailsOnTranslation() {
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator("./test/resources/programWithUnknownLabel.txt");
+        assertThrows(NullPointerException.class, () -> t.readAndTranslate(m.getLabels(), m.getProgram()));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testInstructionRegistryCreatesInstruction() {
+        InstructionRegistry.Factory factory = InstructionRegistry.getInstance().getFactory("mov");
+        assertEquals(3, factory.getParameterCount());
+        Instruction instruction = factory.create(null, Registers.Register.EAX, 8);
+        assertEquals(new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 8), instruction);
+        assertNull(InstructionRegistry.getInstance().getFactory("f3"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testUnknownInstruction() {
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator("./test/resources/programWithUnknownInstruction.txt");
+        assertThrows(IllegalArgumentException.class, () -> t.readAndTranslate(m.getLabels(), m.getProgram()));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLexerScansWordsAsOffsets() {
+        Lexer lexer = new Lexer();
+        lexer.reset("  f3: mul EBX\tEAX ");
+        lexer.next();
+        assertTrue(lexer.endsWith(':'));
+        assertEquals("f3", lexer.wordWithoutSuffix());
+        lexer.next();
+        assertTrue(lexer.matches("mul"));
+        assertEquals(6, lexer.start());
+        assertEquals(9, lexer.end());
+        lexer.next();
+        assertTrue(lexer.matches("EBX"));
+        lexer.next();
+        assertTrue(lexer.matches("EAX"));
+        // The last word is returned again once the line is exhausted.
+        lexer.next();
+        assertTrue(lexer.matches("EAX"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLexerRejectsLineWithTooMuchWhitespace() {
+        Lexer lexer = new Lexer();
+        assertThrows(RuntimeException.class, () -> lexer.reset("f3:  mov EAX 6"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLargeGeneratedProgramIsTranslated(@TempDir Path directory) throws IOException {
+        // Generate a program of 1,000,000 instructions (~13MB).
+        int size = 1_000_000;
+        Path file = directory.resolve("large.sml");
+        try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("mov EAX 1");
+            for (int i = 1; i < size; i++)
+                out.println((i % 2 == 0) ? "add EBX EAX" : "mov ECX " + i);
+        }
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator(file.toString());
+        t.readAndTranslate(m.getLabels(), m.getProgram());
+        assertEquals(size, m.getProgram().size());
+        assertEquals("mov ECX 999997", m.getProgram().get(size - 3).toString());
+        m.execute();
+        assertEquals(size / 2 - 1, m.getRegisters().get(Registers.Register.EBX));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testMappedLineReaderSplitsLinesAcrossWindows(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("lines.sml");
+        Files.writeString(file, "mov EAX 1\r\nf\u00e9: out EAX\n\nmov EBX 22\rmul EAX EBX\r\nadd EAX EBX");
+        List<String> lines = new ArrayList<>();
+        // A 13 byte window forces lines (and a "\r\n") to span windows.
+        try (var reader = new MappedLineReader(file, 13)) {
+            CharSequence line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line.toString());
+        }
+        assertEquals(List.of("mov EAX 1", "f\u00e9: out EAX", "", "mov EBX 22", "mul EAX EBX", "add EAX EBX"), lines);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBytecodeReconstructsSourceText() throws IOException {
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator("./test/resources/programWithLegalInstructions.txt");
+        t.readAndTranslate(m.getLabels(), m.getProgram());
+        Machine packed = new Machine(new Registers(), Bytecode.encode(m.getProgram(), m.getLabels()));
+        assertEquals(m.toString(), packed.toString());
+        assertEquals(Bytecode.JNZ, packed.getBytecode().getOpcodeId(13));
+        assertEquals(12, packed.getBytecode().getTarget(13));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBytecodeProgramWorks() throws IOException {
+        Machine m = new Machine(new Registers());
+        Translator t = new Translator("./test/resources/programWithLegalInstructions.txt");
+        t.readAndTranslate(m.getLabels(), m.getProgram());
+        m.execute();
+        String expectedOutput = output.toString();
+        output.reset();
+        Machine packed = new Machine(new Registers(), Bytecode.encode(m.getProgram(), m.getLabels()));
+        packed.execute();
+        assertEquals(m.getRegisters(), packed.getRegisters());
+        assertEquals(expectedOutput, output.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBytecodeDivideByZero() {
+        List<Instruction> program = List.of(
+                new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 5),
+                new sml.instruction.DivideInstruction(null, Registers.Register.EAX, Registers.Register.EBX));
+        Machine packed = new Machine(new Registers(), Bytecode.encode(program, new Labels()));
+        assertThrows(ArithmeticException.class, packed::execute);
+        assertEquals(5, packed.getRegisters().get(Registers.Register.EAX));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSwitchEngineMatchesPolymorphicEngine() throws IOException {
+        Machine polymorphic = new Machine(new Registers(), Machine.Engine.POLYMORPHIC);
+        Machine dispatched = new Machine(new Registers(), Machine.Engine.SWITCH);
+        for (Machine m : List.of(polymorphic, dispatched)) {
+            Translator t = new Translator("./test/resources/programWithLegalInstructions.txt");
+            t.readAndTranslate(m.getLabels(), m.getProgram());
+        }
+        polymorphic.execute();
+        String expectedOutput = output.toString();
+        output.reset();
+        dispatched.execute();
+        assertEquals(polymorphic.getRegisters(), dispatched.getRegisters());
+        assertEquals(expectedOutput, output.toString());
+        assertEquals(polymorphic, dispatched);
+    }
+
+    /**
+     * Generates a random program of the given size from a seed. Every fourth instruction is labelled, and each
+     * 'jnz' refers to a labelled instruction that is not a 'jnz', so that no 'jnz' instructions form a cycle.
+     */
+    private static List<Instruction> randomProgram(long seed, int size) {
+        java.util.Random random = new java.util.Random(seed);
+        Registers.Register[] registers = Registers.Register.values();
+        List<Instruction> program = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String label = (i % 4 == 3) ? "l" + i : null;
+            Registers.Register r = registers[random.nextInt(registers.length)];
+            Registers.Register s = registers[random.nextInt(registers.length)];
+            int opcode = random.nextInt(label == null && !targets.isEmpty() ? 8 : 7);
+            program.add(switch (opcode) {
+                case 0 -> new sml.instruction.AddInstruction(label, r, s);
+                case 1 -> new sml.instruction.SubtractInstruction(label, r, s);
+                case 2 -> new sml.instruction.MultiplyInstruction(label, r, s);
+                case 3 -> new sml.instruction.DivideInstruction(label, r, s);
+                case 4 -> new sml.instruction.PrintInstruction(label, r);
+                case 5, 6 -> new sml.instruction.MoveInstruction(label, r, random.nextInt(21) - 5);
+                default -> new sml.instruction.JumpIfNotZeroInstruction(label, r,
+                        targets.get(random.nextInt(targets.size())));
+            });
+            if (label != null)
+                targets.add(label);
+        }
+        return program;
+    }
+
+    /**
+     * Executes the program on a machine with the given engine, and returns the registers, output and exception.
+     */
+    private String runWithEngine(List<Instruction> program, Machine.Engine engine) {
+        Machine m = new Machine(new Registers(), engine);
+        for (Instruction instruction : program) {
+            if (instruction.getLabel() != null)
+                m.getLabels().addLabel(instruction.getLabel(), m.getProgram().size());
+            m.getProgram().add(instruction);
+        }
+        output.reset();
+        String exception = "";
+        try {
+            m.execute();
+        } catch (ArithmeticException e) {
+            exception = e.getClass().getName();
+        }
+        return m.getRegisters() + "\n" + output + exception;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCompiledEngineMatchesInterpreters() {
+        for (long seed = 0; seed < 200; seed++) {
+            List<Instruction> program = randomProgram(seed, 40);
+            Labels labels = new Labels();
+            for (int i = 0; i < program.size(); i++)
+                if (program.get(i).getLabel() != null)
+                    labels.addLabel(program.get(i).getLabel(), i);
+            assertDoesNotThrow(() -> sml.compiler.ProgramCompiler.compile(Bytecode.encode(program, labels)));
+            String expected = runWithEngine(program, Machine.Engine.POLYMORPHIC);
+            assertEquals(expected, runWithEngine(program, Machine.Engine.SWITCH), "seed " + seed);
+            assertEquals(expected, runWithEngine(program, Machine.Engine.COMPILED), "seed " + seed);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCompiledEngineDivideByZero() {
+        List<Instruction> program = List.of(
+                new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 5),
+                new sml.instruction.MoveInstruction(null, Registers.Register.ECX, 7),
+                new sml.instruction.DivideInstruction(null, Registers.Register.EAX, Registers.Register.EBX),
+                new sml.instruction.MoveInstruction(null, Registers.Register.EDX, 1));
+        Machine compiled = new Machine(new Registers(), Bytecode.encode(program, new Labels()), Machine.Engine.COMPILED);
+        Machine interpreted = new Machine(new Registers(), Bytecode.encode(program, new Labels()));
+        assertThrows(ArithmeticException.class, compiled::execute);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        assertEquals(interpreted.getRegisters(), compiled.getRegisters());
+        assertEquals(7, compiled.getRegisters().get(Registers.Register.ECX));
+        assertEquals(interpreted, compiled);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCompiledEngineFallsBackOnCyclicJNZ() {
+        Machine m = new Machine(new Registers(), Machine.Engine.COMPILED);
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction("a", Registers.Register.EAX, "b"));
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction("b", Registers.Register.EAX, "a"));
+        m.getProgram().add(new sml.instruction.MoveInstruction(null, Registers.Register.EBX, 3));
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction(null, Registers.Register.EAX, "a"));
+        m.getLabels().addLabel("a", 0);
+        m.getLabels().addLabel("b", 1);
+        assertThrows(UnsupportedOperationException.class,
+                () -> sml.compiler.ProgramCompiler.compile(Bytecode.encode(m.getProgram(), m.getLabels())));
+        m.execute();
+        assertEquals(3, m.getRegisters().get(Registers.Register.EBX));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBufferedOutputSink() {
+        java.io.StringWriter writer = new java.io.StringWriter();
+        BufferedOutputSink sink = new BufferedOutputSink(writer, 32);
+        sink.print(Registers.Register.EAX, 0);
+        sink.print(Registers.Register.EBX, -45);
+        assertEquals("", writer.toString());
+        sink.print(Registers.Register.ECX, Integer.MIN_VALUE);
+        sink.print(Registers.Register.EDX, Integer.MAX_VALUE);
+        sink.flush();
+        String n = System.lineSeparator();
+        assertEquals("EAX - 0" + n + "EBX - -45" + n + "ECX - -2147483648" + n + "EDX - 2147483647" + n,
+                writer.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testOutputSinkIsUsedByEveryEngine() {
+        List<Instruction> program = randomProgram(7, 40);
+        String expected = runWithEngine(program, Machine.Engine.POLYMORPHIC);
+        for (Machine.Engine engine : Machine.Engine.values()) {
+            CollectingOutputSink collected = new CollectingOutputSink();
+            java.io.StringWriter writer = new java.io.StringWriter();
+            BufferedOutputSink buffered = new BufferedOutputSink(writer);
+            for (OutputSink sink : List.of(collected, buffered, OutputSink.discard())) {
+                Machine m = new Machine(new Registers(), engine, sink);
+                for (Instruction instruction : program) {
+                    if (instruction.getLabel() != null)
+                        m.getLabels().addLabel(instruction.getLabel(), m.getProgram().size());
+                    m.getProgram().add(instruction);
+                }
+                output.reset();
+                try {
+                    m.execute();
+                } catch (ArithmeticException e) {
+                    // Compared through the expected output below.
+                }
+                assertFalse(output.toString().matches("(?s).*[A-Z]{3} - .*"), engine.toString());
+            }
+            String lines = String.join("", collected.getLines().stream().map(l -> l + System.lineSeparator()).toList());
+            assertEquals(lines, writer.toString(), engine.toString());
+            assertTrue(collected.size() > 0);
+            assertEquals(expected.lines().filter(l -> l.matches("[A-Z]{3} - -?\\d+")).toList(), collected.getLines(),
+                    engine.toString());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTracerIsOffByDefault() {
+        Machine m = new Machine(new Registers());
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction(null, Registers.Register.EAX, "f"));
+        m.getProgram().add(new sml.instruction.MoveInstruction("f", Registers.Register.EBX, 1));
+        m.getLabels().addLabel("f", 1);
+        m.execute();
+        assertEquals(Tracer.Level.OFF, m.getTracer().getLevel());
+        assertEquals("", output.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTracerMatchesAcrossEngines() {
+        List<Instruction> program = randomProgram(11, 40);
+        List<String> expected = null;
+        for (Machine.Engine engine : Machine.Engine.values()) {
+            List<String> trace = new ArrayList<>();
+            Machine m = new Machine(new Registers(), engine, OutputSink.discard());
+            for (Instruction instruction : program) {
+                if (instruction.getLabel() != null)
+                    m.getLabels().addLabel(instruction.getLabel(), m.getProgram().size());
+                m.getProgram().add(instruction);
+            }
+            m.setTracer(new Tracer(Tracer.Level.STEP, trace::add));
+            try {
+                m.execute();
+            } catch (ArithmeticException e) {
+                // The trace up to the failure is compared.
+            }
+            assertTrue(trace.get(trace.size() - 1).startsWith("Executed " + m.getTracer().getSteps() + " instructions"));
+            if (expected == null)
+                expected = trace;
+            assertEquals(expected, trace, engine.toString());
+        }
+        assertTrue(expected.stream().anyMatch(line -> line.startsWith("Did not execute \"jnz ")));
+    }
+
+    /**
+     * Returns a machine whose program never ends: two labelled 'jnz' instructions that execute each other.
+     */
+    private static Machine endlessMachine(Machine.Engine engine) {
+        Machine m = new Machine(new Registers(), engine);
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction("a", Registers.Register.EAX, "b"));
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction("b", Registers.Register.EAX, "a"));
+        m.getProgram().add(new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 1));
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction(null, Registers.Register.EAX, "a"));
+        m.getLabels().addLabel("a", 0);
+        m.getLabels().addLabel("b", 1);
+        return m;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExecutionStopsAtMaxSteps() {
+        for (Machine.Engine engine : Machine.Engine.values()) {
+            Machine m = endlessMachine(engine);
+            ExecutionLimitException e = assertThrows(ExecutionLimitException.class,
+                    () -> m.execute(ExecutionLimits.NONE.withMaxSteps(10_000)));
+            assertEquals(ExecutionLimitException.Reason.STEPS, e.getReason());
+            assertEquals(10_000, e.getSteps());
+            assertEquals(1, m.getRegisters().get(Registers.Register.EAX));
+        }
+        Machine m = endlessMachine(Machine.Engine.SWITCH);
+        m.getProgram().remove(3);
+        m.execute(ExecutionLimits.NONE.withMaxSteps(1));
+        assertEquals(1, m.getRegisters().get(Registers.Register.EAX));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExecutionStopsAtDeadline() {
+        Machine m = endlessMachine(Machine.Engine.SWITCH);
+        ExecutionLimitException e = assertThrows(ExecutionLimitException.class,
+                () -> m.execute(ExecutionLimits.NONE.withTimeout(java.time.Duration.ofMillis(50))));
+        assertEquals(ExecutionLimitException.Reason.DEADLINE, e.getReason());
+        assertTrue(e.getSteps() > 0);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExecutionIsCancellable() throws InterruptedException {
+        CancellationToken token = new CancellationToken();
+        Machine m = endlessMachine(Machine.Engine.COMPILED);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            token.cancel();
+        });
+        canceller.start();
+        ExecutionLimitException e = assertThrows(ExecutionLimitException.class,
+                () -> m.execute(ExecutionLimits.NONE.withCancellation(token)));
+        canceller.join();
+        assertEquals(ExecutionLimitException.Reason.CANCELLED, e.getReason());
+        e = assertThrows(ExecutionLimitException.class,
+                () -> m.execute(ExecutionLimits.NONE.withCancellation(token)));
+        assertEquals(0, e.getSteps());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLimitedExecutionMatchesUnlimited() {
+        for (long seed = 0; seed < 20; seed++) {
+            List<Instruction> program = randomProgram(seed, 40);
+            String expected = runWithEngine(program, Machine.Engine.POLYMORPHIC);
+            Machine m = new Machine(new Registers(), Machine.Engine.POLYMORPHIC);
+            for (Instruction instruction : program) {
+                if (instruction.getLabel() != null)
+                    m.getLabels().addLabel(instruction.getLabel(), m.getProgram().size());
+                m.getProgram().add(instruction);
+            }
+            output.reset();
+            String exception = "";
+            try {
+                m.execute(ExecutionLimits.NONE.withMaxSteps(1_000).withTimeout(java.time.Duration.ofMinutes(1)));
+            } catch (ArithmeticException e) {
+                exception = e.getClass().getName();
+            }
+            assertEquals(expected, m.getRegisters() + "\n" + output + exception, "seed " + seed);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBatchRunner(@TempDir Path directory) throws IOException, InterruptedException {
+        List<Path> programs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Path program = directory.resolve(String.format("p%02d.sml", i));
+            Files.writeString(program, "mov EAX " + i + "\nmov EBX 2\nmul EAX EBX\nout EAX\n");
+            programs.add(program);
+        }
+        Path failing = directory.resolve("zz.sml");
+        Files.writeString(failing, "mov EAX 1\ndiv EAX EBX\n");
+        assertEquals(51, BatchRunner.programs(directory).size());
+
+        Path manifest = directory.resolve("manifest");
+        Files.writeString(manifest, "# programs\np07.sml\n\nzz.sml\n");
+        assertEquals(List.of(programs.get(7), failing), BatchRunner.programs(manifest));
+
+        programs.add(failing);
+        List<BatchRunner.Result> results = new BatchRunner(Machine.Engine.SWITCH, ExecutionLimits.NONE, 4).run(programs);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(programs.get(i), results.get(i).getProgram());
+            assertNull(results.get(i).getError());
+            assertEquals(2 * i, results.get(i).getRegisters().get(Registers.Register.EAX));
+        }
+        assertInstanceOf(ArithmeticException.class, results.get(50).getError());
+
+        Path file = directory.resolve("results.csv");
+        BatchRunner.write(results, file);
+        List<String> rows = Files.readAllLines(file);
+        assertEquals("program,status,translation_ns,execution_ns,EAX,EBX,ECX,EDX,ESP,EBP,ESI,EDI", rows.get(0));
+        assertEquals(52, rows.size());
+        assertTrue(rows.get(4).startsWith(programs.get(3) + ",OK,"));
+        assertTrue(rows.get(4).endsWith(",6,2,0,0,0,0,0,0"));
+        assertTrue(rows.get(51).startsWith(failing + ",java.lang.ArithmeticException,"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testProgramIsImmutable() throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        assertEquals(16, program.size());
+        assertThrows(UnsupportedOperationException.class, () -> program.getInstructions().clear());
+        assertThrows(UnsupportedOperationException.class, () -> program.getLabels().addLabel("f1", 0));
+        assertEquals(12, program.getLabels().getAddress("f8008"));
+        assertNotNull(program.getBytecode());
+
+        Machine shared = new Machine(program, new Registers(), Machine.Engine.POLYMORPHIC);
+        Machine m = new Machine(new Registers());
+        new Translator("./test/resources/programWithLegalInstructions.txt").readAndTranslate(m.getLabels(), m.getProgram());
+        shared.execute();
+        m.execute();
+        assertEquals(m.getRegisters(), shared.getRegisters());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testProgramIsSharedByConcurrentMachines(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("program.sml");
+        Files.writeString(file, "add EAX EBX\nmul EAX ECX\nf: sub EAX ECX\njnz EBX f\nout EAX\n");
+        Program program = new Translator(file.toString()).translate();
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            List<java.util.concurrent.Future<Boolean>> futures = new ArrayList<>();
+            for (Machine.Engine engine : Machine.Engine.values()) {
+                for (int t = 0; t < 4; t++) {
+                    int offset = t;
+                    futures.add(executor.submit(() -> {
+                        Machine m = new Machine(program, new Registers(), engine, OutputSink.discard());
+                        Registers initial = new Registers();
+                        for (int i = offset; i < 10_000; i += 4) {
+                            initial.set(Registers.Register.EAX, i);
+                            initial.set(Registers.Register.EBX, i % 3);
+                            initial.set(Registers.Register.ECX, 7);
+                            m.execute(initial, ExecutionLimits.NONE);
+                            int expected = (i + i % 3) * 7 - ((i % 3 != 0) ? 7 : 0);
+                            if (m.getRegisters().get(Registers.Register.EAX) != expected)
+                                return false;
+                        }
+                        return true;
+                    }));
+                }
+            }
+            for (java.util.concurrent.Future<Boolean> future : futures)
+                assertTrue(future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testParameterSweepSurvivesRunawayRows(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("program.sml");
+        Files.writeString(file, "jnz EAX f1\nf1: jnz EAX f2\nf2: jnz EAX f1\n");
+        Program program = new Translator(file.toString()).translate();
+        Registers ending = new Registers();
+        Registers endless = new Registers();
+        endless.set(Registers.Register.EAX, 1);
+        List<Registers> rows = List.of(ending, endless, ending);
+
+        // The SWITCH engine reaches the deadline given by the timeout.
+        List<ParameterSweep.Result> results = new ParameterSweep(program, Machine.Engine.SWITCH, ExecutionLimits.NONE,
+                2, java.time.Duration.ofMillis(200)).run(rows);
+        assertNull(results.get(0).getError());
+        ExecutionLimitException e = assertInstanceOf(ExecutionLimitException.class, results.get(1).getError());
+        assertEquals(ExecutionLimitException.Reason.DEADLINE, e.getReason());
+        assertNull(results.get(2).getError());
+
+        // A limited row is executed by the SWITCH engine, whatever the engine of the sweep.
+        results = new ParameterSweep(program, Machine.Engine.POLYMORPHIC, ExecutionLimits.NONE.withMaxSteps(10_000), 1)
+                .run(rows);
+        e = assertInstanceOf(ExecutionLimitException.class, results.get(1).getError());
+        assertEquals(ExecutionLimitException.Reason.STEPS, e.getReason());
+        assertNull(results.get(2).getError());
+
+        assertEquals(1_000_000_000L, ParameterSweep.DEFAULT_LIMITS.getMaxSteps());
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSweep(program, java.time.Duration.ZERO));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testParameterSweep(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("program.sml");
+        Files.writeString(file, "mul EAX EBX\ndiv ECX EAX\n");
+        Path inputs = directory.resolve("inputs.csv");
+        StringBuilder csv = new StringBuilder("EBX, EAX,ECX\n");
+        for (int i = 0; i < 1000; i++)
+            csv.append(i % 5).append(',').append(i).append(",1000\n");
+        Files.writeString(inputs, csv + "\n");
+        List<Registers> rows = ParameterSweep.readInputs(inputs);
+        assertEquals(1000, rows.size());
+        assertEquals(3, rows.get(3).get(Registers.Register.EAX));
+        assertEquals(3, rows.get(3).get(Registers.Register.EBX));
+
+        List<ParameterSweep.Result> results = new ParameterSweep(new Translator(file.toString()).translate(),
+                Machine.Engine.COMPILED, ExecutionLimits.NONE, 3).run(rows);
+        for (int i = 0; i < 1000; i++) {
+            int product = i * (i % 5);
+            assertEquals(product, results.get(i).getRegisters().get(Registers.Register.EAX));
+            if (product == 0) {
+                assertInstanceOf(ArithmeticException.class, results.get(i).getError());
+            } else {
+                assertNull(results.get(i).getError());
+                assertEquals(1000 / product, results.get(i).getRegisters().get(Registers.Register.ECX));
+            }
+        }
+
+        Path written = directory.resolve("results.csv");
+        ParameterSweep.write(results, written);
+        List<String> lines = Files.readAllLines(written);
+        assertEquals(1001, lines.size());
+        assertEquals("row,status,EAX,EBX,ECX,EDX,ESP,EBP,ESI,EDI", lines.get(0));
+        assertEquals("1,java.lang.ArithmeticException,0,0,1000,0,0,0,0,0", lines.get(1));
+        assertEquals("3,OK,4,2,250,0,0,0,0,0", lines.get(3));
+
+        Files.writeString(inputs, "1,2,3,4,5,6,7,8\n-1\n");
+        rows = ParameterSweep.readInputs(inputs);
+        assertEquals(8, rows.get(0).get(Registers.Register.EDI));
+        assertEquals(-1, rows.get(1).get(Registers.Register.EAX));
+        Files.writeString(inputs, "EAX,EXX\n1,2\n");
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.readInputs(inputs));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBytecodeDecode() throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Program decoded = program.getBytecode().decode();
+        assertEquals(program, decoded);
+        assertEquals(program.toString(), decoded.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTranslationCache(@TempDir Path directory) throws IOException {
+        Path legal = Path.of("./test/resources/programWithLegalInstructions.txt");
+        Path copy = directory.resolve("copy.sml");
+        Files.copy(legal, copy);
+        Path other = directory.resolve("other.sml");
+        Files.writeString(other, "mov EAX 1\n");
+        Path third = directory.resolve("third.sml");
+        Files.writeString(third, "mov EAX 3\n");
+
+        TranslationCache cache = new TranslationCache(2);
+        Program program = cache.get(legal);
+        assertSame(program, cache.get(copy));
+        cache.get(other);
+        cache.get(copy);
+        cache.get(third); // evicts other, the least recently used
+        cache.get(other);
+        TranslationCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(4, stats.getMisses());
+        assertEquals(2, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals(1.0 / 3, stats.getHitRate(), 1e-9);
+
+        Path cacheDirectory = directory.resolve("cache");
+        new TranslationCache(1, cacheDirectory).get(legal);
+        TranslationCache fresh = new TranslationCache(1, cacheDirectory);
+        assertEquals(program, fresh.get(copy));
+        assertEquals(1, fresh.getStats().getDiskHits());
+        assertEquals(0, fresh.getStats().getMisses());
+
+        try (var entries = Files.list(cacheDirectory)) {
+            for (Path entry : entries.toList())
+                Files.write(entry, new byte[] {1, 2, 3});
+        }
+        TranslationCache damaged = new TranslationCache(1, cacheDirectory);
+        assertEquals(program, damaged.get(legal));
+        assertEquals(1, damaged.getStats().getMisses());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testProgramFile(@TempDir Path directory) throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Path file = directory.resolve("program" + ProgramFile.EXTENSION);
+        ProgramFile.write(program.getBytecode(), file);
+        assertEquals(program.getBytecode(), ProgramFile.read(file));
+        Program loaded = ProgramFile.load(file);
+        assertEquals(program, loaded);
+
+        Machine translated = new Machine(program, new Registers(), Machine.Engine.POLYMORPHIC);
+        Machine compiled = new Machine(loaded, new Registers(), Machine.Engine.POLYMORPHIC);
+        translated.execute();
+        compiled.execute();
+        assertEquals(translated.getRegisters(), compiled.getRegisters());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramFile.read(file));
+        bytes[20] ^= 1;
+        bytes[5] = 2;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramFile.read(file));
+        Files.writeString(file, "mov EAX 1");
+        assertThrows(IOException.class, () -> ProgramFile.read(file));
+        assertEquals(directory.resolve("a.smlc"), Smlc.outputFile(directory.resolve("a.sml")));
+
+        // A file in which two instructions have the same label is not valid, even with a correct checksum.
+        List<Instruction> twice = List.of(new sml.instruction.MoveInstruction("f1", Registers.Register.EAX, 1),
+                new sml.instruction.MoveInstruction("f2", Registers.Register.EAX, 2));
+        Labels labels = new Labels();
+        labels.addLabel("f1", 0);
+        labels.addLabel("f2", 1);
+        ProgramFile.write(Bytecode.encode(twice, labels), file);
+        bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 5] = '1';
+        java.util.zip.CRC32 checksum = new java.util.zip.CRC32();
+        checksum.update(bytes, 16, bytes.length - 20);
+        java.nio.ByteBuffer.wrap(bytes).putInt(bytes.length - 4, (int) checksum.getValue());
+        Files.write(file, bytes);
+        assertTrue(assertThrows(IOException.class, () -> ProgramFile.load(file)).getMessage().contains("f1"));
+        assertThrows(IllegalArgumentException.class, () -> Bytecode.of(new int[2 * Bytecode.WIDTH],
+                new String[] {"f1", "f1"}));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExecutionStats(@TempDir Path directory) throws IOException {
+        Path dump = directory.resolve("stats.json");
+        ExecutionStats stats = new ExecutionStats(dump);
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Machine m = new Machine(program, new Registers(), Machine.Engine.COMPILED);
+        m.setStats(stats);
+        m.execute();
+        m.execute();
+        assertEquals(2, stats.getRuns());
+        assertEquals(34, stats.getSteps());
+        assertEquals(4, stats.getHits(12));
+        assertEquals(2, stats.getHits(0));
+        assertEquals(2, stats.getTaken(13));
+        assertEquals(0, stats.getNotTaken(13));
+        assertEquals(0, stats.getNotTaken(0));
+        Map<String, Long> opcodes = stats.getOpcodeCounts();
+        assertEquals(List.of("add", "sub", "mul", "div", "out", "mov", "jnz", "subjnz", "addjnz", "movadd", "movsub",
+                "movmul"),
+                List.copyOf(opcodes.keySet()));
+        assertEquals(18, opcodes.get("mov"));
+        assertEquals(4, opcodes.get("out"));
+        assertEquals(4, opcodes.get("jnz"));
+        assertEquals(2, java.util.Arrays.stream(stats.getDurationHistogram()).sum());
+        assertTrue(stats.getNanos() > 0);
+
+        String json = Files.readString(dump);
+        assertEquals(stats.toJson(), json);
+        assertTrue(json.startsWith("{\"runs\": 2, \"steps\": 34, \"nanos\": "));
+        assertTrue(json.contains("\"branches\": {\"taken\": 4, \"notTaken\": 0}"));
+        assertTrue(json.contains("{\"address\": 13, \"instruction\": \"jnz EDI f8008\", \"hits\": 2, \"taken\": 2, \"notTaken\": 0}"));
+
+        Machine plain = new Machine(program, new Registers(), Machine.Engine.SWITCH);
+        plain.execute();
+        assertEquals(m.getRegisters(), plain.getRegisters());
+        assertNull(plain.getStats());
+
+        // Statistics that cannot be written do not replace the outcome of the execution.
+        ExecutionStats unwritable = new ExecutionStats(Files.writeString(directory.resolve("file"), "")
+                .resolve("stats.json"));
+        Machine divides = new Machine(new Registers(), Machine.Engine.SWITCH, OutputSink.discard());
+        divides.getProgram().add(new sml.instruction.DivideInstruction(null, Registers.Register.EAX,
+                Registers.Register.EBX));
+        divides.setStats(unwritable);
+        assertThrows(ArithmeticException.class, divides::execute);
+        assertEquals(1, unwritable.getRuns());
+        assertEquals(1, unwritable.getDumpFailures());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testFlightRecorderEvents(@TempDir Path directory) throws IOException {
+        Path dump = directory.resolve("sml.jfr");
+        Program program;
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable(sml.jfr.TranslationEvent.NAME);
+            recording.enable(sml.jfr.ExecutionEvent.NAME);
+            recording.enable(sml.jfr.DivisionByZeroEvent.NAME);
+            recording.start();
+            program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+            new Machine(program, new Registers(), Machine.Engine.POLYMORPHIC).execute();
+            new Machine(program, new Registers(), Machine.Engine.SWITCH).execute();
+            new Machine(program, new Registers(), Machine.Engine.COMPILED).execute();
+            Machine divide = new Machine(new Registers(), Machine.Engine.SWITCH);
+            divide.getProgram().add(new sml.instruction.DivideInstruction(null, Registers.Register.EAX, Registers.Register.EBX));
+            assertThrows(ArithmeticException.class, divide::execute);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<jdk.jfr.consumer.RecordedEvent> events = jdk.jfr.consumer.RecordingFile.readAllEvents(dump);
+        List<jdk.jfr.consumer.RecordedEvent> translations = events.stream()
+                .filter(e -> e.getEventType().getName().equals(sml.jfr.TranslationEvent.NAME)).toList();
+        assertEquals(1, translations.size());
+        assertEquals("./test/resources/programWithLegalInstructions.txt", translations.get(0).getString("file"));
+        assertEquals(program.size(), translations.get(0).getInt("instructions"));
+        assertTrue(translations.get(0).getInt("lines") >= program.size());
+
+        List<jdk.jfr.consumer.RecordedEvent> executions = events.stream()
+                .filter(e -> e.getEventType().getName().equals(sml.jfr.ExecutionEvent.NAME))
+                .sorted(java.util.Comparator.comparing(jdk.jfr.consumer.RecordedEvent::getStartTime)).toList();
+        assertEquals(List.of("POLYMORPHIC", "SWITCH", "COMPILED", "SWITCH"),
+                executions.stream().map(e -> e.getString("engine")).toList());
+        // The POLYMORPHIC engine counts a taken jnz and its labelled instruction as one step.
+        assertEquals(List.of(15L, 17L, -1L, 1L), executions.stream().map(e -> e.getLong("steps")).toList());
+        assertEquals(List.of(16, 16, 16, 1), executions.stream().map(e -> e.getInt("programSize")).toList());
+        assertEquals(List.of(sml.jfr.ExecutionEvent.COMPLETED, sml.jfr.ExecutionEvent.COMPLETED,
+                sml.jfr.ExecutionEvent.COMPLETED, sml.jfr.ExecutionEvent.DIVISION_BY_ZERO),
+                executions.stream().map(e -> e.getString("outcome")).toList());
+
+        List<jdk.jfr.consumer.RecordedEvent> divisions = events.stream()
+                .filter(e -> e.getEventType().getName().equals(sml.jfr.DivisionByZeroEvent.NAME)).toList();
+        assertEquals(1, divisions.size());
+        assertEquals("div EAX EBX", divisions.get(0).getString("instruction"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBlockProfile() throws IOException {
+        ExecutionStats stats = new ExecutionStats();
+        assertThrows(IllegalStateException.class, stats::getBlockProfile);
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Machine m = new Machine(program, new Registers(), Machine.Engine.SWITCH);
+        m.setStats(stats);
+        m.execute();
+
+        BlockProfile profile = stats.getBlockProfile();
+        assertEquals(17, profile.getSteps());
+        List<BlockProfile.Block> blocks = profile.getBlocks();
+        assertEquals(List.of(0, 12, 14, 13), blocks.stream().map(BlockProfile.Block::getFirst).toList());
+        assertEquals(List.of(11, 12, 15, 13), blocks.stream().map(BlockProfile.Block::getLast).toList());
+        assertEquals(List.of(1L, 2L, 1L, 1L), blocks.stream().map(BlockProfile.Block::getExecutions).toList());
+        assertEquals(List.of(12L, 2L, 2L, 1L), blocks.stream().map(BlockProfile.Block::getSteps).toList());
+        assertEquals(100.0 * 12 / 17, blocks.get(0).getShare(), 1e-9);
+        assertEquals(List.of("f8008: out EDI"), blocks.get(1).getInstructions());
+        assertEquals(program.getInstructions().get(15).toString(), blocks.get(2).getInstructions().get(1));
+
+        String report = profile.report(2);
+        assertTrue(report.startsWith("Hottest 2 of 4 basic blocks (17 steps in 1 executions):"));
+        assertTrue(report.contains("    1  0-11                1          12  70.59%"));
+        assertTrue(report.contains("          12: f8008: out EDI"));
+        assertFalse(report.contains("14: sub ESI EBP"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testPeepholeOptimizerFoldsConstants() {
+        Registers.Register eax = Registers.Register.EAX;
+        Registers.Register ebx = Registers.Register.EBX;
+        Registers.Register ecx = Registers.Register.ECX;
+        List<Instruction> program = new ArrayList<>(List.of(
+                new sml.instruction.MoveInstruction(null, eax, 6),
+                new sml.instruction.MoveInstruction(null, ebx, 2),
+                new sml.instruction.AddInstruction(null, eax, ebx),
+                new sml.instruction.MoveInstruction(null, ebx, 3),
+                new sml.instruction.AddInstruction(null, ecx, Registers.Register.EDX),
+                new sml.instruction.MultiplyInstruction(null, eax, ebx),
+                new sml.instruction.PrintInstruction("f1", eax),
+                new sml.instruction.JumpIfNotZeroInstruction(null, eax, "f1"),
+                new sml.instruction.SubtractInstruction("f2", ecx, ebx),
+                new sml.instruction.JumpIfNotZeroInstruction(null, ecx, "f2"),
+                new sml.instruction.MoveInstruction("f3", ecx, 1)));
+        Labels labels = new Labels();
+        sml.optimizer.PeepholeOptimizer.optimize(labels, program);
+        assertEquals(List.of("mov EBX 3", "add ECX EDX", "mov EAX 24", "out EAX", "f2: sub ECX EBX", "jnz ECX f2"),
+                program.stream().map(Instruction::toString).toList());
+        assertEquals(4, labels.getAddress("f2"));
+        assertEquals(4, ((sml.instruction.JumpIfNotZeroInstruction) program.get(5)).getTargetAddress());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testPeepholeOptimizerKeepsLabelledTargets() throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Program optimized = sml.optimizer.PeepholeOptimizer.optimize(program);
+        assertTrue(optimized.size() < program.size());
+
+        Machine expected = new Machine(program, new Registers(), Machine.Engine.SWITCH, new CollectingOutputSink());
+        expected.execute();
+        Machine actual = new Machine(optimized, new Registers(), Machine.Engine.SWITCH, new CollectingOutputSink());
+        actual.execute();
+        assertEquals(expected.getRegisters(), actual.getRegisters());
+        assertEquals(((CollectingOutputSink) expected.getOutput()).getLines(),
+                ((CollectingOutputSink) actual.getOutput()).getLines());
+
+        // A 'jnz' on a register that is not known keeps its labelled instruction.
+        Machine m = new Machine(new Registers());
+        m.getProgram().add(new sml.instruction.MoveInstruction("f1", Registers.Register.EBX, 7));
+        m.getProgram().add(new sml.instruction.PrintInstruction("f2", Registers.Register.EBX));
+        m.getProgram().add(new sml.instruction.JumpIfNotZeroInstruction(null, Registers.Register.EAX, "f1"));
+        m.getLabels().addLabel("f1", 0);
+        m.getLabels().addLabel("f2", 1);
+        sml.optimizer.PeepholeOptimizer.optimize(m.getLabels(), m.getProgram());
+        assertEquals(List.of("f1: mov EBX 7", "jnz EAX f1"), m.getProgram().stream().map(Instruction::toString).toList());
+        assertThrows(NullPointerException.class, () -> m.getLabels().getAddress("f2"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testPeepholeOptimizerMatchesUnoptimizedRun() {
+        int instructions = 0;
+        int optimizedInstructions = 0;
+        for (long seed = 0; seed < 500; seed++) {
+            List<Instruction> program = randomProgram(seed, 40);
+            List<Instruction> optimized = new ArrayList<>(program);
+            sml.optimizer.PeepholeOptimizer.optimize(new Labels(), optimized);
+            assertTrue(optimized.size() <= program.size(), "seed " + seed);
+            instructions += program.size();
+            optimizedInstructions += optimized.size();
+            String expected = runWithEngine(program, Machine.Engine.POLYMORPHIC);
+            assertEquals(expected, runWithEngine(optimized, Machine.Engine.POLYMORPHIC), "seed " + seed);
+            assertEquals(expected, runWithEngine(optimized, Machine.Engine.COMPILED), "seed " + seed);
+        }
+        assertTrue(optimizedInstructions < instructions);
+    }
+
+    /**
+     * A countdown of EAX from 3, in steps that each execute a labelled 'add' and 'out', followed by an 'add' and 'jnz'
+     * on EBX that is never taken.
+     */
+    private static List<Instruction> countdownProgram() {
+        Registers.Register eax = Registers.Register.EAX;
+        Registers.Register ebx = Registers.Register.EBX;
+        Registers.Register ecx = Registers.Register.ECX;
+        Registers.Register edx = Registers.Register.EDX;
+        List<Instruction> program = new ArrayList<>(List.of(
+                new sml.instruction.MoveInstruction(null, eax, 3),
+                new sml.instruction.MoveInstruction(null, ecx, 1),
+                new sml.instruction.MoveInstruction(null, ebx, -2),
+                new sml.instruction.AddInstruction("f1", edx, ecx),
+                new sml.instruction.PrintInstruction("f2", edx)));
+        for (int i = 0; i < 3; i++) {
+            program.add(new sml.instruction.SubtractInstruction(null, eax, ecx));
+            program.add(new sml.instruction.JumpIfNotZeroInstruction(null, eax, (i == 1) ? "f2" : "f1"));
+        }
+        program.add(new sml.instruction.AddInstruction(null, ebx, ecx));
+        program.add(new sml.instruction.AddInstruction(null, ebx, ecx));
+        program.add(new sml.instruction.JumpIfNotZeroInstruction(null, ebx, "f2"));
+        program.add(new sml.instruction.SubtractInstruction(null, ecx, edx));
+        program.add(new sml.instruction.JumpIfNotZeroInstruction(null, eax, "f1"));
+        return program;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSuperinstructionsFusePairs() {
+        List<Instruction> program = countdownProgram();
+        List<Instruction> fused = new ArrayList<>(program);
+        Labels labels = new Labels();
+        sml.optimizer.Superinstructions superinstructions = new sml.optimizer.Superinstructions();
+        assertEquals(4, superinstructions.fuse(labels, fused));
+        assertEquals(List.of("mov EAX 3", "mov ECX 1", "mov EBX -2", "f1: add EDX ECX", "f2: out EDX",
+                "subjnz EAX ECX f1", "subjnz EAX ECX f2", "subjnz EAX ECX f1", "add EBX ECX", "addjnz EBX ECX f2",
+                "sub ECX EDX", "jnz EAX f1"), fused.stream().map(Instruction::toString).toList());
+        assertEquals(3, labels.getAddress("f1"));
+        assertEquals(4, ((sml.instruction.SubtractJumpIfNotZeroInstruction) fused.get(6)).getTargetAddress());
+        assertEquals(Map.of(sml.optimizer.Superinstructions.SUB_JNZ, 3L, sml.optimizer.Superinstructions.ADD_JNZ, 1L,
+                sml.optimizer.Superinstructions.MOV_ADD, 0L, sml.optimizer.Superinstructions.MOV_SUB, 0L,
+                sml.optimizer.Superinstructions.MOV_MUL, 0L), superinstructions.getFusions());
+        assertEquals(4, superinstructions.getTotal());
+
+        // The fused program round-trips through its encoding and its source text.
+        Bytecode bytecode = Bytecode.encode(fused, labels);
+        assertEquals(Bytecode.SUBJNZ, bytecode.getOpcodeId(5));
+        assertEquals(Bytecode.ADDJNZ, bytecode.getOpcodeId(9));
+        assertTrue(bytecode.isJump(9));
+        assertEquals(fused, bytecode.decode().getInstructions());
+        assertEquals("subjnz EAX ECX f2", bytecode.toString(6));
+
+        // Each engine executes the fused program as the original.
+        String expected = runWithEngine(program, Machine.Engine.POLYMORPHIC);
+        for (Machine.Engine engine : Machine.Engine.values())
+            assertEquals(expected, runWithEngine(fused, engine), engine.name());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSuperinstructionsFuseMoveAndArithmetic(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("constants.sml");
+        Files.writeString(file, String.join("\n", "mov EAX 7", "mov EBX 5", "add EAX EBX", "mov ECX 3", "mul EAX ECX",
+                "mov EDX 4", "mul EDX EDX", "mov ECX 2", "sub EAX ECX", "jnz EAX f1", "f1: out EAX", "mov ESI 1",
+                "sub EDI ESI", "out EDI"));
+        Program program = new Translator(file.toString()).translate();
+        sml.optimizer.Superinstructions superinstructions = new sml.optimizer.Superinstructions();
+        Program fused = superinstructions.fuse(program);
+        // A 'sub' that could be fused with the 'mov' before it or the 'jnz' after it is fused with the 'jnz'.
+        assertEquals(List.of("mov EAX 7", "movadd EAX EBX 5", "movmul EAX ECX 3", "movmul EDX EDX 4", "mov ECX 2",
+                "subjnz EAX ECX f1", "f1: out EAX", "movsub EDI ESI 1", "out EDI"),
+                fused.getInstructions().stream().map(Instruction::toString).toList());
+        assertEquals(Map.of(sml.optimizer.Superinstructions.SUB_JNZ, 1L, sml.optimizer.Superinstructions.ADD_JNZ, 0L,
+                sml.optimizer.Superinstructions.MOV_ADD, 1L, sml.optimizer.Superinstructions.MOV_SUB, 1L,
+                sml.optimizer.Superinstructions.MOV_MUL, 2L), superinstructions.getFusions());
+
+        // The fused program round-trips through its encoding and its source text.
+        Bytecode bytecode = fused.getBytecode();
+        assertEquals(Bytecode.MOVADD, bytecode.getOpcodeId(1));
+        assertEquals(Bytecode.MOVMUL, bytecode.getOpcodeId(3));
+        assertEquals(Bytecode.MOVSUB, bytecode.getOpcodeId(7));
+        assertFalse(bytecode.isJump(1));
+        assertEquals("movmul EDX EDX 4", bytecode.toString(3));
+        assertEquals(fused, bytecode.decode());
+        Files.writeString(file, fused.toString());
+        assertEquals(fused, new Translator(file.toString()).translate());
+
+        // Each engine executes the fused program as the original, including a 'mov' and 'mul' of the same register.
+        String expected = runWithEngine(program.getInstructions(), Machine.Engine.POLYMORPHIC);
+        assertTrue(expected.contains("EAX = 34") && expected.contains("EDX = 16") && expected.contains("EDI = -1"),
+                expected);
+        for (Machine.Engine engine : Machine.Engine.values())
+            assertEquals(expected, runWithEngine(fused.getInstructions(), engine), engine.name());
+
+        // The fused instructions read and write the same registers as the pairs.
+        sml.analysis.ControlFlowGraph graph = sml.analysis.ControlFlowGraph.of(fused.getInstructions(),
+                fused.getLabels());
+        assertEquals(Set.of(Registers.Register.EDX), graph.getDefines(3));
+        assertEquals(Set.of(), graph.getUses(3));
+        assertEquals(Set.of(Registers.Register.EAX), graph.getUses(1));
+        assertEquals(Set.of(Registers.Register.EAX, Registers.Register.EBX), graph.getDefines(1));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSuperinstructionsAreCounted(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("countdown.sml");
+        Files.writeString(file, countdownProgram().stream().map(Instruction::toString)
+                .collect(java.util.stream.Collectors.joining("\n")));
+        Program program = new sml.optimizer.Superinstructions().fuse(new Translator(file.toString()).translate());
+        Program text = new Translator(file.toString()).translate();
+        assertEquals(16, text.size());
+        assertEquals(12, program.size());
+
+        ExecutionStats stats = new ExecutionStats();
+        Machine m = new Machine(program, new Registers(), Machine.Engine.SWITCH, new CollectingOutputSink());
+        m.setStats(stats);
+        m.execute();
+        assertEquals(3L, stats.getOpcodeCounts().get("subjnz"));
+        assertEquals(1L, stats.getOpcodeCounts().get("addjnz"));
+        assertEquals(2, stats.getTaken(5) + stats.getTaken(6) + stats.getTaken(7));
+        assertEquals(1, stats.getNotTaken(9));
+        assertEquals(List.of("EDX - 1"), ((CollectingOutputSink) m.getOutput()).getLines());
+
+        // The source text of a fused program can be translated again.
+        Files.writeString(file, program.toString());
+        assertEquals(program, new Translator(file.toString()).translate());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testControlFlowGraphAndDataflow() throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        sml.analysis.ControlFlowGraph graph = sml.analysis.ControlFlowGraph.of(program.getInstructions(), program.getLabels());
+        assertEquals(0, graph.getEntry());
+        assertEquals(16, graph.getExit());
+        assertArrayEquals(new int[] {13}, graph.getSuccessors(11));
+        assertArrayEquals(new int[] {12, 14}, graph.getSuccessors(13));
+        assertArrayEquals(new int[] {14, 16}, graph.getSuccessors(12));
+        assertArrayEquals(new int[] {12, 16}, graph.getSuccessors(15));
+        assertArrayEquals(new int[] {13, 15}, graph.getPredecessors(12));
+        assertEquals(12, graph.getTarget(15));
+        assertTrue(graph.isExact());
+        for (int address = 0; address <= graph.getExit(); address++)
+            assertTrue(graph.isReachable(address));
+
+        sml.analysis.Liveness liveness = sml.analysis.Liveness.of(graph);
+        assertTrue(liveness.isDeadStore(0));
+        for (int address = 1; address < graph.size(); address++)
+            assertFalse(liveness.isDeadStore(address), "address " + address);
+        assertEquals(java.util.EnumSet.allOf(Registers.Register.class), liveness.getLiveIn(16));
+        assertFalse(liveness.getLiveOut(0).contains(Registers.Register.EAX));
+        assertTrue(liveness.getLiveIn(13).contains(Registers.Register.EDI));
+
+        sml.analysis.ReachingDefinitions definitions = sml.analysis.ReachingDefinitions.of(graph);
+        assertEquals(List.of(sml.analysis.ReachingDefinitions.ENTRY), definitions.getDefinitions(0, Registers.Register.EAX));
+        assertEquals(List.of(8), definitions.getDefinitions(9, Registers.Register.EAX));
+        assertEquals(List.of(11), definitions.getDefinitions(14, Registers.Register.EBP));
+        assertEquals(List.of(9), definitions.getDefinitions(16, Registers.Register.EAX));
+        // 'f8008' returns to both of the jumps that execute it, so the graph has a path from 13 to 16 that skips 14.
+        assertEquals(List.of(6, 14), definitions.getDefinitions(16, Registers.Register.ESI));
+        assertEquals(List.of(), sml.analysis.Diagnostic.find(graph));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDiagnosticsFindUnreachableCodeAndInfiniteLoops() {
+        Registers.Register eax = Registers.Register.EAX;
+        Registers.Register ebx = Registers.Register.EBX;
+        List<Instruction> program = List.of(
+                new sml.instruction.MoveInstruction(null, eax, 1),
+                new sml.instruction.JumpIfNotZeroInstruction("f1", eax, "f2"),
+                new sml.instruction.JumpIfNotZeroInstruction("f2", eax, "f1"),
+                new sml.instruction.PrintInstruction("f3", eax),
+                new sml.instruction.JumpIfNotZeroInstruction("f4", eax, "f3"),
+                new sml.instruction.JumpIfNotZeroInstruction("f5", ebx, "f6"),
+                new sml.instruction.JumpIfNotZeroInstruction("f6", eax, "f5"),
+                new sml.instruction.JumpIfNotZeroInstruction(null, eax, "f1"),
+                new sml.instruction.JumpIfNotZeroInstruction(null, eax, "f5"));
+        Labels labels = new Labels();
+        for (int i = 0; i < program.size(); i++)
+            if (program.get(i).getLabel() != null)
+                labels.addLabel(program.get(i).getLabel(), i);
+        List<sml.analysis.Diagnostic> diagnostics = sml.analysis.Diagnostic.find(sml.analysis.ControlFlowGraph.of(program, labels));
+        assertEquals(List.of(sml.analysis.Diagnostic.Kind.UNREACHABLE, sml.analysis.Diagnostic.Kind.UNREACHABLE,
+                        sml.analysis.Diagnostic.Kind.INFINITE_LOOP, sml.analysis.Diagnostic.Kind.POSSIBLE_INFINITE_LOOP),
+                diagnostics.stream().map(sml.analysis.Diagnostic::getKind).toList());
+        assertEquals(List.of(3, 4, 7, 8), diagnostics.stream().map(sml.analysis.Diagnostic::getAddress).toList());
+        assertEquals("INFINITE_LOOP at 7: The 'jnz' instructions at 1, 2 form a cycle that never ends once " +
+                "\"jnz EAX f1\" enters it.", diagnostics.get(2).toString());
+        assertTrue(diagnostics.get(3).getMessage().contains("never ends if EBX and EAX are not 0"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDeadCodeEliminatorMatchesUnoptimizedRun() throws IOException {
+        Program program = new Translator("./test/resources/programWithLegalInstructions.txt").translate();
+        Program eliminated = sml.optimizer.DeadCodeEliminator.eliminate(program);
+        assertEquals(15, eliminated.size());
+        assertEquals("mov EBX 2", eliminated.getInstructions().get(0).toString());
+
+        for (long seed = 0; seed < 300; seed++) {
+            List<Instruction> random = randomProgram(seed, 40);
+            Labels labels = new Labels();
+            for (int i = 0; i < random.size(); i++)
+                if (random.get(i).getLabel() != null)
+                    labels.addLabel(random.get(i).getLabel(), i);
+            List<Instruction> live = new ArrayList<>(random);
+            sml.optimizer.DeadCodeEliminator.eliminate(labels, live);
+            assertTrue(live.size() < random.size(), "seed " + seed);
+            String expected = runWithEngine(random, Machine.Engine.POLYMORPHIC);
+            assertEquals(expected, runWithEngine(live, Machine.Engine.POLYMORPHIC), "seed " + seed);
+            new sml.optimizer.Superinstructions().fuse(labels, live);
+            for (Machine.Engine engine : Machine.Engine.values())
+                assertEquals(expected, runWithEngine(live, engine), "seed " + seed + ", " + engine);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testClosedFormCountsZerosWithWrapAround() {
+        java.util.Random random = new java.util.Random(24);
+        for (int trial = 0; trial < 20_000; trial++) {
+            int d = switch (trial % 4) {
+                case 0 -> random.nextInt(9) - 4;
+                case 1 -> (random.nextInt(7) - 3) << random.nextInt(32);
+                case 2 -> random.nextInt();
+                default -> Integer.MIN_VALUE;
+            };
+            int a = (trial % 3 == 0) ? random.nextInt() : d * (random.nextInt(600) - 300) + random.nextInt(3) - 1;
+            int n = 1 + random.nextInt(300);
+            long expected = 0;
+            for (int i = 0, value = a; i < n; i++, value += d)
+                if (value == 0)
+                    expected++;
+            assertEquals(expected, ClosedForm.zeros(a, d, n), "a " + a + ", d " + d + ", n " + n);
+
+            int base = random.nextInt();
+            int product = 1;
+            for (int i = 0; i < n; i++)
+                product *= base;
+            assertEquals(product, ClosedForm.power(base, n));
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testClosedFormAcceleratesCountdown() {
+        Registers.Register eax = Registers.Register.EAX;
+        Registers.Register ecx = Registers.Register.ECX;
+        Registers.Register edx = Registers.Register.EDX;
+        List<Instruction> program = new ArrayList<>(List.of(
+                new sml.instruction.MoveInstruction(null, eax, 500),
+                new sml.instruction.MoveInstruction(null, ecx, 1)));
+        Labels labels = new Labels();
+        for (int i = 0; i < 1000; i++) {
+            program.add(new sml.instruction.SubtractInstruction(null, eax, ecx));
+            program.add(new sml.instruction.JumpIfNotZeroInstruction(null, eax, "l" + i));
+            labels.addLabel("l" + i, program.size());
+            program.add(new sml.instruction.AddInstruction("l" + i, edx, ecx));
+        }
+        program.add(new sml.instruction.PrintInstruction(null, edx));
+
+        List<ClosedForm.Region> regions = ClosedForm.of(Bytecode.encode(program, labels)).getRegions();
+        assertEquals(1, regions.size());
+        assertEquals(2, regions.get(0).getStart());
+        assertEquals(3, regions.get(0).getBody());
+        assertEquals(1000, regions.get(0).getIterations());
+
+        // EAX passes through zero once, so the 'jnz' is taken 999 times.
+        Machine m = new Machine(new Program(program, labels), new Registers(), Machine.Engine.ACCELERATED);
+        m.execute();
+        assertEquals(-500, m.getRegisters().get(eax));
+        assertEquals(999, m.getRegisters().get(edx));
+        assertEquals("EDX - 999", output.toString().trim());
+        assertEquals(runWithEngine(program, Machine.Engine.SWITCH), runWithEngine(program, Machine.Engine.ACCELERATED));
+    }
+
+    /**
+     * Returns a program that repeats a random body of induction-variable updates: labelled targets, then the initial
+     * values of the registers, then the body repeated a random number of times, then an 'out' of every register.
+     */
+    private static List<Instruction> repeatedProgram(long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        Registers.Register[] registers = Registers.Register.values();
+        // EBX and ESI are only read; the others may be written.
+        Registers.Register[] sources = {Registers.Register.EBX, Registers.Register.ESI};
+        Registers.Register[] written = {Registers.Register.EAX, Registers.Register.ECX, Registers.Register.EDX,
+                Registers.Register.EDI};
+        List<Instruction> program = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Registers.Register r = written[random.nextInt(written.length)];
+            Registers.Register s = sources[random.nextInt(sources.length)];
+            program.add(switch (random.nextInt(3)) {
+                case 0 -> new sml.instruction.AddInstruction("t" + t, r, s);
+                case 1 -> new sml.instruction.SubtractInstruction("t" + t, r, s);
+                default -> new sml.instruction.MultiplyInstruction("t" + t, r, s);
+            });
+        }
+        for (Registers.Register r : registers)
+            program.add(new sml.instruction.MoveInstruction(null, r,
+                    random.nextBoolean() ? random.nextInt(21) - 10 : random.nextInt()));
+        List<Instruction> body = new ArrayList<>();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            Registers.Register r = written[random.nextInt(written.length)];
+            Registers.Register s = random.nextInt(8) == 0 ? r : sources[random.nextInt(sources.length)];
+            String target = "t" + random.nextInt(3);
+            body.add(switch (random.nextInt(8)) {
+                case 0, 1 -> new sml.instruction.AddInstruction(null, r, s);
+                case 2, 3 -> new sml.instruction.SubtractInstruction(null, r, s);
+                case 4 -> new sml.instruction.MultiplyInstruction(null, r, s);
+                case 5 -> new sml.instruction.JumpIfNotZeroInstruction(null, r, target);
+                case 6 -> new sml.instruction.SubtractJumpIfNotZeroInstruction(null, r, s, target);
+                default -> new sml.instruction.AddJumpIfNotZeroInstruction(null, r, s, target);
+            });
+        }
+        int iterations = 2 + random.nextInt(200);
+        for (int i = 0; i < iterations; i++)
+            program.addAll(body);
+        for (Registers.Register r : registers)
+            program.add(new sml.instruction.PrintInstruction(null, r));
+        return program;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testClosedFormMatchesSwitchEngine() {
+        int accelerated = 0;
+        for (long seed = 0; seed < 1_000; seed++) {
+            List<Instruction> program = repeatedProgram(seed);
+            Labels labels = new Labels();
+            for (int t = 0; t < 3; t++)
+                labels.addLabel("t" + t, t);
+            if (!ClosedForm.of(Bytecode.encode(program, labels)).getRegions().isEmpty())
+                accelerated++;
+            assertEquals(runWithEngine(program, Machine.Engine.SWITCH),
+                    runWithEngine(program, Machine.Engine.ACCELERATED), "seed " + seed);
+        }
+        // Bodies that read a register they write, or mix additions and multiplications of one, cannot be accelerated.
+        assertTrue(accelerated > 300, accelerated + " programs accelerated");
+    }
+
+    /**
+     * Returns a program whose loop of two labelled superinstructions, which execute each other, counts EAX down from
+     * 20,000 to 0 and EDX up, in about 40,000 steps.
+     */
+    private static Program loopingProgram() {
+        Registers.Register eax = Registers.Register.EAX;
+        Registers.Register ecx = Registers.Register.ECX;
+        Registers.Register edx = Registers.Register.EDX;
+        Labels labels = new Labels();
+        labels.addLabel("a", 3);
+        labels.addLabel("b", 4);
+        return new Program(List.of(
+                new sml.instruction.MoveInstruction(null, eax, 20_000),
+                new sml.instruction.MoveInstruction(null, ecx, 1),
+                new sml.instruction.JumpIfNotZeroInstruction(null, eax, "a"),
+                new sml.instruction.SubtractJumpIfNotZeroInstruction("a", eax, ecx, "b"),
+                new sml.instruction.AddJumpIfNotZeroInstruction("b", edx, ecx, "a"),
+                new sml.instruction.PrintInstruction(null, edx)), labels);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCheckpointsResumeExecution(@TempDir Path directory) throws IOException {
+        Machine plain = new Machine(loopingProgram(), new Registers(), Machine.Engine.SWITCH);
+        output.reset();
+        plain.execute();
+        String expected = output.toString();
+        assertEquals(0, plain.getRegisters().get(Registers.Register.EAX));
+
+        Path file = directory.resolve("program.snapshot");
+        Checkpoints checkpoints = new Checkpoints(file, 1_000);
+        Machine stopped = new Machine(loopingProgram(), new Registers(), Machine.Engine.COMPILED);
+        stopped.setCheckpoints(checkpoints);
+        ExecutionLimitException e = assertThrows(ExecutionLimitException.class,
+                () -> stopped.execute(ExecutionLimits.NONE.withMaxSteps(5_500)));
+        assertEquals(5_500, e.getSteps());
+        assertEquals(5, checkpoints.getCount());
+        Snapshot snapshot = Snapshot.read(file);
+        assertEquals(checkpoints.getLast(), snapshot);
+        assertEquals(5_000, snapshot.getSteps());
+        // The snapshot is taken inside the loop, after the 'jnz' that entered it.
+        assertEquals(3, snapshot.getProgramCounter());
+        assertEquals(4, snapshot.getAddress());
+        assertEquals(20_000 - 2_499, snapshot.getRegisters().get(Registers.Register.EAX));
+
+        for (Machine.Engine engine : Machine.Engine.values()) {
+            Machine resumed = new Machine(loopingProgram(), new Registers(), engine);
+            output.reset();
+            resumed.resume(Snapshot.read(file));
+            assertEquals(expected, output.toString(), engine.toString());
+            assertEquals(plain.getRegisters(), resumed.getRegisters(), engine.toString());
+        }
+
+        // The steps before the snapshot count towards the limit of the resumed execution.
+        Machine limited = new Machine(loopingProgram(), new Registers(), Machine.Engine.SWITCH);
+        e = assertThrows(ExecutionLimitException.class,
+                () -> limited.resume(snapshot, ExecutionLimits.NONE.withMaxSteps(5_010)));
+        assertEquals(5_010, e.getSteps());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSnapshotIsRejectedForAnotherProgram(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("program.snapshot");
+        Machine m = new Machine(loopingProgram(), new Registers(), Machine.Engine.SWITCH);
+        m.setCheckpoints(new Checkpoints(file, 10));
+        m.execute();
+        Snapshot snapshot = Snapshot.read(file);
+        assertEquals(Snapshot.fingerprint(loopingProgram().getBytecode()), snapshot.getFingerprint());
+
+        Machine other = new Machine(new Registers(), Machine.Engine.SWITCH);
+        other.getProgram().add(new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 1));
+        assertThrows(IllegalArgumentException.class, () -> other.resume(snapshot));
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> Snapshot.read(file));
+        assertThrows(IllegalArgumentException.class, () -> new Checkpoints(file, 0));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCheckpointsThatCannotBeWrittenDoNotStopExecution(@TempDir Path directory) throws IOException {
+        Machine plain = new Machine(loopingProgram(), new Registers(), Machine.Engine.SWITCH);
+        plain.execute();
+
+        // The parent of the snapshot file is a file, so no snapshot can be written.
+        Path parent = Files.writeString(directory.resolve("file"), "");
+        Checkpoints checkpoints = new Checkpoints(parent.resolve("program.snapshot"), 1_000);
+        Machine m = new Machine(loopingProgram(), new Registers(), Machine.Engine.SWITCH);
+        m.setCheckpoints(checkpoints);
+        m.execute(ExecutionLimits.NONE);
+        assertEquals(plain.getRegisters(), m.getRegisters());
+        assertEquals(0, checkpoints.getCount());
+        assertTrue(checkpoints.getFailures() > 0);
+        assertNull(checkpoints.getLast());
+
+        // A snapshot that is written leaves no temporary file behind.
+        Path file = directory.resolve("program.snapshot");
+        new Checkpoints(file, 1_000).write(new Snapshot(0, 1, 0, 1, new int[8]));
+        try (var entries = Files.list(directory)) {
+            assertEquals(List.of(file, parent), entries.sorted(java.util.Comparator.reverseOrder()).toList());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCheckpointsTakeRequestedSnapshot(@TempDir Path directory) throws Exception {
+        Checkpoints checkpoints = new Checkpoints(directory.resolve("endless.snapshot"), Long.MAX_VALUE);
+        assertFalse(checkpoints.requestAndAwait(java.time.Duration.ofMillis(20)));
+
+        Machine m = endlessMachine(Machine.Engine.POLYMORPHIC);
+        m.setCheckpoints(checkpoints);
+        CancellationToken token = new CancellationToken();
+        java.util.concurrent.atomic.AtomicReference<ExecutionLimitException> stopped =
+                new java.util.concurrent.atomic.AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                m.execute(ExecutionLimits.NONE.withCancellation(token));
+            } catch (ExecutionLimitException e) {
+                stopped.set(e);
+            }
+        });
+        thread.start();
+        assertTrue(checkpoints.requestAndAwait(java.time.Duration.ofSeconds(30)));
+        token.cancel();
+        thread.join();
+        assertEquals(ExecutionLimitException.Reason.CANCELLED, stopped.get().getReason());
+
+        Snapshot snapshot = Snapshot.read(checkpoints.getFile());
+        assertEquals(checkpoints.getLast(), snapshot);
+        Machine resumed = endlessMachine(Machine.Engine.SWITCH);
+        ExecutionLimitException e = assertThrows(ExecutionLimitException.class,
+                () -> resumed.resume(snapshot, ExecutionLimits.NONE.withMaxSteps(snapshot.getSteps() + 100)));
+        assertEquals(snapshot.getSteps() + 100, e.getSteps());
+        assertEquals(1, resumed.getRegisters().get(Registers.Register.EAX));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBatchRunnerSurvivesRunawayPrograms(@TempDir Path directory) throws Exception {
+        Path ending = directory.resolve("a.sml");
+        Files.writeString(ending, "mov EAX 1\nout EAX\n");
+        Path endless = directory.resolve("b.sml");
+        Files.writeString(endless, "mov EAX 1\njnz EAX f1\nf1: jnz EAX f2\nf2: jnz EAX f1\n");
+        List<Path> programs = BatchRunner.programs(directory);
+
+        // The SWITCH engine reaches the deadline given by the timeout.
+        List<BatchRunner.Result> results = new BatchRunner(Machine.Engine.SWITCH, ExecutionLimits.NONE, 2, null,
+                java.time.Duration.ofMillis(200)).run(programs);
+        assertNull(results.get(0).getError());
+        assertEquals(1, results.get(0).getRegisters().get(Registers.Register.EAX));
+        ExecutionLimitException e = assertInstanceOf(ExecutionLimitException.class, results.get(1).getError());
+        assertEquals(ExecutionLimitException.Reason.DEADLINE, e.getReason());
+
+        // A limited program is executed by the SWITCH engine, whatever the engine of the runner.
+        results = new BatchRunner(Machine.Engine.POLYMORPHIC, ExecutionLimits.NONE.withMaxSteps(10_000), 2).run(programs);
+        assertNull(results.get(0).getError());
+        e = assertInstanceOf(ExecutionLimitException.class, results.get(1).getError());
+        assertEquals(ExecutionLimitException.Reason.STEPS, e.getReason());
+
+        assertEquals(1_000_000_000L, BatchRunner.DEFAULT_LIMITS.getMaxSteps());
+        assertThrows(IllegalArgumentException.class, () -> new BatchRunner(java.time.Duration.ZERO));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testClosedFormSkipsLongRunsThatCannotBeAccelerated() {
+        List<Instruction> program = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++)
+            program.add(new sml.instruction.PrintInstruction(null, Registers.Register.EAX));
+        for (int i = 0; i < 100; i++)
+            program.add(new sml.instruction.AddInstruction(null, Registers.Register.EAX, Registers.Register.EBX));
+        for (int i = 0; i < 40_000; i++) {
+            program.add(new sml.instruction.MoveInstruction(null, Registers.Register.ECX, 2));
+            program.add(new sml.instruction.DivideInstruction(null, Registers.Register.EDX, Registers.Register.ECX));
+        }
+        Bytecode bytecode = Bytecode.encode(program, new Labels());
+        List<ClosedForm.Region> regions = assertTimeoutPreemptively(java.time.Duration.ofSeconds(10),
+                () -> ClosedForm.of(bytecode).getRegions());
+        assertEquals(1, regions.size());
+        assertEquals(40_000, regions.get(0).getStart());
+        assertEquals(100, regions.get(0).getIterations());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testMachineKeepsEncodingUntilProgramIsModified() {
+        Machine m = new Machine(new Registers(), Machine.Engine.COMPILED, OutputSink.discard());
+        m.getProgram().add(new sml.instruction.MoveInstruction(null, Registers.Register.EAX, 3));
+        m.getProgram().add(new sml.instruction.AddInstruction(null, Registers.Register.EAX, Registers.Register.EAX));
+        m.execute();
+        Bytecode encoded = m.encoded();
+        m.execute();
+        assertSame(encoded, m.encoded());
+        assertEquals(6, m.getRegisters().get(Registers.Register.EAX));
+
+        // Modifying the program encodes it again.
+        m.getProgram().add(new sml.instruction.AddInstruction(null, Registers.Register.EAX, Registers.Register.EAX));
+        m.execute();
+        assertNotSame(encoded, m.encoded());
+        assertEquals(12, m.getRegisters().get(Registers.Register.EAX));
+    }
+}